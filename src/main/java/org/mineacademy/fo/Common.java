@@ -98,11 +98,6 @@ public final class Common {
 	 */
 	private static final Pattern RGB_X_COLOR_REGEX = Pattern.compile("(" + COLOR_CHAR + "x)(" + COLOR_CHAR + "[0-9a-fA-F]){6}");
 
-	/**
-	 * High performance regular expression matcher for colors, used in {@link #stripColors(String)}
-	 */
-	private static final Pattern ALL_IN_ONE = Pattern.compile("((&|" + COLOR_CHAR + ")[0-9a-fk-or])|(" + COLOR_CHAR + "x(" + COLOR_CHAR + "[0-9a-fA-F]){6})|((?<!\\\\)(\\{|&|)#((?:[0-9a-fA-F]{3}){2})(\\}|))");
-
 	/**
 	 * Used to send messages to player without repetition, e.g. if they attempt to break a block
 	 * in a restricted region, we will not spam their chat with "You cannot break this block here" 120x times,
@@ -590,36 +585,127 @@ public final class Common {
 		if (message == null || message.isEmpty())
 			return "";
 
-		String result = CompChatColor.translateColorCodes(message)
-				.replace("{prefix}", message.startsWith(tellPrefix) ? "" : tellPrefix)
-				.replace("{server}", SimpleLocalization.SERVER_PREFIX)
-				.replace("{plugin_name}", SimplePlugin.getNamed())
-				.replace("{plugin_version}", SimplePlugin.getVersion());
+		final StringBuilder builder = new StringBuilder(message.length() + 16);
+
+		translateColors(message, builder, true);
+
+		return builder.toString();
+	}
+
+	/*
+	 * Translate the message into the builder in one pass, the same as chaining & codes,
+	 * placeholders, hex colors and escaped \\# replacements. Placeholder values are only
+	 * translated for hex colors and escapes, as they were replaced after & codes before.
+	 */
+	private static void translateColors(final String message, final StringBuilder builder, final boolean legacyAndPlaceholders) {
+		final int length = message.length();
+
+		for (int index = 0; index < length; index++) {
+			final char letter = message.charAt(index);
+
+			if (letter == '\\' && index + 1 < length) {
+
+				// \\# becomes \# and \# becomes #
+				if (message.charAt(index + 1) == '#') {
+					builder.append('#');
+					index++;
+
+					continue;
+				}
+
+				if (message.charAt(index + 1) == '\\' && index + 2 < length && message.charAt(index + 2) == '#') {
+					builder.append("\\#");
+					index += 2;
+
+					continue;
+				}
+			}
+
+			if ((letter == '{' || letter == '&' || letter == '#') && (index == 0 || message.charAt(index - 1) != '\\')) {
+				final int hashIndex = letter == '#' ? index : index + 1;
+
+				if (isHexColor(message, hashIndex)) {
+					int endIndex = hashIndex + 7;
 
-		// Replace hex colors on 1.16+ or find the closest color for legacy versions
-		final Matcher match = HEX_COLOR_REGEX.matcher(result);
+					if (endIndex < length && message.charAt(endIndex) == '}')
+						endIndex++;
 
-		while (match.find()) {
-			final String matched = match.group();
-			final String colorCode = match.group(2);
-			String replacement = "";
+					appendHexColor(message, hashIndex + 1, builder);
+					index = endIndex - 1;
 
+					continue;
+				}
+			}
+
+			if (legacyAndPlaceholders) {
+				if (letter == '&' && index + 1 < length && isColorCode(message.charAt(index + 1), true)) {
+					builder.append(COLOR_CHAR).append(Character.toLowerCase(message.charAt(index + 1)));
+					index++;
+
+					continue;
+				}
+
+				if (letter == '{') {
+					final String value = message.startsWith("{prefix}", index) ? (message.startsWith(tellPrefix) ? "" : tellPrefix)
+							: message.startsWith("{server}", index) ? SimpleLocalization.SERVER_PREFIX
+									: message.startsWith("{plugin_name}", index) ? SimplePlugin.getNamed()
+											: message.startsWith("{plugin_version}", index) ? SimplePlugin.getVersion() : null;
+
+					if (value != null) {
+						translateColors(value, builder, false);
+						index = message.indexOf('}', index);
+
+						continue;
+					}
+				}
+			}
+
+			builder.append(letter);
+		}
+	}
+
+	/*
+	 * Append the 6 hex digits starting at the given index as a color,
+	 * or its closest legacy color on older Minecraft versions
+	 */
+	private static void appendHexColor(final String message, final int startIndex, final StringBuilder builder) {
+		if (Remain.hasHexColors()) {
+			builder.append(COLOR_CHAR).append('x');
+
+			for (int index = startIndex; index < startIndex + 6; index++)
+				builder.append(COLOR_CHAR).append(message.charAt(index));
+
+		} else
 			try {
-				replacement = CompChatColor.of("#" + colorCode).toString();
+				builder.append(CompChatColor.of(message.substring(startIndex - 1, startIndex + 6)));
 
 			} catch (final IllegalArgumentException ex) {
 			}
+	}
 
-			result = result.replaceAll(Pattern.quote(matched), replacement);
-		}
+	/*
+	 * Return true if there is a # followed by 6 hex digits at the given index
+	 */
+	private static boolean isHexColor(final String message, final int hashIndex) {
+		if (hashIndex + 7 > message.length() || message.charAt(hashIndex) != '#')
+			return false;
+
+		for (int index = hashIndex + 1; index < hashIndex + 7; index++)
+			if (Character.digit(message.charAt(index), 16) == -1)
+				return false;
 
-		if (result.contains("\\\\#"))
-			result = result.replace("\\\\#", "\\#");
+		return true;
+	}
 
-		else if (result.contains("\\#"))
-			result = result.replace("\\#", "#");
+	/*
+	 * Return true if the letter is a color or decoration code, optionally
+	 * accepting upper case letters and the x hex marker
+	 */
+	private static boolean isColorCode(final char letter, final boolean lenient) {
+		if (letter >= '0' && letter <= '9' || letter >= 'a' && letter <= 'f' || letter >= 'k' && letter <= 'o' || letter == 'r')
+			return true;
 
-		return result;
+		return lenient && (letter >= 'A' && letter <= 'F' || letter >= 'K' && letter <= 'O' || letter == 'R' || letter == 'x' || letter == 'X');
 	}
 
 	/**
@@ -642,7 +728,16 @@ public final class Common {
 	 * @return
 	 */
 	public static String revertColorizing(final String message) {
-		return message.replaceAll("(?i)" + ChatColor.COLOR_CHAR + "([0-9a-fk-or])", "&$1");
+		if (message.indexOf(COLOR_CHAR) == -1)
+			return message;
+
+		final char[] letters = message.toCharArray();
+
+		for (int index = 0; index < letters.length - 1; index++)
+			if (letters[index] == COLOR_CHAR && isColorCode(Character.toLowerCase(letters[index + 1]), false))
+				letters[index] = '&';
+
+		return new String(letters);
 	}
 
 	/**
@@ -651,32 +746,62 @@ public final class Common {
 	 * @param message
 	 * @return
 	 */
-	public static String stripColors(String message) {
+	public static String stripColors(final String message) {
 		if (message == null || message.isEmpty())
 			return message;
 
-		// Replace & color codes
-		final Matcher matcher = ALL_IN_ONE.matcher(message);
-
-		while (matcher.find())
-			message = matcher.replaceAll("");
-
-		// Replace hex colors, both raw and parsed
-		/*if (Remain.hasHexColors()) {
-			matcher = HEX_COLOR_REGEX.matcher(message);
-		
-			while (matcher.find())
-				message = matcher.replaceAll("");
-		
-			matcher = RGB_X_COLOR_REGEX.matcher(message);
-		
-			while (matcher.find())
-				message = matcher.replaceAll("");
-		
-			message = message.replace(ChatColor.COLOR_CHAR + "x", "");
-		}*/
+		final int length = message.length();
+		final StringBuilder builder = new StringBuilder(length);
 
-		return message;
+		for (int index = 0; index < length; index++) {
+			final char letter = message.charAt(index);
+
+			// & and section sign colors and decorations
+			if ((letter == '&' || letter == COLOR_CHAR) && index + 1 < length && isColorCode(message.charAt(index + 1), false)) {
+				index++;
+
+				continue;
+			}
+
+			// Parsed hex colors such as §x§a§b§c§d§e§f
+			if (letter == COLOR_CHAR && isParsedHexColor(message, index)) {
+				index += 13;
+
+				continue;
+			}
+
+			// Raw hex colors such as {#abcdef}, &#abcdef or #abcdef
+			if ((letter == '{' || letter == '&' || letter == '#') && (index == 0 || message.charAt(index - 1) != '\\')) {
+				final int hashIndex = letter == '#' ? index : index + 1;
+
+				if (isHexColor(message, hashIndex)) {
+					index = hashIndex + 6;
+
+					if (index + 1 < length && message.charAt(index + 1) == '}')
+						index++;
+
+					continue;
+				}
+			}
+
+			builder.append(letter);
+		}
+
+		return builder.length() == length ? message : builder.toString();
+	}
+
+	/*
+	 * Return true if there is a parsed hex color such as §x§a§b§c§d§e§f at the given index
+	 */
+	private static boolean isParsedHexColor(final String message, final int startIndex) {
+		if (startIndex + 14 > message.length() || message.charAt(startIndex + 1) != 'x')
+			return false;
+
+		for (int index = startIndex + 2; index < startIndex + 14; index += 2)
+			if (message.charAt(index) != COLOR_CHAR || Character.digit(message.charAt(index + 1), 16) == -1)
+				return false;
+
+		return true;
 	}
 
 	/**
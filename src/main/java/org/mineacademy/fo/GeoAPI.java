@@ -1,24 +1,45 @@
 package org.mineacademy.fo;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import org.mineacademy.fo.collection.expiringmap.ExpiringMap;
 
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
 /**
  * Utility class for resolving geographical information about players.
+ * <p>
+ * Load an IP range database using {@link #loadDatabase(File)} to answer lookups locally
+ * without connecting to the internet. Addresses it does not know are looked up online.
  */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class GeoAPI {
@@ -28,41 +49,102 @@ public final class GeoAPI {
 	 */
 	private static final ExpiringMap<String, GeoResponse> cache = ExpiringMap.builder().expiration(1, TimeUnit.HOURS).build();
 
+	/**
+	 * IP addresses we are currently looking up online
+	 */
+	private static final Set<String> pendingLookups = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The response for addresses that cannot be looked up
+	 */
+	private static final GeoResponse EMPTY_RESPONSE = new GeoResponse("", "", "", "");
+
+	/**
+	 * The response for local addresses
+	 */
+	private static final GeoResponse LOCAL_RESPONSE = new GeoResponse("local", "-", "local", "-");
+
+	/**
+	 * The loaded IP range database, or null if none
+	 */
+	private static volatile RangeDatabase database = null;
+
+	/**
+	 * Set once {@link #getCachedCountry(InetSocketAddress)} is used, then we start looking up players on join
+	 */
+	private static volatile boolean prefetching = false;
+
+	/**
+	 * Load an IP range database from the given CSV file, optionally gzipped (.gz), replacing the old one.
+	 * <p>
+	 * Each line is "start,end,country code[,country name[,region name[,isp]]]" where start and end
+	 * are IPv4 or IPv6 addresses or their numeric values, which is compatible with most free
+	 * country databases. Lines that cannot be parsed, such as headers, are skipped.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void loadDatabase(@NonNull File file) throws IOException {
+		try (InputStream raw = new FileInputStream(file)) {
+			final InputStream input = file.getName().endsWith(".gz") ? new GZIPInputStream(raw) : raw;
+
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+				database = RangeDatabase.read(reader);
+			}
+		}
+
+		Common.log("Loaded " + database.size() + " IP ranges from " + file.getName());
+	}
+
+	/**
+	 * Unload the IP range database, all lookups will be made online
+	 */
+	public static void unloadDatabase() {
+		database = null;
+	}
+
+	/**
+	 * Return true if an IP range database is loaded
+	 *
+	 * @return
+	 */
+	public static boolean isDatabaseLoaded() {
+		return database != null;
+	}
+
 	/**
 	 * Returns a {@link GeoResponse} with geographic data for the given IP address
-	 * THIS IS A BLOCKING OPERATION THAT SHOULD BE RUN ASYNC. We will cache the response
-	 * if it has been looked up for the given IP for maximum performance.
+	 * THIS IS A BLOCKING OPERATION THAT SHOULD BE RUN ASYNC unless the address is found in
+	 * the loaded database. We will cache the response if it has been looked up for the given
+	 * IP for maximum performance.
 	 *
 	 * @param ip
 	 * @return
 	 */
 	public static GeoResponse getCountry(InetSocketAddress ip) {
-		GeoResponse response = new GeoResponse("", "", "", "");
+		final GeoResponse known = lookupLocally(ip);
 
-		if (ip == null)
-			return response;
-
-		if (ip.getHostString().equals("127.0.0.1") || ip.getHostString().equals("0.0.0.0"))
-			return new GeoResponse("local", "-", "local", "-");
+		if (known != null)
+			return known;
 
-		if (cache.containsKey(ip.toString()) || cache.containsValue(response))
-			return cache.get(ip.toString());
+		final String address = toAddress(ip);
+		GeoResponse response = EMPTY_RESPONSE;
 
 		try {
-			final URL url = new URL("http://ip-api.com/json/" + ip.getHostName());
+			final URL url = new URL("http://ip-api.com/json/" + address);
 			final URLConnection con = url.openConnection();
 			con.setConnectTimeout(3000);
 			con.setReadTimeout(3000);
 
 			try (final BufferedReader r = new BufferedReader(new InputStreamReader(con.getInputStream()))) {
-				String page = "";
+				final StringBuilder page = new StringBuilder();
 				String input;
 
 				while ((input = r.readLine()) != null)
-					page += input;
+					page.append(input);
 
-				response = new GeoResponse(getJson(page, "country"), getJson(page, "countryCode"), getJson(page, "regionName"), getJson(page, "isp"));
-				cache.put(ip.toString(), response);
+				response = new GeoResponse(getJson(page.toString(), "country"), getJson(page.toString(), "countryCode"), getJson(page.toString(), "regionName"), getJson(page.toString(), "isp"));
+				cache.put(address, response);
 			}
 
 		} catch (final NoRouteToHostException ex) {
@@ -76,6 +158,99 @@ public final class GeoAPI {
 		return response;
 	}
 
+	/**
+	 * Returns a {@link GeoResponse} for the given IP address without blocking. If the address
+	 * is not in the database or cache, we look it up in the background and return an empty
+	 * response for now. Safe to call from the main thread.
+	 *
+	 * @param ip
+	 * @return
+	 */
+	public static GeoResponse getCachedCountry(InetSocketAddress ip) {
+		prefetching = true;
+
+		final GeoResponse known = lookupLocally(ip);
+
+		if (known != null)
+			return known;
+
+		prefetch(ip);
+
+		return EMPTY_RESPONSE;
+	}
+
+	/**
+	 * Look up the given IP address in the background unless it is already known
+	 *
+	 * @param ip
+	 */
+	public static void prefetch(InetSocketAddress ip) {
+		if (lookupLocally(ip) != null)
+			return;
+
+		final String address = toAddress(ip);
+
+		if (pendingLookups.add(address))
+			Common.runAsync(() -> {
+				try {
+
+					// Remember failures too so we do not ask again every message
+					if (getCountry(ip) == EMPTY_RESPONSE)
+						cache.put(address, EMPTY_RESPONSE);
+
+				} finally {
+					pendingLookups.remove(address);
+				}
+			});
+	}
+
+	/**
+	 * Prefetch the address of a joining player if geographic data was needed before
+	 *
+	 * @param ip
+	 *
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public static void onJoin(InetSocketAddress ip) {
+		if (prefetching)
+			prefetch(ip);
+	}
+
+	/*
+	 * Return the response from the database or cache, or null if it must be looked up online
+	 */
+	private static GeoResponse lookupLocally(InetSocketAddress ip) {
+		if (ip == null)
+			return EMPTY_RESPONSE;
+
+		final InetAddress address = ip.getAddress();
+
+		if (address == null)
+			return EMPTY_RESPONSE;
+
+		if (address.isLoopbackAddress() || address.isAnyLocalAddress() || address.isSiteLocalAddress())
+			return LOCAL_RESPONSE;
+
+		final RangeDatabase database = GeoAPI.database;
+
+		if (database != null) {
+			final GeoResponse response = database.find(address.getAddress());
+
+			if (response != null)
+				return response;
+		}
+
+		return cache.get(address.getHostAddress());
+	}
+
+	/*
+	 * Return the textual IP address without triggering a reverse DNS lookup
+	 */
+	private static String toAddress(InetSocketAddress ip) {
+		return ip.getAddress() != null ? ip.getAddress().getHostAddress() : ip.getHostString();
+	}
+
 	private static String getJson(String page, String element) {
 		return page.contains("\"" + element + "\":\"") ? page.split("\"" + element + "\":\"")[1].split("\",")[0] : "";
 	}
@@ -88,4 +263,232 @@ public final class GeoAPI {
 	public static final class GeoResponse {
 		private final String countryName, countryCode, regionName, isp;
 	}
+
+	/*
+	 * Sorted IP ranges with binary search lookups. IPv4 ranges are stored as longs,
+	 * IPv6 ranges as two longs each with the sign bit flipped so signed comparison
+	 * matches unsigned order.
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	private static final class RangeDatabase {
+
+		/*
+		 * The ::ffff:0:0/96 prefix IPv4 addresses are mapped to in IPv6 databases
+		 */
+		private static final BigInteger IPV4_MAPPED = BigInteger.valueOf(0xFFFFL).shiftLeft(32);
+
+		private static final BigInteger IPV4_MAX = BigInteger.valueOf(0xFFFFFFFFL);
+
+		private static final BigInteger LOW_MASK = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+		private final long[] v4Starts, v4Ends;
+		private final GeoResponse[] v4Responses;
+
+		private final long[] v6StartsHigh, v6StartsLow, v6EndsHigh, v6EndsLow;
+		private final GeoResponse[] v6Responses;
+
+		/*
+		 * Return the amount of ranges loaded
+		 */
+		private int size() {
+			return this.v4Starts.length + this.v6StartsHigh.length;
+		}
+
+		/*
+		 * Return the response for the raw 4 or 16 byte address, or null if not in any range
+		 */
+		private GeoResponse find(byte[] address) {
+			if (address.length == 4) {
+				final long ip = toLong(address, 0, 4);
+				final int index = floor(this.v4Starts, null, ip, 0);
+
+				return index != -1 && ip <= this.v4Ends[index] ? this.v4Responses[index] : null;
+			}
+
+			final long high = toLong(address, 0, 8) ^ Long.MIN_VALUE;
+			final long low = toLong(address, 8, 8) ^ Long.MIN_VALUE;
+			final int index = floor(this.v6StartsHigh, this.v6StartsLow, high, low);
+
+			if (index == -1)
+				return null;
+
+			final boolean inRange = high < this.v6EndsHigh[index] || high == this.v6EndsHigh[index] && low <= this.v6EndsLow[index];
+
+			return inRange ? this.v6Responses[index] : null;
+		}
+
+		/*
+		 * Return the index of the last start that is lower or equal to the given value
+		 */
+		private static int floor(long[] high, long[] low, long valueHigh, long valueLow) {
+			int from = 0;
+			int to = high.length - 1;
+			int found = -1;
+
+			while (from <= to) {
+				final int middle = (from + to) >>> 1;
+				final boolean lowerOrEqual = high[middle] < valueHigh || high[middle] == valueHigh && (low == null || low[middle] <= valueLow);
+
+				if (lowerOrEqual) {
+					found = middle;
+					from = middle + 1;
+
+				} else
+					to = middle - 1;
+			}
+
+			return found;
+		}
+
+		/*
+		 * Read big endian bytes into a long
+		 */
+		private static long toLong(byte[] bytes, int offset, int length) {
+			long value = 0;
+
+			for (int i = offset; i < offset + length; i++)
+				value = value << 8 | bytes[i] & 0xFF;
+
+			return value;
+		}
+
+		/*
+		 * Parse the CSV into sorted arrays
+		 */
+		private static RangeDatabase read(BufferedReader reader) throws IOException {
+			final List<BigInteger[]> v4Ranges = new ArrayList<>();
+			final List<BigInteger[]> v6Ranges = new ArrayList<>();
+			final Map<List<String>, GeoResponse> responses = new HashMap<>();
+			final Map<BigInteger[], GeoResponse> rangeResponses = new HashMap<>();
+
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.charAt(0) == '#')
+					continue;
+
+				final String[] columns = splitColumns(line);
+
+				if (columns.length < 3)
+					continue;
+
+				final BigInteger start = parseAddress(columns[0]);
+				final BigInteger end = parseAddress(columns[1]);
+
+				if (start == null || end == null || start.compareTo(end) > 0 || columns[2].isEmpty() || "-".equals(columns[2]))
+					continue;
+
+				final String countryCode = columns[2].toUpperCase(Locale.ROOT);
+				final String countryName = columns.length > 3 && !columns[3].isEmpty() ? columns[3] : new Locale("", countryCode).getDisplayCountry(Locale.ENGLISH);
+				final String regionName = columns.length > 4 ? columns[4] : "";
+				final String isp = columns.length > 5 ? columns[5] : "";
+
+				final GeoResponse response = responses.computeIfAbsent(Arrays.asList(countryName, countryCode, regionName, isp), key -> new GeoResponse(countryName, countryCode, regionName, isp));
+				final BigInteger[] range;
+
+				if (end.compareTo(IPV4_MAX) <= 0) {
+					range = new BigInteger[] { start, end };
+					v4Ranges.add(range);
+
+				} else if (start.shiftRight(32).equals(IPV4_MAPPED.shiftRight(32)) && end.shiftRight(32).equals(IPV4_MAPPED.shiftRight(32))) {
+					range = new BigInteger[] { start.subtract(IPV4_MAPPED), end.subtract(IPV4_MAPPED) };
+					v4Ranges.add(range);
+
+				} else {
+					range = new BigInteger[] { start, end };
+					v6Ranges.add(range);
+				}
+
+				rangeResponses.put(range, response);
+			}
+
+			final Comparator<BigInteger[]> byStart = Comparator.comparing(range -> range[0]);
+
+			v4Ranges.sort(byStart);
+			v6Ranges.sort(byStart);
+
+			final long[] v4Starts = new long[v4Ranges.size()], v4Ends = new long[v4Ranges.size()];
+			final GeoResponse[] v4Responses = new GeoResponse[v4Ranges.size()];
+
+			for (int i = 0; i < v4Ranges.size(); i++) {
+				final BigInteger[] range = v4Ranges.get(i);
+
+				v4Starts[i] = range[0].longValue();
+				v4Ends[i] = range[1].longValue();
+				v4Responses[i] = rangeResponses.get(range);
+			}
+
+			final int v6Size = v6Ranges.size();
+			final long[] v6StartsHigh = new long[v6Size], v6StartsLow = new long[v6Size], v6EndsHigh = new long[v6Size], v6EndsLow = new long[v6Size];
+			final GeoResponse[] v6Responses = new GeoResponse[v6Size];
+
+			for (int i = 0; i < v6Size; i++) {
+				final BigInteger[] range = v6Ranges.get(i);
+
+				v6StartsHigh[i] = range[0].shiftRight(64).longValue() ^ Long.MIN_VALUE;
+				v6StartsLow[i] = range[0].and(LOW_MASK).longValue() ^ Long.MIN_VALUE;
+				v6EndsHigh[i] = range[1].shiftRight(64).longValue() ^ Long.MIN_VALUE;
+				v6EndsLow[i] = range[1].and(LOW_MASK).longValue() ^ Long.MIN_VALUE;
+				v6Responses[i] = rangeResponses.get(range);
+			}
+
+			return new RangeDatabase(v4Starts, v4Ends, v4Responses, v6StartsHigh, v6StartsLow, v6EndsHigh, v6EndsLow, v6Responses);
+		}
+
+		/*
+		 * Parse an IP address literal or its decimal value, returning null if invalid
+		 */
+		private static BigInteger parseAddress(String value) {
+			if (value.isEmpty())
+				return null;
+
+			if (value.indexOf('.') == -1 && value.indexOf(':') == -1)
+				try {
+					final BigInteger number = new BigInteger(value);
+
+					return number.signum() >= 0 && number.bitLength() <= 128 ? number : null;
+
+				} catch (final NumberFormatException ex) {
+					return null;
+				}
+
+			// Only accept literals so we never resolve host names
+			if (!Character.isDigit(value.charAt(0)) && value.indexOf(':') == -1)
+				return null;
+
+			try {
+				return new BigInteger(1, InetAddress.getByName(value).getAddress());
+
+			} catch (final UnknownHostException ex) {
+				return null;
+			}
+		}
+
+		/*
+		 * Split the CSV line by commas outside of quotes, removing the quotes
+		 */
+		private static String[] splitColumns(String line) {
+			final List<String> columns = new ArrayList<>();
+			final StringBuilder column = new StringBuilder();
+			boolean quoted = false;
+
+			for (int i = 0; i < line.length(); i++) {
+				final char character = line.charAt(i);
+
+				if (character == '"')
+					quoted = !quoted;
+
+				else if (character == ',' && !quoted) {
+					columns.add(column.toString().trim());
+					column.setLength(0);
+
+				} else
+					column.append(character);
+			}
+
+			columns.add(column.toString().trim());
+
+			return columns.toArray(new String[columns.size()]);
+		}
+	}
 }
@@ -4,6 +4,8 @@ package org.mineacademy.fo;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import org.bukkit.Material;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.inventory.ItemStack;
@@ -21,6 +23,7 @@ import org.mineacademy.fo.remain.nbt.NBTItem;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 
 /**
  * Utility class for managing items.
@@ -124,12 +127,31 @@ public final class ItemUtil {
 	 * <p>
 	 * Two items are similar if both are not null and if their type, data, name and lore equals.
 	 * The damage, quantity, item flags enchants and other properties are ignored.
+	 * <p>
+	 * We compare their {@link ItemFingerprint} first and only compare items fully when
+	 * fingerprints match, see {@link FingerprintCache} to make this faster.
 	 *
 	 * @param first
 	 * @param second
 	 * @return true if items are similar (see above)
 	 */
 	public static boolean isSimilar(ItemStack first, ItemStack second) {
+		return isSimilar(first, second, null, null);
+	}
+
+	/**
+	 * Compares two items the same way as {@link #isSimilar(ItemStack, ItemStack)}, reusing
+	 * fingerprints you got from {@link #getFingerprint(ItemStack)} or a {@link FingerprintCache}.
+	 * <p>
+	 * Use this when comparing one item against many, so its fingerprint is only computed once.
+	 *
+	 * @param first
+	 * @param second
+	 * @param firstFingerprint the fingerprint of the first item, or null to compute it when needed
+	 * @param secondFingerprint the fingerprint of the second item, or null to compute it when needed
+	 * @return true if items are similar
+	 */
+	public static boolean isSimilar(ItemStack first, ItemStack second, @Nullable ItemFingerprint firstFingerprint, @Nullable ItemFingerprint secondFingerprint) {
 		if (first == null || second == null)
 			return false;
 
@@ -151,6 +173,16 @@ public final class ItemUtil {
 		if (!idMatch || !metaMatch || !(dataMatch || (dataMatch = first.getType() == Material.BOW)))
 			return false;
 
+		// Different fingerprints are never similar, same fingerprints may be a hash collision
+		if (firstFingerprint == null)
+			firstFingerprint = getFingerprint(first);
+
+		if (secondFingerprint == null)
+			secondFingerprint = getFingerprint(second);
+
+		if (!firstFingerprint.mayBeSimilar(secondFingerprint))
+			return false;
+
 		// ItemMeta
 		{
 			final ItemMeta f = first.getItemMeta();
@@ -178,6 +210,78 @@ public final class ItemUtil {
 		return true;
 	}
 
+	/**
+	 * Return the fingerprint of the item's properties compared in {@link #isSimilar(ItemStack, ItemStack)}
+	 *
+	 * @param item
+	 * @return the fingerprint, or null if the item is null
+	 */
+	@Nullable
+	public static ItemFingerprint getFingerprint(@Nullable ItemStack item) {
+		return item == null ? null : computeFingerprint(item);
+	}
+
+	/*
+	 * Hash the properties of the item that isSimilar compares
+	 */
+	private static ItemFingerprint computeFingerprint(ItemStack item) {
+		final Material type = item.getType();
+
+		// All kinds of air are similar
+		if (CompMaterial.isAir(type))
+			return new ItemFingerprint(0, false, 0, 0);
+
+		long base = mix(type.ordinal() + 1);
+
+		if (LEGACY_MATERIALS && !CompMaterial.isSkull(type) && type != Material.BOW)
+			base = mix(base * 31 + item.getData().getData());
+
+		if (!Remain.hasItemMeta())
+			return new ItemFingerprint(base, false, 0, 0);
+
+		base = mix(base * 31 + (item.hasItemMeta() ? 1 : 2));
+
+		final ItemMeta meta = item.getItemMeta();
+		String name = null;
+		long lore = 0;
+
+		if (meta != null) {
+			name = Common.stripColors(meta.getDisplayName());
+
+			if (meta.getLore() != null)
+				for (final String line : meta.getLore())
+					lore = mix(lore * 31 + hash(Common.stripColors(line)));
+
+		} else
+			base = mix(base * 31 + 3);
+
+		// NBT tags are left out since reading them is slow, the full comparison checks them
+
+		return new ItemFingerprint(base, name != null, name != null ? hash(name) : 0, lore);
+	}
+
+	/*
+	 * Return the 64-bit FNV-1a hash of the string, never 0
+	 */
+	private static long hash(String string) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (int i = 0; i < string.length(); i++)
+			hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
+
+		return hash == 0 ? 1 : hash;
+	}
+
+	/*
+	 * Spread the bits of the value, see MurmurHash3
+	 */
+	private static long mix(long value) {
+		value = (value ^ value >>> 33) * 0xff51afd7ed558ccdL;
+		value = (value ^ value >>> 33) * 0xc4ceb9fe1a85ec53L;
+
+		return value ^ value >>> 33;
+	}
+
 	private static boolean listMatch(List<String> first, List<String> second) {
 
 		if (first == null)
@@ -216,4 +320,87 @@ public final class ItemUtil {
 
 		return firstNbt.getString(key).equals(secondNbt.getString(key));
 	}
+
+	/**
+	 * A compact hash of the item properties compared in {@link ItemUtil#isSimilar(ItemStack, ItemStack)}:
+	 * type, legacy data, name and lore.
+	 * <p>
+	 * If two fingerprints do not match, the items are never similar. If they do, the items
+	 * are most likely similar, but must be compared fully to rule out a hash collision.
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	public static final class ItemFingerprint {
+
+		/**
+		 * The type, data and meta presence
+		 */
+		private final long base;
+
+		/**
+		 * Does the item have a display name?
+		 */
+		private final boolean named;
+
+		/**
+		 * The display name without colors
+		 */
+		private final long name;
+
+		/**
+		 * The lore without colors
+		 */
+		private final long lore;
+
+		/**
+		 * Return false if the item of this fingerprint can never be similar to the item of the given one,
+		 * in the same order as in {@link ItemUtil#isSimilar(ItemStack, ItemStack)}
+		 *
+		 * @param second
+		 * @return
+		 */
+		public boolean mayBeSimilar(@NonNull ItemFingerprint second) {
+
+			// Like isSimilar, unnamed first items match any name
+			return this.base == second.base && this.lore == second.lore && (!this.named || second.named && this.name == second.name);
+		}
+	}
+
+	/**
+	 * Remembers the fingerprint of the item its owner, such as a button or a tool, returned last
+	 * and only computes it again when the owner returns another item instance.
+	 * <p>
+	 * Modifying the same instance, for example with setItemMeta, is not noticed, return
+	 * a new item instead.
+	 */
+	public static final class FingerprintCache {
+
+		/**
+		 * The item we fingerprinted last
+		 */
+		private ItemStack item;
+
+		/**
+		 * Its fingerprint
+		 */
+		private ItemFingerprint fingerprint;
+
+		/**
+		 * Return the fingerprint of the given item, reusing the last one if it is the same instance
+		 *
+		 * @param item
+		 * @return the fingerprint, or null if the item is null
+		 */
+		@Nullable
+		public synchronized ItemFingerprint get(@Nullable ItemStack item) {
+			if (item == null)
+				return null;
+
+			if (item != this.item) {
+				this.fingerprint = computeFingerprint(item);
+				this.item = item;
+			}
+
+			return this.fingerprint;
+		}
+	}
 }
\ No newline at end of file
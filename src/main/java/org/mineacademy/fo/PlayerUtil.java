@@ -896,8 +896,10 @@ public final class PlayerUtil {
 	 * @return
 	 */
 	public static ItemStack getFirstItem(final Player player, final ItemStack item) {
+		final ItemUtil.ItemFingerprint fingerprint = ItemUtil.getFingerprint(item);
+
 		for (final ItemStack otherItem : player.getInventory().getContents())
-			if (otherItem != null && ItemUtil.isSimilar(otherItem, item))
+			if (otherItem != null && ItemUtil.isSimilar(otherItem, item, null, fingerprint))
 				return otherItem;
 
 		return null;
@@ -1009,10 +1011,12 @@ public final class PlayerUtil {
 	public static boolean updateInvSlot(final Inventory inv, final ItemStack search, final ItemStack replaceWith) {
 		Valid.checkNotNull(inv, "Inv = null");
 
+		final ItemUtil.ItemFingerprint fingerprint = ItemUtil.getFingerprint(search);
+
 		for (int i = 0; i < inv.getSize(); i++) {
 			final ItemStack slot = inv.getItem(i);
 
-			if (slot != null && ItemUtil.isSimilar(slot, search)) {
+			if (slot != null && ItemUtil.isSimilar(slot, search, null, fingerprint)) {
 				inv.setItem(i, replaceWith);
 
 				return true;
@@ -1,14 +1,23 @@
 package org.mineacademy.fo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
+import javax.annotation.Nullable;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
 import org.mineacademy.fo.SerializeUtil.Mode;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
 
 /**
  * Utility class for tab completion.
@@ -16,6 +25,26 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class TabUtil {
 
+	/**
+	 * Constants of enums we completed, used to check we were given all of them
+	 */
+	private static final Map<Class<?>, Object[]> enumConstants = new ConcurrentHashMap<>();
+
+	/**
+	 * Completions of enums we completed, built once per enum
+	 */
+	private static final Map<Class<?>, CompletionIndex> enumIndexes = new ConcurrentHashMap<>();
+
+	/**
+	 * Names of online players including vanished, created on first use
+	 */
+	private static volatile CompletionIndex playerNameIndex;
+
+	/**
+	 * Names of loaded worlds, created on first use
+	 */
+	private static volatile CompletionIndex worldNameIndex;
+
 	/**
 	 * Return a list of tab completions for the given array,
 	 * we attempt to resolve what type of the array it is,
@@ -28,29 +57,46 @@ public final class TabUtil {
 	 */
 	@SafeVarargs
 	public static <T> List<String> complete(String partialName, T... elements) {
-		final List<String> clone = new ArrayList<>();
+
+		// Completing all values of an enum such as CompMaterial.values() is done from its index
+		if (elements instanceof Enum[] && elements.length > 0 && elements[0] != null) {
+			final CompletionIndex index = getEnumIndex((Enum<?>[]) elements);
+
+			if (index != null)
+				return index.complete(partialName);
+		}
+
+		final List<String> tab = new ArrayList<>();
+		final String prefix = partialName.toLowerCase();
 
 		if (elements != null)
 			for (final T element : elements)
-				if (element != null)
-					if (element instanceof Iterable)
-						for (final Object iterable : (Iterable<?>) element)
-							clone.add(iterable instanceof Enum ? iterable.toString().toLowerCase() : SerializeUtil.serialize(Mode.YAML, iterable).toString());
+				addMatching(tab, prefix, element);
+
+		Collections.sort(tab);
 
-					// Trick: Automatically parse enum constants
-					else if (element instanceof Enum[])
-						for (final Object iterable : ((Enum[]) element)[0].getClass().getEnumConstants())
-							clone.add(iterable.toString().toLowerCase());
+		return tab;
+	}
+
+	/**
+	 * Return a list of tab completions for each element in the given iterable,
+	 * parsed the same way as {@link #complete(String, Object...)}
+	 *
+	 * @param <T>
+	 * @param partialName
+	 * @param elements
+	 * @return
+	 */
+	public static <T> List<String> completeElements(String partialName, Iterable<T> elements) {
+		final List<String> tab = new ArrayList<>();
+		final String prefix = partialName.toLowerCase();
 
-					else {
-						final boolean lowercase = element instanceof Enum;
-						final String parsed = SerializeUtil.serialize(Mode.YAML, element).toString();
+		for (final T element : elements)
+			addMatching(tab, prefix, element);
 
-						if (!"".equals(parsed))
-							clone.add(lowercase ? parsed.toLowerCase() : parsed);
-					}
+		Collections.sort(tab);
 
-		return complete(partialName, clone);
+		return tab;
 	}
 
 	/**
@@ -61,22 +107,359 @@ public final class TabUtil {
 	 * @return
 	 */
 	public static List<String> complete(String partialName, Iterable<String> all) {
-		final ArrayList<String> tab = new ArrayList<>();
+		final List<String> tab = new ArrayList<>();
+		final String prefix = partialName.toLowerCase();
+
+		for (final String value : all)
+			if (startsWith(value, prefix))
+				tab.add(value);
+
+		Collections.sort(tab);
+
+		return tab;
+	}
+
+	/**
+	 * Return names of online players starting with the given name,
+	 * optionally excluding vanished players
+	 *
+	 * @param partialName
+	 * @param includeVanished
+	 * @return
+	 */
+	public static List<String> completePlayerNames(String partialName, boolean includeVanished) {
+		CompletionIndex index = playerNameIndex;
+
+		if (index == null)
+			index = playerNameIndex = new CompletionIndex(Common.getPlayerNames());
+
+		// Only look up vanish status of players we actually suggest
+		return index.complete(partialName, includeVanished ? null : name -> {
+			final Player player = Bukkit.getPlayerExact(name);
+
+			return player != null && !PlayerUtil.isVanished(player);
+		});
+	}
+
+	/**
+	 * Return names of loaded worlds starting with the given name
+	 *
+	 * @param partialName
+	 * @return
+	 */
+	public static List<String> completeWorldNames(String partialName) {
+		CompletionIndex index = worldNameIndex;
+
+		if (index == null)
+			index = worldNameIndex = new CompletionIndex(Common.getWorldNames());
 
-		for (final String s : all)
-			tab.add(s);
+		return index.complete(partialName);
+	}
 
-		partialName = partialName.toLowerCase();
+	/**
+	 * Add the player to the player name index
+	 *
+	 * @param player
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public static void onJoin(Player player) {
+		if (playerNameIndex != null)
+			playerNameIndex.add(player.getName());
+	}
+
+	/**
+	 * Remove the player from the player name index
+	 *
+	 * @param player
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public static void onQuit(Player player) {
+		if (playerNameIndex != null)
+			playerNameIndex.remove(player.getName());
+	}
 
-		for (final Iterator<String> iterator = tab.iterator(); iterator.hasNext();) {
-			final String val = iterator.next();
+	/**
+	 * Add the world to the world name index
+	 *
+	 * @param world
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public static void onWorldLoad(World world) {
+		if (worldNameIndex != null)
+			worldNameIndex.add(world.getName());
+	}
 
-			if (!val.toLowerCase().startsWith(partialName))
-				iterator.remove();
+	/**
+	 * Remove the world from the world name index
+	 *
+	 * @param world
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public static void onWorldUnload(World world) {
+		if (worldNameIndex != null)
+			worldNameIndex.remove(world.getName());
+	}
+
+	/*
+	 * Parse the element and add it, or its values if it is an iterable or enum array, if they start with the prefix
+	 */
+	private static void addMatching(List<String> tab, String prefix, Object element) {
+		if (element == null)
+			return;
+
+		if (element instanceof Iterable) {
+			for (final Object iterable : (Iterable<?>) element)
+				addIfStartsWith(tab, prefix, iterable instanceof Enum ? iterable.toString().toLowerCase() : SerializeUtil.serialize(Mode.YAML, iterable).toString());
 		}
 
-		Collections.sort(tab);
+		// Trick: Automatically parse enum constants
+		else if (element instanceof Enum[])
+			for (final Object iterable : ((Enum[]) element)[0].getClass().getEnumConstants())
+				addIfStartsWith(tab, prefix, iterable.toString().toLowerCase());
 
-		return tab;
+		else {
+			final boolean lowercase = element instanceof Enum;
+			final String parsed = SerializeUtil.serialize(Mode.YAML, element).toString();
+
+			if (!"".equals(parsed))
+				addIfStartsWith(tab, prefix, lowercase ? parsed.toLowerCase() : parsed);
+		}
+	}
+
+	/*
+	 * Add the value if it starts with the lowercase prefix ignoring case
+	 */
+	private static void addIfStartsWith(List<String> tab, String prefix, String value) {
+		if (startsWith(value, prefix))
+			tab.add(value);
+	}
+
+	/*
+	 * Return true if the value starts with the lowercase prefix ignoring case, without copying the value
+	 */
+	private static boolean startsWith(String value, String prefix) {
+		return value.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	/*
+	 * Return the index of the enum if we were given all of its constants in order, or null
+	 */
+	private static CompletionIndex getEnumIndex(Enum<?>[] values) {
+		final Class<?> type = values[0].getDeclaringClass();
+		final Object[] constants = enumConstants.computeIfAbsent(type, Class::getEnumConstants);
+
+		if (!Arrays.equals(values, constants))
+			return null;
+
+		return enumIndexes.computeIfAbsent(type, key -> {
+			final List<String> parsed = new ArrayList<>(constants.length);
+
+			for (final Object constant : constants) {
+				final Object serialized = SerializeUtil.serialize(Mode.YAML, constant);
+
+				if (serialized != null && !"".equals(serialized.toString()))
+					parsed.add(serialized.toString().toLowerCase());
+			}
+
+			return new CompletionIndex(parsed);
+		});
+	}
+
+	/**
+	 * A sorted set of completions searched by their lowercase prefix,
+	 * so we only look at values that match.
+	 * <p>
+	 * Reading is lock free. Adding and removing copies the values,
+	 * which is meant for rare changes such as players joining.
+	 */
+	public static final class CompletionIndex {
+
+		/**
+		 * The current values, replaced on each change
+		 */
+		private volatile Snapshot snapshot;
+
+		/**
+		 * Create a new index from the given values, ignoring duplicates
+		 *
+		 * @param values
+		 */
+		public CompletionIndex(Iterable<String> values) {
+			final List<String> sorted = new ArrayList<>();
+
+			for (final String value : values)
+				if (value != null)
+					sorted.add(value);
+
+			sorted.sort(CompletionIndex::compare);
+
+			final List<String> keys = new ArrayList<>(sorted.size());
+			final List<String> unique = new ArrayList<>(sorted.size());
+
+			for (final String value : sorted)
+				if (unique.isEmpty() || !unique.get(unique.size() - 1).equals(value)) {
+					keys.add(value.toLowerCase());
+					unique.add(value);
+				}
+
+			this.snapshot = new Snapshot(keys.toArray(new String[keys.size()]), unique.toArray(new String[unique.size()]));
+		}
+
+		/**
+		 * Return values starting with the given name ignoring case, sorted
+		 *
+		 * @param partialName
+		 * @return
+		 */
+		public List<String> complete(String partialName) {
+			return this.complete(partialName, null);
+		}
+
+		/**
+		 * Return values starting with the given name ignoring case that pass the filter, sorted
+		 *
+		 * @param partialName
+		 * @param filter
+		 * @return
+		 */
+		public List<String> complete(String partialName, @Nullable Predicate<String> filter) {
+			final Snapshot snapshot = this.snapshot;
+			final String prefix = partialName.toLowerCase();
+			final List<String> found = new ArrayList<>();
+
+			for (int index = snapshot.findFirst(prefix, ""); index < snapshot.keys.length && snapshot.keys[index].startsWith(prefix); index++)
+				if (filter == null || filter.test(snapshot.values[index]))
+					found.add(snapshot.values[index]);
+
+			// Values sharing the lowercase prefix may still differ in case
+			Collections.sort(found);
+
+			return found;
+		}
+
+		/**
+		 * Return true if the index has the exact value
+		 *
+		 * @param value
+		 * @return
+		 */
+		public boolean contains(String value) {
+			final Snapshot snapshot = this.snapshot;
+			final int index = snapshot.findFirst(value.toLowerCase(), value);
+
+			return index < snapshot.values.length && snapshot.values[index].equals(value);
+		}
+
+		/**
+		 * Add the value unless it is already present
+		 *
+		 * @param value
+		 */
+		public synchronized void add(String value) {
+			final Snapshot snapshot = this.snapshot;
+			final String key = value.toLowerCase();
+			final int index = snapshot.findFirst(key, value);
+
+			if (index < snapshot.values.length && snapshot.values[index].equals(value))
+				return;
+
+			final int length = snapshot.values.length;
+			final String[] keys = new String[length + 1];
+			final String[] values = new String[length + 1];
+
+			System.arraycopy(snapshot.keys, 0, keys, 0, index);
+			System.arraycopy(snapshot.values, 0, values, 0, index);
+
+			keys[index] = key;
+			values[index] = value;
+
+			System.arraycopy(snapshot.keys, index, keys, index + 1, length - index);
+			System.arraycopy(snapshot.values, index, values, index + 1, length - index);
+
+			this.snapshot = new Snapshot(keys, values);
+		}
+
+		/**
+		 * Remove the value if present
+		 *
+		 * @param value
+		 */
+		public synchronized void remove(String value) {
+			final Snapshot snapshot = this.snapshot;
+			final int index = snapshot.findFirst(value.toLowerCase(), value);
+
+			if (index >= snapshot.values.length || !snapshot.values[index].equals(value))
+				return;
+
+			final int length = snapshot.values.length;
+			final String[] keys = new String[length - 1];
+			final String[] values = new String[length - 1];
+
+			System.arraycopy(snapshot.keys, 0, keys, 0, index);
+			System.arraycopy(snapshot.values, 0, values, 0, index);
+			System.arraycopy(snapshot.keys, index + 1, keys, index, length - index - 1);
+			System.arraycopy(snapshot.values, index + 1, values, index, length - index - 1);
+
+			this.snapshot = new Snapshot(keys, values);
+		}
+
+		/**
+		 * Return how many values we have
+		 *
+		 * @return
+		 */
+		public int size() {
+			return this.snapshot.values.length;
+		}
+
+		@Override
+		public String toString() {
+			return "CompletionIndex{size=" + this.size() + "}";
+		}
+
+		/*
+		 * Order values by their lowercase form, then by the value itself
+		 */
+		private static int compare(String first, String second) {
+			final int result = first.toLowerCase().compareTo(second.toLowerCase());
+
+			return result != 0 ? result : first.compareTo(second);
+		}
+
+		/*
+		 * Sorted lowercase keys paired with their values by index
+		 */
+		@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+		private static final class Snapshot {
+			private final String[] keys;
+			private final String[] values;
+
+			/*
+			 * Return the first position whose key and value are not lower than the given ones
+			 */
+			private int findFirst(String key, String value) {
+				int low = 0;
+				int high = this.keys.length;
+
+				while (low < high) {
+					final int middle = (low + high) >>> 1;
+					int result = this.keys[middle].compareTo(key);
+
+					if (result == 0)
+						result = this.values[middle].compareTo(value);
+
+					if (result < 0)
+						low = middle + 1;
+					else
+						high = middle;
+				}
+
+				return low;
+			}
+		}
 	}
 }
@@ -180,56 +180,63 @@
 package org.mineacademy.fo.collection.expiringmap;
 
 import java.lang.ref.WeakReference;
-import java.util.AbstractCollection;
+import java.util.AbstractMap;
 import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
-import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.mineacademy.fo.Valid;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 
 /**
  * A thread-safe map that expires entries. Optional features include expiration
- * policies, variable entry expiration, lazy entry loading, and expiration
- * listeners.
+ * policies, variable entry expiration, lazy entry loading, a maximum size and
+ * expiration listeners.
  *
  * <p>
- * Entries are tracked by expiration time and expired by a single thread.
+ * Entries are stored in a {@link ConcurrentHashMap} so reads never block and
+ * writes only contend on the same hash bin. Expired entries are never returned,
+ * they are removed when read and in the background by a hashed timing wheel
+ * that a single shared thread advances while the map is not empty.
  *
  * <p>
- * Expiration listeners are called synchronously as entries are expired and
- * block write operations to the map until they completed. Asynchronous
- * expiration listeners are called on a separate thread pool and do not block
- * map operations.
+ * Entry loaders are called outside of any lock. Concurrent reads of the same
+ * missing key wait for one load, reads of other keys are never blocked.
  *
  * <p>
- * When variable expiration is disabled (default), put/remove operations have a
- * time complexity <i>O(1)</i>. When variable expiration is enabled, put/remove
- * operations have time complexity of <i>O(log n)</i>.
+ * Once the maximum size is reached, adding an entry evicts the least frequently
+ * used of a few sampled entries, preferring those closest to expiration.
+ *
+ * <p>
+ * Expiration listeners are called synchronously on the thread that expired or
+ * evicted the entry. Asynchronous expiration listeners are called on a separate
+ * thread pool. See {@link #getStats()} for hit, miss and eviction counts.
  *
  * <p>
  * Example usages:
@@ -259,26 +266,69 @@ import lombok.NonNull;
  * @param <V> Value type
  * @author Jonathan Halterman
  */
-public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
+public final class ExpiringMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
 	static volatile ScheduledExecutorService EXPIRER;
 	static volatile ThreadPoolExecutor LISTENER_SERVICE;
 	static ThreadFactory THREAD_FACTORY;
 
+	/**
+	 * How many buckets the timing wheel has, must be a power of two
+	 */
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * The shortest and longest time between two timing wheel ticks
+	 */
+	private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long MAX_TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * How many entries we compare when evicting due to the maximum size
+	 */
+	private static final int EVICTION_SAMPLE_SIZE = 8;
+
 	List<ExpirationListener<K, V>> expirationListeners;
 	List<ExpirationListener<K, V>> asyncExpirationListeners;
 	private final AtomicLong expirationNanos;
-	private int maxSize;
+	private volatile int maxSize;
 	private final AtomicReference<ExpirationPolicy> expirationPolicy;
 	private final EntryLoader<? super K, ? extends V> entryLoader;
 	private final ExpiringEntryLoader<? super K, ? extends V> expiringEntryLoader;
-	private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-	private final Lock readLock = this.readWriteLock.readLock();
-	private final Lock writeLock = this.readWriteLock.writeLock();
+	private final ConcurrentHashMap<K, ExpiringEntry<K, V>> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+	private final boolean variableExpiration;
+
 	/**
-	 * Guarded by "readWriteLock"
+	 * Entries added or rescheduled to an earlier time, waiting for the expirer thread to file them
 	 */
-	private final EntryMap<K, V> entries;
-	private final boolean variableExpiration;
+	private final Queue<ExpiringEntry<K, V>> pendingEntries = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Only accessed from the expirer thread
+	 */
+	private final TimingWheel wheel;
+
+	/**
+	 * Is the expirer thread ticking the wheel of this map?
+	 */
+	private final AtomicBoolean ticking = new AtomicBoolean();
+
+	/**
+	 * Access frequencies used for eviction, null if the map has no maximum size
+	 */
+	private volatile FrequencySketch frequencySketch;
+
+	/**
+	 * Where we continue sampling eviction candidates from, guarded by itself
+	 */
+	private final Object evictionLock = new Object();
+	private Iterator<ExpiringEntry<K, V>> evictionCursor;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expirationCount = new LongAdder();
 
 	public interface ExpirationListener<K, V> {
 		void expired(K var1, V var2);
@@ -308,15 +358,7 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 							THREAD_FACTORY == null ? new NamedThreadFactory("ExpiringMap-Expirer") : THREAD_FACTORY);
 			}
 
-		if (LISTENER_SERVICE == null && builder.asyncExpirationListeners != null)
-			synchronized (ExpiringMap.class) {
-				if (LISTENER_SERVICE == null)
-					LISTENER_SERVICE = (ThreadPoolExecutor) Executors.newCachedThreadPool(
-							THREAD_FACTORY == null ? new NamedThreadFactory("ExpiringMap-Listener-%s") : THREAD_FACTORY);
-			}
-
 		this.variableExpiration = builder.variableExpiration;
-		this.entries = this.variableExpiration ? new EntryTreeHashMap<>() : new EntryLinkedHashMap<>();
 		if (builder.expirationListeners != null)
 			this.expirationListeners = new CopyOnWriteArrayList<>(builder.expirationListeners);
 		if (builder.asyncExpirationListeners != null)
@@ -326,6 +368,10 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		this.maxSize = builder.maxSize;
 		this.entryLoader = builder.entryLoader;
 		this.expiringEntryLoader = builder.expiringEntryLoader;
+		this.wheel = new TimingWheel(Math.max(MIN_TICK_NANOS, Math.min(MAX_TICK_NANOS, this.expirationNanos.get() / 16)));
+
+		if (this.maxSize != Integer.MAX_VALUE)
+			this.frequencySketch = new FrequencySketch(this.maxSize);
 	}
 
 	/**
@@ -379,8 +425,7 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 
 		/**
 		 * Sets the maximum size of the map. Once this size has been reached, adding an
-		 * additional entry will expire the first entry in line for expiration based on
-		 * the expiration policy.
+		 * additional entry will evict the least frequently used of a few sampled entries.
 		 *
 		 * @param maxSize The maximum size of the map.
 		 * @return
@@ -431,8 +476,8 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 
 		/**
 		 * Configures the expiration listener that will receive notifications upon each
-		 * map entry's expiration. Notifications are delivered synchronously and block
-		 * map write operations.
+		 * map entry's expiration. Notifications are delivered synchronously on
+		 * the thread that expired the entry.
 		 * @param <K1>
 		 * @param <V1>
 		 *
@@ -451,8 +496,8 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 
 		/**
 		 * Configures the expiration listeners which will receive notifications upon
-		 * each map entry's expiration. Notifications are delivered synchronously and
-		 * block map write operations.
+		 * each map entry's expiration. Notifications are delivered synchronously on
+		 * the thread that expired the entry.
 		 * @param <K1>
 		 * @param <V1>
 		 *
@@ -538,229 +583,26 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		}
 	}
 
-	/**
-	 * Entry map definition.
-	 */
-	private interface EntryMap<K, V> extends Map<K, ExpiringEntry<K, V>> {
-		/**
-		 * Returns the first entry in the map or null if the map is empty.
-		 * @return
-		 */
-		ExpiringEntry<K, V> first();
-
-		/**
-		 * Reorders the given entry in the map.
-		 *
-		 * @param entry to reorder
-		 */
-		void reorder(ExpiringEntry<K, V> entry);
-
-		/**
-		 * Returns a values iterator.
-		 * @return
-		 */
-		Iterator<ExpiringEntry<K, V>> valuesIterator();
-	}
-
-	/**
-	 * Entry LinkedHashMap implementation.
-	 */
-	private static class EntryLinkedHashMap<K, V> extends LinkedHashMap<K, ExpiringEntry<K, V>>
-			implements EntryMap<K, V> {
-		private static final long serialVersionUID = 1L;
-
-		@Override
-		public boolean containsValue(Object value) {
-			for (final ExpiringEntry<K, V> entry : this.values()) {
-				final V v = entry.value;
-				if (v == value || value != null && value.equals(v))
-					return true;
-			}
-			return false;
-		}
-
-		@Override
-		public ExpiringEntry<K, V> first() {
-			return this.isEmpty() ? null : this.values().iterator().next();
-		}
-
-		@Override
-		public void reorder(ExpiringEntry<K, V> value) {
-			this.remove(value.key);
-			value.resetExpiration();
-			this.put(value.key, value);
-		}
-
-		@Override
-		public Iterator<ExpiringEntry<K, V>> valuesIterator() {
-			return this.values().iterator();
-		}
-
-		abstract class AbstractHashIterator {
-			private final Iterator<Map.Entry<K, ExpiringEntry<K, V>>> iterator = EntryLinkedHashMap.this.entrySet().iterator();
-			private ExpiringEntry<K, V> next;
-
-			public boolean hasNext() {
-				return this.iterator.hasNext();
-			}
-
-			public ExpiringEntry<K, V> getNext() {
-				this.next = this.iterator.next().getValue();
-				return this.next;
-			}
-
-			public void remove() {
-				this.iterator.remove();
-			}
-		}
-
-		final class KeyIterator extends AbstractHashIterator implements Iterator<K> {
-			@Override
-			public K next() {
-				return this.getNext().key;
-			}
-		}
-
-		final class ValueIterator extends AbstractHashIterator implements Iterator<V> {
-			@Override
-			public V next() {
-				return this.getNext().value;
-			}
-		}
-
-		public final class EntryIterator extends AbstractHashIterator implements Iterator<Map.Entry<K, V>> {
-			@Override
-			public Map.Entry<K, V> next() {
-				return mapEntryFor(this.getNext());
-			}
-		}
-	}
-
-	/**
-	 * Entry TreeHashMap implementation for variable expiration ExpiringMap entries.
-	 */
-	private static class EntryTreeHashMap<K, V> extends HashMap<K, ExpiringEntry<K, V>> implements EntryMap<K, V> {
-		private static final long serialVersionUID = 1L;
-		SortedSet<ExpiringEntry<K, V>> sortedSet = new ConcurrentSkipListSet<>();
-
-		@Override
-		public void clear() {
-			super.clear();
-			this.sortedSet.clear();
-		}
-
-		@Override
-		public boolean containsValue(Object value) {
-			for (final ExpiringEntry<K, V> entry : this.values()) {
-				final V v = entry.value;
-				if (v == value || value != null && value.equals(v))
-					return true;
-			}
-			return false;
-		}
-
-		@Override
-		public ExpiringEntry<K, V> first() {
-			return this.sortedSet.isEmpty() ? null : this.sortedSet.first();
-		}
-
-		@Override
-		public ExpiringEntry<K, V> put(K key, ExpiringEntry<K, V> value) {
-			this.sortedSet.add(value);
-			return super.put(key, value);
-		}
-
-		@Override
-		public ExpiringEntry<K, V> remove(Object key) {
-			final ExpiringEntry<K, V> entry = super.remove(key);
-			if (entry != null)
-				this.sortedSet.remove(entry);
-			return entry;
-		}
-
-		@Override
-		public void reorder(ExpiringEntry<K, V> value) {
-			this.sortedSet.remove(value);
-			value.resetExpiration();
-			this.sortedSet.add(value);
-		}
-
-		@Override
-		public Iterator<ExpiringEntry<K, V>> valuesIterator() {
-			return new ExpiringEntryIterator();
-		}
-
-		abstract class AbstractHashIterator {
-			private final Iterator<ExpiringEntry<K, V>> iterator = EntryTreeHashMap.this.sortedSet.iterator();
-			protected ExpiringEntry<K, V> next;
-
-			public boolean hasNext() {
-				return this.iterator.hasNext();
-			}
-
-			public ExpiringEntry<K, V> getNext() {
-				this.next = this.iterator.next();
-				return this.next;
-			}
-
-			public void remove() {
-				EntryTreeHashMap.super.remove(this.next.key);
-				this.iterator.remove();
-			}
-		}
-
-		final class ExpiringEntryIterator extends AbstractHashIterator implements Iterator<ExpiringEntry<K, V>> {
-			@Override
-			public ExpiringEntry<K, V> next() {
-				return this.getNext();
-			}
-		}
-
-		final class KeyIterator extends AbstractHashIterator implements Iterator<K> {
-			@Override
-			public K next() {
-				return this.getNext().key;
-			}
-		}
-
-		final class ValueIterator extends AbstractHashIterator implements Iterator<V> {
-			@Override
-			public V next() {
-				return this.getNext().value;
-			}
-		}
-
-		final class EntryIterator extends AbstractHashIterator implements Iterator<Map.Entry<K, V>> {
-			@Override
-			public Map.Entry<K, V> next() {
-				return mapEntryFor(this.getNext());
-			}
-		}
-	}
-
 	/**
 	 * Expiring map entry implementation.
 	 */
-	static class ExpiringEntry<K, V> implements Comparable<ExpiringEntry<K, V>> {
+	static final class ExpiringEntry<K, V> {
 		final AtomicLong expirationNanos;
-		/**
-		 * Epoch time at which the entry is expected to expire
-		 */
-		final AtomicLong expectedExpiration;
 		final AtomicReference<ExpirationPolicy> expirationPolicy;
 		final K key;
+		volatile V value;
+
 		/**
-		 * Guarded by "this"
-		 */
-		volatile Future<?> entryFuture;
-		/**
-		 * Guarded by "this"
+		 * System nano time at which the entry is expected to expire
 		 */
-		V value;
+		volatile long expectedExpiration;
+
 		/**
-		 * Guarded by "this"
+		 * The timing wheel bucket and its neighbors, only accessed from the expirer thread
 		 */
-		volatile boolean scheduled;
+		int bucket = -1;
+		ExpiringEntry<K, V> previous;
+		ExpiringEntry<K, V> next;
 
 		/**
 		 * Creates a new ExpiringEntry object.
@@ -769,91 +611,78 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		 * @param value            for the entry
 		 * @param expirationPolicy for the entry
 		 * @param expirationNanos  for the entry
+		 * @param now              the current system nano time
 		 */
-		ExpiringEntry(K key, V value, AtomicReference<ExpirationPolicy> expirationPolicy, AtomicLong expirationNanos) {
+		ExpiringEntry(K key, V value, AtomicReference<ExpirationPolicy> expirationPolicy, AtomicLong expirationNanos, long now) {
 			this.key = key;
 			this.value = value;
 			this.expirationPolicy = expirationPolicy;
 			this.expirationNanos = expirationNanos;
-			this.expectedExpiration = new AtomicLong();
-			this.resetExpiration();
-		}
-
-		@Override
-		public int compareTo(ExpiringEntry<K, V> other) {
-			if (this.key.equals(other.key))
-				return 0;
-			return this.expectedExpiration.get() < other.expectedExpiration.get() ? -1 : 1;
+			this.resetExpiration(now);
 		}
 
-		@Override
-		public int hashCode() {
-			return Objects.hash(this.key, this.value);
+		/**
+		 * Return true if the entry expired at the given system nano time
+		 */
+		boolean isExpired(long now) {
+			return this.expectedExpiration - now <= 0;
 		}
 
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (this.getClass() != obj.getClass())
-				return false;
-			final ExpiringEntry<?, ?> other = (ExpiringEntry<?, ?>) obj;
-			if (!this.key.equals(other.key))
-				return false;
-			if (!Objects.equals(this.value, other.value))
-				return false;
-			return true;
+		/**
+		 * Resets the entry's expected expiration.
+		 */
+		void resetExpiration(long now) {
+			this.expectedExpiration = now + this.expirationNanos.get();
 		}
 
 		@Override
 		public String toString() {
 			return this.value != null ? this.value.toString() : "";
 		}
+	}
+
+	/**
+	 * A snapshot of map statistics since it was created.
+	 */
+	@Getter
+	@ToString
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	public static final class Stats {
 
 		/**
-		 * Marks the entry as canceled.
-		 *
-		 * @return true if the entry was scheduled
+		 * How many times {@link ExpiringMap#get(Object)} found a value
 		 */
-		synchronized boolean cancel() {
-			final boolean result = this.scheduled;
-			if (this.entryFuture != null)
-				this.entryFuture.cancel(false);
-
-			this.entryFuture = null;
-			this.scheduled = false;
-			return result;
-		}
+		private final long hitCount;
 
 		/**
-		 * Gets the entry value.
+		 * How many times {@link ExpiringMap#get(Object)} found no value
 		 */
-		synchronized V getValue() {
-			return this.value;
-		}
+		private final long missCount;
 
 		/**
-		 * Resets the entry's expected expiration.
+		 * How many values were loaded by the entry loader
 		 */
-		void resetExpiration() {
-			this.expectedExpiration.set(this.expirationNanos.get() + System.nanoTime());
-		}
+		private final long loadCount;
 
 		/**
-		 * Marks the entry as scheduled.
+		 * How many entries were removed due to the maximum size
 		 */
-		synchronized void schedule(Future<?> entryFuture) {
-			this.entryFuture = entryFuture;
-			this.scheduled = true;
-		}
+		private final long evictionCount;
 
 		/**
-		 * Sets the entry value.
+		 * How many entries were removed because they expired
 		 */
-		synchronized void setValue(V value) {
-			this.value = value;
+		private final long expirationCount;
+
+		/**
+		 * Return the ratio of hits to all reads, 1 if there were no reads
+		 *
+		 * @return
+		 */
+		public double getHitRate() {
+			final long total = this.hitCount + this.missCount;
+
+			return total == 0 ? 1 : (double) this.hitCount / total;
 		}
 	}
 
@@ -906,34 +735,23 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 
 	@Override
 	public void clear() {
-		this.writeLock.lock();
-		try {
-			for (final ExpiringEntry<K, V> entry : this.entries.values())
-				entry.cancel();
-			this.entries.clear();
-		} finally {
-			this.writeLock.unlock();
-		}
+		this.entries.clear();
 	}
 
 	@Override
 	public boolean containsKey(Object key) {
-		this.readLock.lock();
-		try {
-			return this.entries.containsKey(key);
-		} finally {
-			this.readLock.unlock();
-		}
+		return this.getEntry(key) != null;
 	}
 
 	@Override
 	public boolean containsValue(Object value) {
-		this.readLock.lock();
-		try {
-			return this.entries.containsValue(value);
-		} finally {
-			this.readLock.unlock();
-		}
+		final long now = System.nanoTime();
+
+		for (final ExpiringEntry<K, V> entry : this.entries.values())
+			if (!entry.isExpired(now) && Objects.equals(entry.value, value))
+				return true;
+
+		return false;
 	}
 
 	@Override
@@ -954,8 +772,7 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 
 			@Override
 			public Iterator<Map.Entry<K, V>> iterator() {
-				return ExpiringMap.this.entries instanceof EntryLinkedHashMap ? ((EntryLinkedHashMap<K, V>) ExpiringMap.this.entries).new EntryIterator()
-						: ((EntryTreeHashMap<K, V>) ExpiringMap.this.entries).new EntryIterator();
+				return new EntryIterator();
 			}
 
 			@Override
@@ -974,59 +791,88 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		};
 	}
 
-	@Override
-	public boolean equals(Object obj) {
-		this.readLock.lock();
-		try {
-			return this.entries.equals(obj);
-		} finally {
-			this.readLock.unlock();
-		}
-	}
-
 	@Override
 	public V get(Object key) {
+		if (key == null)
+			return null;
+
+		this.recordAccess(key);
+
 		final ExpiringEntry<K, V> entry = this.getEntry(key);
 
-		if (entry == null)
+		if (entry == null) {
+			this.missCount.increment();
+
 			return this.load((K) key);
-		else if (ExpirationPolicy.ACCESSED.equals(entry.expirationPolicy.get()))
-			this.resetEntry(entry, false);
+		}
+
+		this.hitCount.increment();
 
-		return entry.getValue();
+		if (ExpirationPolicy.ACCESSED.equals(entry.expirationPolicy.get()))
+			entry.resetExpiration(System.nanoTime());
+
+		return entry.value;
 	}
 
+	/*
+	 * Load the value for the key, only once for all threads asking for it at the same time
+	 */
 	private V load(K key) {
 		if (this.entryLoader == null && this.expiringEntryLoader == null)
 			return null;
 
-		this.writeLock.lock();
+		final CompletableFuture<V> future = new CompletableFuture<>();
+		final CompletableFuture<V> pending = this.loading.putIfAbsent(key, future);
+
+		if (pending != null)
+			try {
+				return pending.join();
+
+			} catch (final CompletionException ex) {
+				throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+			}
+
 		try {
 			// Double check for entry
 			final ExpiringEntry<K, V> entry = this.getEntry(key);
-			if (entry != null)
-				return entry.getValue();
-
-			if (this.entryLoader != null) {
-				final V value = this.entryLoader.load(key);
-				this.put(key, value);
-				return value;
-			} else {
-				final ExpiringValue<? extends V> expiringValue = this.expiringEntryLoader.load(key);
-				if (expiringValue == null) {
-					this.put(key, null);
-					return null;
-				} else {
-					final long duration = expiringValue.getTimeUnit() == null ? this.expirationNanos.get() : expiringValue.getDuration();
-					final TimeUnit timeUnit = expiringValue.getTimeUnit() == null ? TimeUnit.NANOSECONDS : expiringValue.getTimeUnit();
-					this.put(key, expiringValue.getValue(), expiringValue.getExpirationPolicy() == null ? this.expirationPolicy.get()
-							: expiringValue.getExpirationPolicy(), duration, timeUnit);
-					return expiringValue.getValue();
-				}
-			}
+			final V value = entry != null ? entry.value : this.loadValue(key);
+
+			future.complete(value);
+			return value;
+
+		} catch (RuntimeException | Error ex) {
+			future.completeExceptionally(ex);
+
+			throw ex;
+
 		} finally {
-			this.writeLock.unlock();
+			this.loading.remove(key, future);
+		}
+	}
+
+	/*
+	 * Call the entry loader and put its value to the map
+	 */
+	private V loadValue(K key) {
+		this.loadCount.increment();
+
+		if (this.entryLoader != null) {
+			final V value = this.entryLoader.load(key);
+			this.put(key, value);
+			return value;
+		}
+
+		final ExpiringValue<? extends V> expiringValue = this.expiringEntryLoader.load(key);
+		if (expiringValue == null) {
+			this.put(key, null);
+			return null;
 		}
+
+		final long duration = expiringValue.getTimeUnit() == null ? this.expirationNanos.get() : expiringValue.getDuration();
+		final TimeUnit timeUnit = expiringValue.getTimeUnit() == null ? TimeUnit.NANOSECONDS : expiringValue.getTimeUnit();
+		this.put(key, expiringValue.getValue(), expiringValue.getExpirationPolicy() == null ? this.expirationPolicy.get()
+				: expiringValue.getExpirationPolicy(), duration, timeUnit);
+		return expiringValue.getValue();
 	}
 
 	/**
@@ -1050,7 +896,7 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 	public long getExpiration(K key) {
 		Valid.checkNotNull(key, "key");
 		final ExpiringEntry<K, V> entry = this.getEntry(key);
-
+		Valid.checkNotNull(entry);
 		return TimeUnit.NANOSECONDS.toMillis(entry.expirationNanos.get());
 	}
 
@@ -1083,13 +929,12 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		Valid.checkNotNull(key, "key");
 		final ExpiringEntry<K, V> entry = this.getEntry(key);
 		Valid.checkNotNull(entry);
-		return TimeUnit.NANOSECONDS.toMillis(entry.expectedExpiration.get() - System.nanoTime());
+		return TimeUnit.NANOSECONDS.toMillis(entry.expectedExpiration - System.nanoTime());
 	}
 
 	/**
 	 * Gets the maximum size of the map. Once this size has been reached, adding an
-	 * additional entry will expire the first entry in line for expiration based on
-	 * the expiration policy.
+	 * additional entry will evict the least frequently used of a few sampled entries.
 	 *
 	 * @return The maximum size of the map.
 	 */
@@ -1097,55 +942,18 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		return this.maxSize;
 	}
 
-	@Override
-	public int hashCode() {
-		this.readLock.lock();
-		try {
-			return this.entries.hashCode();
-		} finally {
-			this.readLock.unlock();
-		}
+	/**
+	 * Return hit, miss, load, eviction and expiration counts since this map was created.
+	 *
+	 * @return
+	 */
+	public Stats getStats() {
+		return new Stats(this.hitCount.sum(), this.missCount.sum(), this.loadCount.sum(), this.evictionCount.sum(), this.expirationCount.sum());
 	}
 
 	@Override
 	public boolean isEmpty() {
-		this.readLock.lock();
-		try {
-			return this.entries.isEmpty();
-		} finally {
-			this.readLock.unlock();
-		}
-	}
-
-	@Override
-	public Set<K> keySet() {
-		return new AbstractSet<K>() {
-			@Override
-			public void clear() {
-				ExpiringMap.this.clear();
-			}
-
-			@Override
-			public boolean contains(Object key) {
-				return ExpiringMap.this.containsKey(key);
-			}
-
-			@Override
-			public Iterator<K> iterator() {
-				return ExpiringMap.this.entries instanceof EntryLinkedHashMap ? ((EntryLinkedHashMap<K, V>) ExpiringMap.this.entries).new KeyIterator()
-						: ((EntryTreeHashMap<K, V>) ExpiringMap.this.entries).new KeyIterator();
-			}
-
-			@Override
-			public boolean remove(Object value) {
-				return ExpiringMap.this.remove(value) != null;
-			}
-
-			@Override
-			public int size() {
-				return ExpiringMap.this.size();
-			}
-		};
+		return this.entries.isEmpty();
 	}
 
 	/**
@@ -1216,91 +1024,110 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		Valid.checkNotNull(map, "map");
 		final long expiration = this.expirationNanos.get();
 		final ExpirationPolicy expirationPolicy = this.expirationPolicy.get();
-		this.writeLock.lock();
-		try {
-			for (final Map.Entry<? extends K, ? extends V> entry : map.entrySet())
-				this.putInternal(entry.getKey(), entry.getValue(), expirationPolicy, expiration);
-		} finally {
-			this.writeLock.unlock();
-		}
+		for (final Map.Entry<? extends K, ? extends V> entry : map.entrySet())
+			this.putInternal(entry.getKey(), entry.getValue(), expirationPolicy, expiration);
 	}
 
 	@Override
 	public V putIfAbsent(K key, V value) {
 		Valid.checkNotNull(key, "key");
-		this.writeLock.lock();
-		try {
-			if (!this.entries.containsKey(key))
-				return this.putInternal(key, value, this.expirationPolicy.get(), this.expirationNanos.get());
-			else
-				return this.entries.get(key).getValue();
-		} finally {
-			this.writeLock.unlock();
-		}
+		final Update<K, V> update = new Update<>();
+		final long now = System.nanoTime();
+
+		this.entries.compute(key, (k, entry) -> {
+			if (entry != null && !entry.isExpired(now)) {
+				update.oldValue = entry.value;
+				return entry;
+			}
+
+			update.expired = entry;
+			update.added = this.createEntry(k, value, this.expirationPolicy.get(), this.expirationNanos.get(), now);
+			return update.added;
+		});
+
+		this.afterUpdate(update);
+		return update.oldValue;
 	}
 
 	@Override
 	public V remove(Object key) {
 		Valid.checkNotNull(key, "key");
-		this.writeLock.lock();
-		try {
-			final ExpiringEntry<K, V> entry = this.entries.remove(key);
-			if (entry == null)
-				return null;
-			if (entry.cancel())
-				this.scheduleEntry(this.entries.first());
-			return entry.getValue();
-		} finally {
-			this.writeLock.unlock();
+		final ExpiringEntry<K, V> entry = this.entries.remove(key);
+		if (entry == null)
+			return null;
+		if (entry.isExpired(System.nanoTime())) {
+			this.onExpired(entry);
+			return null;
 		}
+		return entry.value;
 	}
 
 	@Override
 	public boolean remove(Object key, Object value) {
 		Valid.checkNotNull(key, "key");
-		this.writeLock.lock();
-		try {
-			final ExpiringEntry<K, V> entry = this.entries.get(key);
-			if (entry != null && entry.getValue().equals(value)) {
-				this.entries.remove(key);
-				if (entry.cancel())
-					this.scheduleEntry(this.entries.first());
-				return true;
-			} else
-				return false;
-		} finally {
-			this.writeLock.unlock();
-		}
+		final Update<K, V> update = new Update<>();
+		final long now = System.nanoTime();
+
+		this.entries.computeIfPresent((K) key, (k, entry) -> {
+			if (entry.isExpired(now)) {
+				update.expired = entry;
+				return null;
+			}
+
+			if (Objects.equals(entry.value, value)) {
+				update.replaced = true;
+				return null;
+			}
+
+			return entry;
+		});
+
+		this.afterUpdate(update);
+		return update.replaced;
 	}
 
 	@Override
 	public V replace(K key, V value) {
 		Valid.checkNotNull(key, "key");
-		this.writeLock.lock();
-		try {
-			if (this.entries.containsKey(key))
-				return this.putInternal(key, value, this.expirationPolicy.get(), this.expirationNanos.get());
-			else
+		final Update<K, V> update = new Update<>();
+		final long now = System.nanoTime();
+
+		this.entries.computeIfPresent(key, (k, entry) -> {
+			if (entry.isExpired(now)) {
+				update.expired = entry;
 				return null;
-		} finally {
-			this.writeLock.unlock();
-		}
+			}
+
+			this.updateEntry(entry, value, this.expirationPolicy.get(), now, update);
+			return entry;
+		});
+
+		this.afterUpdate(update);
+		return update.oldValue;
 	}
 
 	@Override
 	public boolean replace(K key, V oldValue, V newValue) {
 		Valid.checkNotNull(key, "key");
-		this.writeLock.lock();
-		try {
-			final ExpiringEntry<K, V> entry = this.entries.get(key);
-			if (entry != null && entry.getValue().equals(oldValue)) {
-				this.putInternal(key, newValue, this.expirationPolicy.get(), this.expirationNanos.get());
-				return true;
-			} else
-				return false;
-		} finally {
-			this.writeLock.unlock();
-		}
+		final Update<K, V> update = new Update<>();
+		final long now = System.nanoTime();
+
+		this.entries.computeIfPresent(key, (k, entry) -> {
+			if (entry.isExpired(now)) {
+				update.expired = entry;
+				return null;
+			}
+
+			if (Objects.equals(entry.value, oldValue)) {
+				this.updateEntry(entry, newValue, this.expirationPolicy.get(), now, update);
+				update.replaced = true;
+			}
+
+			return entry;
+		});
+
+		this.afterUpdate(update);
+		return update.replaced;
 	}
 
 	/**
@@ -1311,11 +1138,8 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 	 */
 	public void removeExpirationListener(ExpirationListener<K, V> listener) {
 		Valid.checkNotNull(listener, "listener");
-		for (int i = 0; i < this.expirationListeners.size(); i++)
-			if (this.expirationListeners.get(i).equals(listener)) {
-				this.expirationListeners.remove(i);
-				return;
-			}
+		if (this.expirationListeners != null)
+			this.expirationListeners.remove(listener);
 	}
 
 	/**
@@ -1326,11 +1150,8 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 	 */
 	public void removeAsyncExpirationListener(ExpirationListener<K, V> listener) {
 		Valid.checkNotNull(listener, "listener");
-		for (int i = 0; i < this.asyncExpirationListeners.size(); i++)
-			if (this.asyncExpirationListeners.get(i).equals(listener)) {
-				this.asyncExpirationListeners.remove(i);
-				return;
-			}
+		if (this.asyncExpirationListeners != null)
+			this.asyncExpirationListeners.remove(listener);
 	}
 
 	/**
@@ -1343,7 +1164,7 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		Valid.checkNotNull(key, "key");
 		final ExpiringEntry<K, V> entry = this.getEntry(key);
 		if (entry != null)
-			this.resetEntry(entry, false);
+			entry.resetExpiration(System.nanoTime());
 	}
 
 	/**
@@ -1362,15 +1183,13 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		Valid.checkNotNull(key, "key");
 		Valid.checkNotNull(timeUnit, "timeUnit");
 		Valid.checkBoolean(this.variableExpiration, "Variable expiration is not enabled");
-		this.writeLock.lock();
-		try {
-			final ExpiringEntry<K, V> entry = this.entries.get(key);
-			if (entry != null) {
-				entry.expirationNanos.set(TimeUnit.NANOSECONDS.convert(duration, timeUnit));
-				this.resetEntry(entry, true);
-			}
-		} finally {
-			this.writeLock.unlock();
+		final ExpiringEntry<K, V> entry = this.getEntry(key);
+		if (entry != null) {
+			entry.expirationNanos.set(TimeUnit.NANOSECONDS.convert(duration, timeUnit));
+			entry.resetExpiration(System.nanoTime());
+
+			// The entry may now expire sooner than the wheel expects it to
+			this.schedule(entry);
 		}
 	}
 
@@ -1422,60 +1241,23 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 
 	/**
 	 * Sets the maximum size of the map. Once this size has been reached, adding an
-	 * additional entry will expire the first entry in line for expiration based on
-	 * the expiration policy.
+	 * additional entry will evict the least frequently used of a few sampled entries.
 	 *
 	 * @param maxSize The maximum size of the map.
 	 */
 	public void setMaxSize(int maxSize) {
 		Valid.checkBoolean(maxSize > 0, "maxSize");
 		this.maxSize = maxSize;
-	}
 
-	@Override
-	public int size() {
-		this.readLock.lock();
-		try {
-			return this.entries.size();
-		} finally {
-			this.readLock.unlock();
-		}
-	}
+		if (maxSize != Integer.MAX_VALUE && this.frequencySketch == null)
+			this.frequencySketch = new FrequencySketch(maxSize);
 
-	@Override
-	public String toString() {
-		this.readLock.lock();
-		try {
-			return this.entries.toString();
-		} finally {
-			this.readLock.unlock();
-		}
+		this.evictIfNeeded(null);
 	}
 
 	@Override
-	public Collection<V> values() {
-		return new AbstractCollection<V>() {
-			@Override
-			public void clear() {
-				ExpiringMap.this.clear();
-			}
-
-			@Override
-			public boolean contains(Object value) {
-				return ExpiringMap.this.containsValue(value);
-			}
-
-			@Override
-			public Iterator<V> iterator() {
-				return ExpiringMap.this.entries instanceof EntryLinkedHashMap ? ((EntryLinkedHashMap<K, V>) ExpiringMap.this.entries).new ValueIterator()
-						: ((EntryTreeHashMap<K, V>) ExpiringMap.this.entries).new ValueIterator();
-			}
-
-			@Override
-			public int size() {
-				return ExpiringMap.this.size();
-			}
-		};
+	public int size() {
+		return this.entries.size();
 	}
 
 	/**
@@ -1487,9 +1269,9 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 	void notifyListeners(final ExpiringEntry<K, V> entry) {
 		if (this.asyncExpirationListeners != null)
 			for (final ExpirationListener<K, V> listener : this.asyncExpirationListeners)
-				LISTENER_SERVICE.execute(() -> {
+				getListenerService().execute(() -> {
 					try {
-						listener.expired(entry.key, entry.getValue());
+						listener.expired(entry.key, entry.value);
 					} catch (final Exception ignoreUserExceptions) {
 					}
 				});
@@ -1497,156 +1279,498 @@ public final class ExpiringMap<K, V> implements ConcurrentMap<K, V> {
 		if (this.expirationListeners != null)
 			for (final ExpirationListener<K, V> listener : this.expirationListeners)
 				try {
-					listener.expired(entry.key, entry.getValue());
+					listener.expired(entry.key, entry.value);
 				} catch (final Exception ignoreUserExceptions) {
 				}
 	}
 
 	/**
-	 * Returns the internal ExpiringEntry for the {@code key}, obtaining a read
-	 * lock.
+	 * Returns the internal ExpiringEntry for the {@code key}, or null if it is
+	 * missing or expired, in which case we remove it.
 	 */
 	ExpiringEntry<K, V> getEntry(Object key) {
-		this.readLock.lock();
-		try {
-			return this.entries.get(key);
-		} finally {
-			this.readLock.unlock();
+		if (key == null)
+			return null;
+
+		final ExpiringEntry<K, V> entry = this.entries.get(key);
+
+		if (entry == null)
+			return null;
+
+		final long now = System.nanoTime();
+
+		if (entry.isExpired(now)) {
+			this.removeIfExpired(entry, now);
+
+			return null;
 		}
+
+		return entry;
 	}
 
 	/**
 	 * Puts the given key/value in storage, scheduling the new entry for expiration
-	 * if needed. If a previous value existed for the given key, it is first
-	 * cancelled and the entries reordered to reflect the new expiration.
+	 * and evicting entries over the maximum size. If a previous value existed for
+	 * the given key, its value is replaced and its expiration reset.
 	 */
 	V putInternal(K key, V value, ExpirationPolicy expirationPolicy, long expirationNanos) {
-		this.writeLock.lock();
-		try {
-			ExpiringEntry<K, V> entry = this.entries.get(key);
-			V oldValue = null;
-
-			if (entry == null) {
-				entry = new ExpiringEntry<>(key, value,
-						this.variableExpiration ? new AtomicReference<>(expirationPolicy) : this.expirationPolicy,
-						this.variableExpiration ? new AtomicLong(expirationNanos) : this.expirationNanos);
-				if (this.entries.size() >= this.maxSize) {
-					final ExpiringEntry<K, V> expiredEntry = this.entries.first();
-					this.entries.remove(expiredEntry.key);
-					this.notifyListeners(expiredEntry);
+		final Update<K, V> update = new Update<>();
+		final long now = System.nanoTime();
+
+		this.entries.compute(key, (k, entry) -> {
+			if (entry != null && !entry.isExpired(now)) {
+				this.updateEntry(entry, value, expirationPolicy, now, update);
+				return entry;
+			}
+
+			update.expired = entry;
+			update.added = this.createEntry(k, value, expirationPolicy, expirationNanos, now);
+			return update.added;
+		});
+
+		this.afterUpdate(update);
+		return update.oldValue;
+	}
+
+	/*
+	 * Create a new entry, sharing the map's policy and duration unless variable expiration is enabled
+	 */
+	private ExpiringEntry<K, V> createEntry(K key, V value, ExpirationPolicy expirationPolicy, long expirationNanos, long now) {
+		return new ExpiringEntry<>(key, value,
+				this.variableExpiration ? new AtomicReference<>(expirationPolicy) : this.expirationPolicy,
+				this.variableExpiration ? new AtomicLong(expirationNanos) : this.expirationNanos, now);
+	}
+
+	/*
+	 * Set the value of an existing entry and reset its expiration, unless the value
+	 * did not change and the entry does not expire on access. Called within compute.
+	 */
+	private void updateEntry(ExpiringEntry<K, V> entry, V value, ExpirationPolicy expirationPolicy, long now, Update<K, V> update) {
+		update.oldValue = entry.value;
+
+		if (!ExpirationPolicy.ACCESSED.equals(expirationPolicy) && Objects.equals(entry.value, value))
+			return;
+
+		entry.value = value;
+		entry.resetExpiration(now);
+	}
+
+	/*
+	 * Notify listeners, schedule and evict after a compute call finished, outside of its lock
+	 */
+	private void afterUpdate(Update<K, V> update) {
+		if (update.expired != null)
+			this.onExpired(update.expired);
+
+		if (update.added != null) {
+			this.recordAccess(update.added.key);
+			this.schedule(update.added);
+			this.evictIfNeeded(update.added);
+		}
+	}
+
+	/*
+	 * Remove the entry if it is still mapped and expired, notifying listeners
+	 */
+	private void removeIfExpired(ExpiringEntry<K, V> entry, long now) {
+		final Update<K, V> update = new Update<>();
+
+		this.entries.computeIfPresent(entry.key, (k, current) -> {
+			if (current != entry || !current.isExpired(now))
+				return current;
+
+			update.expired = current;
+			return null;
+		});
+
+		if (update.expired != null)
+			this.onExpired(update.expired);
+	}
+
+	/*
+	 * Count the expiration and notify listeners
+	 */
+	private void onExpired(ExpiringEntry<K, V> entry) {
+		this.expirationCount.increment();
+		this.notifyListeners(entry);
+	}
+
+	/*
+	 * Queue the entry for the expirer thread to file it into the timing wheel
+	 */
+	private void schedule(ExpiringEntry<K, V> entry) {
+		this.pendingEntries.add(entry);
+
+		if (!this.ticking.get() && this.ticking.compareAndSet(false, true))
+			EXPIRER.schedule(new Ticker(this), this.wheel.tickNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * Called by the expirer thread, return false if the map is empty and we can stop ticking
+	 */
+	private boolean tick() {
+		final long now = System.nanoTime();
+
+		for (ExpiringEntry<K, V> entry; (entry = this.pendingEntries.poll()) != null;)
+			this.wheel.file(entry);
+
+		this.wheel.advance(now);
+
+		if (this.entries.isEmpty() && this.pendingEntries.isEmpty()) {
+			this.wheel.clear();
+			this.ticking.set(false);
+
+			// An entry was added after we checked, keep ticking
+			return !this.pendingEntries.isEmpty() && this.ticking.compareAndSet(false, true);
+		}
+
+		return true;
+	}
+
+	/*
+	 * Count the access for eviction if the map has a maximum size
+	 */
+	private void recordAccess(Object key) {
+		final FrequencySketch sketch = this.frequencySketch;
+
+		if (sketch != null)
+			sketch.increment(key.hashCode());
+	}
+
+	/*
+	 * Evict entries over the maximum size, never evicting the entry just added
+	 */
+	private void evictIfNeeded(ExpiringEntry<K, V> added) {
+		while (this.entries.size() > this.maxSize) {
+			final ExpiringEntry<K, V> victim = this.selectVictim(added);
+
+			if (victim == null)
+				break;
+
+			if (this.entries.remove(victim.key, victim)) {
+				this.evictionCount.increment();
+				this.notifyListeners(victim);
+			}
+		}
+	}
+
+	/*
+	 * Sample a few entries, continuing where we stopped last time, and return the least
+	 * frequently used one, or the one closest to expiration if used equally
+	 */
+	private ExpiringEntry<K, V> selectVictim(ExpiringEntry<K, V> added) {
+		final FrequencySketch sketch = this.frequencySketch;
+		ExpiringEntry<K, V> victim = null;
+		int victimFrequency = Integer.MAX_VALUE;
+
+		synchronized (this.evictionLock) {
+			boolean restarted = false;
+
+			for (int sampled = 0; sampled < EVICTION_SAMPLE_SIZE;) {
+				if (this.evictionCursor == null || !this.evictionCursor.hasNext()) {
+					if (restarted)
+						break;
+
+					this.evictionCursor = this.entries.values().iterator();
+					restarted = true;
+
+					continue;
 				}
-				this.entries.put(key, entry);
-				if (this.entries.size() == 1 || this.entries.first().equals(entry))
-					this.scheduleEntry(entry);
-			} else {
-				oldValue = entry.getValue();
-				if (!ExpirationPolicy.ACCESSED.equals(expirationPolicy)
-						&& (oldValue == null && value == null || oldValue != null && oldValue.equals(value)))
-					return value;
-
-				entry.setValue(value);
-				this.resetEntry(entry, false);
+
+				final ExpiringEntry<K, V> candidate = this.evictionCursor.next();
+
+				if (candidate == added)
+					continue;
+
+				final int frequency = sketch == null ? 0 : sketch.frequency(candidate.key.hashCode());
+
+				if (victim == null || frequency < victimFrequency || frequency == victimFrequency && candidate.expectedExpiration - victim.expectedExpiration < 0) {
+					victim = candidate;
+					victimFrequency = frequency;
+				}
+
+				sampled++;
 			}
+		}
 
-			return oldValue;
-		} finally {
-			this.writeLock.unlock();
+		return victim;
+	}
+
+	/*
+	 * Return the pool for async listeners, creating it if needed
+	 */
+	private static ThreadPoolExecutor getListenerService() {
+		if (LISTENER_SERVICE == null)
+			synchronized (ExpiringMap.class) {
+				if (LISTENER_SERVICE == null)
+					LISTENER_SERVICE = (ThreadPoolExecutor) Executors.newCachedThreadPool(
+							THREAD_FACTORY == null ? new NamedThreadFactory("ExpiringMap-Listener-%s") : THREAD_FACTORY);
+			}
+
+		return LISTENER_SERVICE;
+	}
+
+	/*
+	 * What changed within a compute call, handled after it returns
+	 */
+	private static final class Update<K, V> {
+		private V oldValue;
+		private ExpiringEntry<K, V> added;
+		private ExpiringEntry<K, V> expired;
+		private boolean replaced;
+	}
+
+	/*
+	 * Iterates over entries that did not expire yet
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		private final Iterator<ExpiringEntry<K, V>> iterator = ExpiringMap.this.entries.values().iterator();
+		private ExpiringEntry<K, V> next;
+		private ExpiringEntry<K, V> last;
+
+		@Override
+		public boolean hasNext() {
+			final long now = System.nanoTime();
+
+			while (this.next == null && this.iterator.hasNext()) {
+				final ExpiringEntry<K, V> entry = this.iterator.next();
+
+				if (!entry.isExpired(now))
+					this.next = entry;
+			}
+
+			return this.next != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (!this.hasNext())
+				throw new NoSuchElementException();
+
+			this.last = this.next;
+			this.next = null;
+
+			return new AbstractMap.SimpleImmutableEntry<>(this.last.key, this.last.value);
+		}
+
+		@Override
+		public void remove() {
+			Valid.checkNotNull(this.last, "Call next() before remove()");
+
+			ExpiringMap.this.entries.remove(this.last.key, this.last);
+			this.last = null;
 		}
 	}
 
-	/**
-	 * Resets the given entry's schedule canceling any existing scheduled expiration
-	 * and reordering the entry in the internal map. Schedules the next entry in the
-	 * map if the given {@code entry} was scheduled or if {@code scheduleNext} is
-	 * true.
-	 *
-	 * @param entry              to reset
-	 * @param scheduleFirstEntry whether the first entry should be automatically
-	 *                           scheduled
+	/*
+	 * Advances the timing wheel of one map on the expirer thread, holding the map weakly
+	 * so that unused maps can be collected
 	 */
-	void resetEntry(ExpiringEntry<K, V> entry, boolean scheduleFirstEntry) {
-		this.writeLock.lock();
-		try {
-			final boolean scheduled = entry.cancel();
-			this.entries.reorder(entry);
+	private static final class Ticker implements Runnable {
+		private final WeakReference<ExpiringMap<?, ?>> mapReference;
 
-			if (scheduled || scheduleFirstEntry)
-				this.scheduleEntry(this.entries.first());
-		} finally {
-			this.writeLock.unlock();
+		private Ticker(ExpiringMap<?, ?> map) {
+			this.mapReference = new WeakReference<>(map);
+		}
+
+		@Override
+		public void run() {
+			final ExpiringMap<?, ?> map = this.mapReference.get();
+
+			if (map != null && map.tick())
+				EXPIRER.schedule(this, map.wheel.tickNanos, TimeUnit.NANOSECONDS);
 		}
 	}
 
-	/**
-	 * Schedules an entry for expiration. Guards against concurrent
-	 * schedule/schedule, cancel/schedule and schedule/cancel calls.
-	 *
-	 * @param entry Entry to schedule
+	/*
+	 * A hashed timing wheel, entries are linked into the bucket of the tick they expire at
+	 * and checked when the wheel reaches it. Entries expiring later than one revolution stay
+	 * in their bucket until a later revolution, and entries whose expiration was extended
+	 * are moved when their old bucket is reached, so resetting expiration is free.
+	 * Only accessed from the expirer thread.
 	 */
-	void scheduleEntry(ExpiringEntry<K, V> entry) {
-		if (entry == null || entry.scheduled)
-			return;
+	private final class TimingWheel {
+		private final ExpiringEntry<K, V>[] buckets = new ExpiringEntry[WHEEL_SIZE];
+		private final long tickNanos;
+		private final long startNanos = System.nanoTime();
+		private long processedTick;
+
+		private TimingWheel(long tickNanos) {
+			this.tickNanos = tickNanos;
+		}
+
+		/*
+		 * Link the entry into the bucket of its expiration tick, or unlink it if it was removed
+		 */
+		private void file(ExpiringEntry<K, V> entry) {
+			if (ExpiringMap.this.entries.get(entry.key) != entry) {
+				this.unlink(entry);
 
-		Runnable runnable = null;
-		synchronized (entry) {
-			if (entry.scheduled)
 				return;
+			}
 
-			final WeakReference<ExpiringEntry<K, V>> entryReference = new WeakReference<>(entry);
-			runnable = () -> {
-				final ExpiringEntry<K, V> entry1 = entryReference.get();
+			// Round up so that the entry has expired by the time we reach its bucket
+			final long tick = Math.max((entry.expectedExpiration - this.startNanos + this.tickNanos - 1) / this.tickNanos, this.processedTick);
+			final int bucket = (int) (tick & WHEEL_SIZE - 1);
 
-				this.writeLock.lock();
-				try {
-					if (entry1 != null && entry1.scheduled) {
-						this.entries.remove(entry1.key);
-						this.notifyListeners(entry1);
-					}
+			if (entry.bucket == bucket)
+				return;
 
-					try {
-						// Expires entries and schedules the next entry
-						final Iterator<ExpiringEntry<K, V>> iterator = this.entries.valuesIterator();
-						boolean schedulePending = true;
-
-						while (iterator.hasNext() && schedulePending) {
-							final ExpiringEntry<K, V> nextEntry = iterator.next();
-							if (nextEntry.expectedExpiration.get() <= System.nanoTime()) {
-								iterator.remove();
-								this.notifyListeners(nextEntry);
-							} else {
-								this.scheduleEntry(nextEntry);
-								schedulePending = false;
-							}
-						}
-					} catch (final NoSuchElementException ignored) {
-					}
-				} finally {
-					this.writeLock.unlock();
+			this.unlink(entry);
+
+			entry.bucket = bucket;
+			entry.next = this.buckets[bucket];
+
+			if (entry.next != null)
+				entry.next.previous = entry;
+
+			this.buckets[bucket] = entry;
+		}
+
+		/*
+		 * Process all buckets up to the current time
+		 */
+		private void advance(long now) {
+			final long currentTick = (now - this.startNanos) / this.tickNanos;
+
+			if (currentTick - this.processedTick >= WHEEL_SIZE)
+				this.processedTick = currentTick - WHEEL_SIZE + 1;
+
+			for (; this.processedTick <= currentTick; this.processedTick++) {
+				ExpiringEntry<K, V> entry = this.buckets[(int) (this.processedTick & WHEEL_SIZE - 1)];
+
+				while (entry != null) {
+					final ExpiringEntry<K, V> next = entry.next;
+
+					if (entry.isExpired(now)) {
+						this.unlink(entry);
+
+						ExpiringMap.this.removeIfExpired(entry, now);
+
+					} else
+						this.file(entry);
+
+					entry = next;
 				}
-			};
+			}
+		}
 
-			final Future<?> entryFuture = EXPIRER.schedule(runnable, entry.expectedExpiration.get() - System.nanoTime(),
-					TimeUnit.NANOSECONDS);
-			entry.schedule(entryFuture);
+		/*
+		 * Remove the entry from its bucket
+		 */
+		private void unlink(ExpiringEntry<K, V> entry) {
+			if (entry.bucket == -1)
+				return;
+
+			if (entry.previous != null)
+				entry.previous.next = entry.next;
+			else
+				this.buckets[entry.bucket] = entry.next;
+
+			if (entry.next != null)
+				entry.next.previous = entry.previous;
+
+			entry.bucket = -1;
+			entry.previous = null;
+			entry.next = null;
 		}
-	}
 
-	private static <K, V> Map.Entry<K, V> mapEntryFor(final ExpiringEntry<K, V> entry) {
-		return new Map.Entry<K, V>() {
-			@Override
-			public K getKey() {
-				return entry.key;
+		/*
+		 * Unlink all entries, called when the map is empty
+		 */
+		private void clear() {
+			for (int bucket = 0; bucket < WHEEL_SIZE; bucket++) {
+				ExpiringEntry<K, V> entry = this.buckets[bucket];
+
+				while (entry != null) {
+					final ExpiringEntry<K, V> next = entry.next;
+
+					entry.bucket = -1;
+					entry.previous = null;
+					entry.next = null;
+					entry = next;
+				}
+
+				this.buckets[bucket] = null;
 			}
+		}
+	}
 
-			@Override
-			public V getValue() {
-				return entry.value;
+	/*
+	 * A count-min sketch of 4-bit access counters, halved periodically so that old
+	 * popularity fades. Updated without locks, so counts are approximate under contention.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+		private final int sampleSize;
+		private int additions;
+
+		private FrequencySketch(int maxSize) {
+			final int size = Integer.highestOneBit(Math.max(16, Math.min(maxSize, 1 << 20)) - 1) << 1;
+
+			this.table = new long[size];
+			this.sampleSize = 10 * size;
+		}
+
+		/*
+		 * Increment the counters of the given hash
+		 */
+		private void increment(int hash) {
+			boolean added = false;
+
+			for (int i = 0; i < SEEDS.length; i++) {
+				final long spread = this.spread(hash, i);
+				final int index = (int) (spread >>> 4) & this.table.length - 1;
+				final long mask = 0xfL << ((spread & 15) << 2);
+
+				if ((this.table[index] & mask) != mask) {
+					this.table[index] += mask & -mask;
+					added = true;
+				}
 			}
 
-			@Override
-			public V setValue(V value) {
-				throw new UnsupportedOperationException();
+			if (added && ++this.additions >= this.sampleSize)
+				this.reset();
+		}
+
+		/*
+		 * Return the estimated count of the given hash, at most 15
+		 */
+		private int frequency(int hash) {
+			int frequency = 15;
+
+			for (int i = 0; i < SEEDS.length; i++) {
+				final long spread = this.spread(hash, i);
+				final int index = (int) (spread >>> 4) & this.table.length - 1;
+				final int offset = (int) (spread & 15) << 2;
+
+				frequency = Math.min(frequency, (int) (this.table[index] >>> offset & 15));
 			}
-		};
+
+			return frequency;
+		}
+
+		/*
+		 * Mix the hash with the seed of the given counter
+		 */
+		private long spread(int hash, int i) {
+			long spread = (hash + SEEDS[i]) * SEEDS[i];
+
+			spread += spread >>> 32;
+			return spread;
+		}
+
+		/*
+		 * Halve all counters
+		 */
+		private void reset() {
+			for (int i = 0; i < this.table.length; i++)
+				this.table[i] = this.table[i] >>> 1 & RESET_MASK;
+
+			this.additions >>>= 1;
+		}
 	}
 }
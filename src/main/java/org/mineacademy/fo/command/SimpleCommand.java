@@ -1379,7 +1379,7 @@ public abstract class SimpleCommand extends Command {
 	 * @return
 	 */
 	protected List<String> completeLastWordPlayerNames() {
-		return TabUtil.complete(this.getLastArg(), this.isPlayer() ? Common.getPlayerNames(false) : Common.getPlayerNames());
+		return TabUtil.completePlayerNames(this.getLastArg(), !this.isPlayer());
 	}
 
 	/**
@@ -1388,7 +1388,7 @@ public abstract class SimpleCommand extends Command {
 	 * @return
 	 */
 	protected List<String> completeLastWordWorldNames() {
-		return this.completeLastWord(Common.getWorldNames());
+		return TabUtil.completeWorldNames(this.getLastArg());
 	}
 
 	/**
@@ -1415,12 +1415,7 @@ public abstract class SimpleCommand extends Command {
 	 * @return
 	 */
 	protected final <T> List<String> completeLastWord(final Iterable<T> suggestions) {
-		final List<T> list = new ArrayList<>();
-
-		for (final T suggestion : suggestions)
-			list.add(suggestion);
-
-		return TabUtil.complete(this.getLastArg(), list.toArray());
+		return TabUtil.completeElements(this.getLastArg(), suggestions);
 	}
 
 	/**
@@ -1439,7 +1434,7 @@ public abstract class SimpleCommand extends Command {
 		for (final T suggestion : suggestions)
 			list.add(toString.apply(suggestion));
 
-		return TabUtil.complete(this.getLastArg(), list.toArray());
+		return TabUtil.completeElements(this.getLastArg(), list);
 	}
 
 	// ----------------------------------------------------------------------
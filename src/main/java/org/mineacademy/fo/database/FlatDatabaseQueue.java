@@ -0,0 +1,170 @@
+package org.mineacademy.fo.database;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.mineacademy.fo.collection.expiringmap.NamedThreadFactory;
+
+import lombok.NonNull;
+
+/**
+ * An async work queue used by {@link SimpleFlatDatabase} to never drop
+ * a load or a save.
+ * <p>
+ * Operations for the same unique ID are run one after another in the order
+ * they were submitted, while operations for different unique IDs are run
+ * in parallel on a bounded amount of threads.
+ * <p>
+ * Saves waiting in the queue for the same unique ID are coalesced, so that
+ * only the latest snapshot is written and all callers are notified once it is.
+ */
+final class FlatDatabaseQueue {
+
+	/**
+	 * Pending operations per unique ID, removed once the lane is drained
+	 */
+	private final Map<UUID, Lane> lanes = new HashMap<>();
+
+	/**
+	 * The executor running the lanes, threads die when idle
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Create a new queue running at most the given amount of unique IDs at once
+	 *
+	 * @param name
+	 * @param threads
+	 */
+	FlatDatabaseQueue(final String name, final int threads) {
+		this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory(name + "-%s"));
+
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queue the given task for the unique ID. If coalesce is true and the last pending
+	 * task for the unique ID is also coalescing, it is replaced by this task
+	 * and the future of the replaced task is returned.
+	 *
+	 * @param <R>
+	 * @param uniqueId
+	 * @param coalesce
+	 * @param task
+	 * @return the future completed from the worker thread when the task finishes
+	 */
+	@SuppressWarnings("unchecked")
+	<R> CompletableFuture<R> submit(@NonNull final UUID uniqueId, final boolean coalesce, @NonNull final Task<R> task) {
+		synchronized (this.lanes) {
+			final Lane lane = this.lanes.computeIfAbsent(uniqueId, key -> new Lane());
+
+			if (coalesce) {
+				final Job<?> last = lane.pending.peekLast();
+
+				if (last != null && last.coalesce) {
+					((Job<R>) last).task = task;
+
+					return ((Job<R>) last).future;
+				}
+			}
+
+			final Job<R> job = new Job<>(coalesce, task);
+			lane.pending.add(job);
+
+			if (!lane.running) {
+				lane.running = true;
+
+				this.executor.execute(() -> this.drain(uniqueId, lane));
+			}
+
+			return job.future;
+		}
+	}
+
+	/**
+	 * Return how many unique IDs have pending or running operations
+	 *
+	 * @return
+	 */
+	int getPendingCount() {
+		synchronized (this.lanes) {
+			return this.lanes.size();
+		}
+	}
+
+	/*
+	 * Run the next job in the lane and reschedule so that other lanes get their turn
+	 */
+	private void drain(final UUID uniqueId, final Lane lane) {
+		final Job<?> job;
+
+		synchronized (this.lanes) {
+			job = lane.pending.poll();
+
+			if (job == null) {
+				lane.running = false;
+				this.lanes.remove(uniqueId);
+
+				return;
+			}
+		}
+
+		job.run();
+
+		this.executor.execute(() -> this.drain(uniqueId, lane));
+	}
+
+	/**
+	 * A database operation that may throw anything, the error is passed to the future
+	 *
+	 * @param <R>
+	 */
+	@FunctionalInterface
+	interface Task<R> {
+
+		/**
+		 * Run the operation
+		 *
+		 * @return
+		 * @throws Throwable
+		 */
+		R run() throws Throwable;
+	}
+
+	/*
+	 * Operations waiting for a single unique ID
+	 */
+	private static final class Lane {
+		private final ArrayDeque<Job<?>> pending = new ArrayDeque<>();
+		private boolean running = false;
+	}
+
+	/*
+	 * A single queued operation
+	 */
+	private static final class Job<R> {
+		private final boolean coalesce;
+		private final CompletableFuture<R> future = new CompletableFuture<>();
+		private Task<R> task;
+
+		private Job(final boolean coalesce, final Task<R> task) {
+			this.coalesce = coalesce;
+			this.task = task;
+		}
+
+		private void run() {
+			try {
+				this.future.complete(this.task.run());
+
+			} catch (final Throwable t) {
+				this.future.completeExceptionally(t);
+			}
+		}
+	}
+}
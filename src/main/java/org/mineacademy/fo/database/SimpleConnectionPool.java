@@ -0,0 +1,448 @@
+package org.mineacademy.fo.database;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import lombok.NonNull;
+
+/**
+ * A small connection pool used by {@link SimpleDatabase} for plain JDBC and SQLite
+ * connections when HikariCP is not used.
+ * <p>
+ * Connections returned from {@link #getConnection()} go back to the pool when closed,
+ * so always use them in try-with-resources.
+ * <p>
+ * When created with a statement cache, prepareStatement(String) on a borrowed connection
+ * reuses statements prepared earlier on the same physical connection, closing them only
+ * clears their parameters. Used for SQLite whose driver has no statement cache.
+ */
+final class SimpleConnectionPool implements DataSource, AutoCloseable {
+
+	/**
+	 * How long an idle connection is trusted without pinging the database
+	 */
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+	/**
+	 * How long to wait for a free connection before failing
+	 */
+	private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+	/**
+	 * The JDBC url
+	 */
+	private final String url;
+
+	/**
+	 * The driver properties such as user and password
+	 */
+	private final Properties properties;
+
+	/**
+	 * Limits how many connections can be borrowed at once
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Connections returned to the pool, most recently used first
+	 */
+	private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+
+	/**
+	 * How many prepared statements to keep open per connection, 0 to disable
+	 */
+	private final int statementCacheSize;
+
+	/**
+	 * Prepared statements kept open per physical connection, only used by its current borrower
+	 */
+	private final Map<Connection, StatementCache> statements = new ConcurrentHashMap<>();
+
+	/**
+	 * Set when closed, returned connections are then closed as well
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Create a new pool lending at most the given amount of connections at once
+	 *
+	 * @param url
+	 * @param properties
+	 * @param maximumSize
+	 */
+	SimpleConnectionPool(@NonNull final String url, @NonNull final Properties properties, final int maximumSize) {
+		this(url, properties, maximumSize, 0);
+	}
+
+	/**
+	 * Create a new pool lending at most the given amount of connections at once
+	 * and keeping up to the given amount of prepared statements open per connection
+	 *
+	 * @param url
+	 * @param properties
+	 * @param maximumSize
+	 * @param statementCacheSize
+	 */
+	SimpleConnectionPool(@NonNull final String url, @NonNull final Properties properties, final int maximumSize, final int statementCacheSize) {
+		this.url = url;
+		this.properties = properties;
+		this.permits = new Semaphore(Math.max(1, maximumSize), true);
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * Borrow a connection, waiting if all are in use. Close it to return it to the pool.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (this.closed)
+			throw new SQLException("Connection pool has been closed");
+
+		try {
+			if (!this.permits.tryAcquire(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+				throw new SQLTimeoutException("Timed out after " + BORROW_TIMEOUT_SECONDS + " seconds waiting for a free database connection");
+
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new SQLException("Interrupted while waiting for a free database connection", ex);
+		}
+
+		try {
+			final Connection physical = this.takeOrOpen();
+
+			return (Connection) Proxy.newProxyInstance(SimpleConnectionPool.class.getClassLoader(), new Class<?>[] { Connection.class }, new PooledHandler(physical));
+
+		} catch (final Throwable t) {
+			this.permits.release();
+
+			throw t;
+		}
+	}
+
+	@Override
+	public Connection getConnection(final String username, final String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Connection pool uses the credentials it was created with");
+	}
+
+	/**
+	 * Open a new connection that is not counted towards the pool limit and
+	 * is really closed when you close it
+	 *
+	 * @return
+	 * @throws SQLException
+	 */
+	Connection openUnpooled() throws SQLException {
+		return DriverManager.getConnection(this.url, this.properties);
+	}
+
+	/**
+	 * Close all idle connections and make borrowed ones close when returned
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+
+		IdleConnection connection;
+
+		while ((connection = this.idle.pollFirst()) != null)
+			this.discard(connection.physical);
+	}
+
+	/*
+	 * Reuse an idle connection that is still alive or open a new one
+	 */
+	private Connection takeOrOpen() throws SQLException {
+		IdleConnection connection;
+
+		while ((connection = this.idle.pollFirst()) != null) {
+			if (System.currentTimeMillis() - connection.returnedAt < VALIDATION_BYPASS_MILLIS)
+				return connection.physical;
+
+			try {
+				if (!connection.physical.isClosed() && connection.physical.isValid(2))
+					return connection.physical;
+
+			} catch (final SQLException | AbstractMethodError err) {
+				// Treat as broken
+			}
+
+			this.discard(connection.physical);
+		}
+
+		return this.openUnpooled();
+	}
+
+	/*
+	 * Put the connection back to the pool, resetting the state the borrower may have changed
+	 */
+	private void release(final Connection physical) {
+		try {
+			if (this.closed || physical.isClosed())
+				this.discard(physical);
+
+			else {
+				if (!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+
+				this.idle.offerFirst(new IdleConnection(physical, System.currentTimeMillis()));
+			}
+
+		} catch (final SQLException ex) {
+			this.discard(physical);
+
+		} finally {
+			this.permits.release();
+		}
+	}
+
+	/*
+	 * Return a cached statement for the sql on this connection, preparing it if needed
+	 */
+	private PreparedStatement prepareCached(final Connection physical, final String sql) throws SQLException {
+		final StatementCache cache = this.statements.computeIfAbsent(physical, key -> new StatementCache(this.statementCacheSize));
+		PreparedStatement statement = cache.get(sql);
+
+		if (statement == null || statement.isClosed()) {
+			statement = physical.prepareStatement(sql);
+
+			cache.put(sql, statement);
+		}
+
+		return (PreparedStatement) Proxy.newProxyInstance(SimpleConnectionPool.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, new CachedStatementHandler(statement));
+	}
+
+	/*
+	 * Close the connection for good together with its cached statements
+	 */
+	private void discard(final Connection physical) {
+		this.statements.remove(physical);
+
+		closeQuietly(physical);
+	}
+
+	/*
+	 * Close the connection ignoring errors
+	 */
+	private static void closeQuietly(final Connection connection) {
+		try {
+			connection.close();
+
+		} catch (final SQLException ex) {
+			// Already broken
+		}
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// DataSource boilerplate
+	// ------------------------------------------------------------------------------------------------------------
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(final PrintWriter out) {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(final int seconds) {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(final Class<T> type) throws SQLException {
+		if (type.isInstance(this))
+			return type.cast(this);
+
+		throw new SQLException("Cannot unwrap " + this + " to " + type);
+	}
+
+	@Override
+	public boolean isWrapperFor(final Class<?> type) {
+		return type.isInstance(this);
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Classes
+	// ------------------------------------------------------------------------------------------------------------
+
+	/*
+	 * A connection waiting in the pool
+	 */
+	private static final class IdleConnection {
+		private final Connection physical;
+		private final long returnedAt;
+
+		private IdleConnection(final Connection physical, final long returnedAt) {
+			this.physical = physical;
+			this.returnedAt = returnedAt;
+		}
+	}
+
+	/*
+	 * Prepared statements of one connection, closing the least recently used when full
+	 */
+	private static final class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maximumSize;
+
+		private StatementCache(final int maximumSize) {
+			super(16, 0.75F, true);
+
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, PreparedStatement> eldest) {
+			if (this.size() <= this.maximumSize)
+				return false;
+
+			try {
+				eldest.getValue().close();
+
+			} catch (final SQLException ex) {
+				// Already broken
+			}
+
+			return true;
+		}
+	}
+
+	/*
+	 * Forwards calls to a cached statement and only clears it on close so it can be reused
+	 */
+	private static final class CachedStatementHandler implements InvocationHandler {
+
+		private final PreparedStatement statement;
+
+		private CachedStatementHandler(final PreparedStatement statement) {
+			this.statement = statement;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final String name = method.getName();
+
+			if ("close".equals(name) && method.getParameterCount() == 0) {
+				try {
+					this.statement.clearParameters();
+					this.statement.clearBatch();
+
+				} catch (final SQLException ex) {
+
+					// Prepared again next time
+					this.statement.close();
+				}
+
+				return null;
+			}
+
+			if ("equals".equals(name) && method.getParameterCount() == 1)
+				return proxy == args[0];
+
+			if ("hashCode".equals(name) && method.getParameterCount() == 0)
+				return System.identityHashCode(proxy);
+
+			try {
+				return method.invoke(this.statement, args);
+
+			} catch (final InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+		}
+	}
+
+	/*
+	 * Forwards calls to the physical connection and returns it to the pool on close
+	 */
+	private final class PooledHandler implements InvocationHandler {
+
+		private final Connection physical;
+		private boolean returned = false;
+
+		private PooledHandler(final Connection physical) {
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final String name = method.getName();
+
+			if ("close".equals(name) && method.getParameterCount() == 0) {
+				synchronized (this) {
+					if (!this.returned) {
+						this.returned = true;
+
+						SimpleConnectionPool.this.release(this.physical);
+					}
+				}
+
+				return null;
+			}
+
+			if ("equals".equals(name) && method.getParameterCount() == 1)
+				return proxy == args[0];
+
+			if ("hashCode".equals(name) && method.getParameterCount() == 0)
+				return System.identityHashCode(proxy);
+
+			if ("toString".equals(name) && method.getParameterCount() == 0)
+				return "Pooled" + this.physical;
+
+			synchronized (this) {
+				if (this.returned) {
+					if ("isClosed".equals(name))
+						return true;
+
+					throw new SQLException("Connection has already been returned to the pool");
+				}
+			}
+
+			if ("prepareStatement".equals(name) && method.getParameterCount() == 1 && SimpleConnectionPool.this.statementCacheSize > 0)
+				return SimpleConnectionPool.this.prepareCached(this.physical, (String) args[0]);
+
+			try {
+				return method.invoke(this.physical, args);
+
+			} catch (final InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+		}
+	}
+}
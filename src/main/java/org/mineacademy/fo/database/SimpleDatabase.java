@@ -1,27 +1,44 @@
 package org.mineacademy.fo.database;
 
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Array;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.Ref;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.RowId;
 import java.sql.SQLException;
 import java.sql.SQLSyntaxErrorException;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
 
 import org.bukkit.inventory.ItemStack;
 import org.mineacademy.fo.Common;
@@ -68,10 +85,19 @@ public class SimpleDatabase {
 	private static boolean connectUsingHikari = true;
 
 	/**
-	 * The established connection, or null if none
+	 * How many prepared statements we keep open on the SQLite connection, its driver does not cache them
 	 */
-	@Getter(value = AccessLevel.PROTECTED)
-	private Connection connection;
+	private static final int SQLITE_STATEMENT_CACHE_SIZE = 32;
+
+	/**
+	 * The pool we borrow a connection from for each operation, or null if never connected
+	 */
+	private volatile DataSource dataSource;
+
+	/**
+	 * The connection returned from {@link #getConnection()}, kept open until {@link #close()}
+	 */
+	private Connection legacyConnection;
 
 	/**
 	 * Map of variables you can use with the {} syntax in SQL
@@ -81,7 +107,7 @@ public class SimpleDatabase {
 	/**
 	 * The last credentials from the connect function, or null if never called
 	 */
-	private LastCredentials lastCredentials;
+	private volatile LastCredentials lastCredentials;
 
 	/**
 	 * Private indicator that we are connecting to database right now
@@ -89,14 +115,14 @@ public class SimpleDatabase {
 	private boolean connecting = false;
 
 	/*
-	 * Optional Hikari data source (you plugin needs to include com.zaxxer.HikariCP library in its plugin.yml (MC 1.16+ required)
+	 * Is this a SQLite connection?
 	 */
-	private Object hikariDataSource;
+	private boolean isSQLite = false;
 
 	/*
-	 * Is this a SQLite connection?
+	 * Creates the disconnected result sets returned from query(), lazily initialized
 	 */
-	private boolean isSQLite = false;
+	private static RowSetFactory rowSetFactory;
 
 	// --------------------------------------------------------------------
 	// Connecting
@@ -178,6 +204,8 @@ public class SimpleDatabase {
 	 * @param table
 	 */
 	public final void connect(final String url, final String user, final String password, final String table) {
+		DataSource newDataSource = null;
+
 		try {
 			this.connecting = true;
 
@@ -190,12 +218,13 @@ public class SimpleDatabase {
 
 				final String urlHeadless = url.replace("jdbc:sqlite://", "");
 
+				// SQLite locks the whole file on write so we only keep one connection
 				if (urlHeadless.split("\\.").length == 2 && !urlHeadless.contains("\\") && !urlHeadless.contains("/")) {
 					final String path = FileUtil.getFile(urlHeadless).getPath();
 
-					this.connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+					newDataSource = new SimpleConnectionPool("jdbc:sqlite:" + path, getDriverProperties(url), 1, SQLITE_STATEMENT_CACHE_SIZE);
 				} else
-					this.connection = DriverManager.getConnection(url);
+					newDataSource = new SimpleConnectionPool(url, getDriverProperties(url), 1, SQLITE_STATEMENT_CACHE_SIZE);
 
 				this.isSQLite = true;
 			}
@@ -240,23 +269,16 @@ public class SimpleDatabase {
 				if (password != null)
 					ReflectionUtil.invoke("setPassword", hikariConfig, password);
 
-				final Constructor<?> dataSourceConst = ReflectionUtil.getConstructor("com.zaxxer.hikari.HikariDataSource", hikariConfig.getClass());
-				final Object hikariSource = ReflectionUtil.instantiate(dataSourceConst, hikariConfig);
-
-				this.hikariDataSource = hikariSource;
+				ReflectionUtil.invoke(ReflectionUtil.getMethod(hikariConfig.getClass(), "setMaximumPoolSize", int.class), hikariConfig, this.getMaximumPoolSize());
 
-				final Method getConnection = hikariSource.getClass().getDeclaredMethod("getConnection");
+				final Method addDataSourceProperty = ReflectionUtil.getMethod(hikariConfig.getClass(), "addDataSourceProperty", String.class, Object.class);
 
-				try {
-					this.connection = ReflectionUtil.invoke(getConnection, hikariSource);
+				for (final Entry<Object, Object> property : getDriverProperties(url).entrySet())
+					ReflectionUtil.invoke(addDataSourceProperty, hikariConfig, property.getKey().toString(), property.getValue());
 
-				} catch (final Throwable t) {
-					Common.warning("Could not get HikariCP connection, please report this with the information below to github.com/kangarko/foundation");
-					Common.warning("Method: " + getConnection);
-					Common.warning("Arguments: " + Common.join(getConnection.getParameters()));
+				final Constructor<?> dataSourceConst = ReflectionUtil.getConstructor("com.zaxxer.hikari.HikariDataSource", hikariConfig.getClass());
 
-					t.printStackTrace();
-				}
+				newDataSource = (DataSource) ReflectionUtil.instantiate(dataSourceConst, hikariConfig);
 			}
 
 			/*
@@ -283,10 +305,30 @@ public class SimpleDatabase {
 					}
 				}
 
-				this.connection = user != null && password != null ? DriverManager.getConnection(url, user, password) : DriverManager.getConnection(url);
+				final Properties properties = getDriverProperties(url);
+
+				if (user != null && password != null) {
+					properties.setProperty("user", user);
+					properties.setProperty("password", password);
+				}
+
+				newDataSource = new SimpleConnectionPool(url, properties, this.getMaximumPoolSize());
 			}
 
+			// Borrow once to fail early if the database cannot be reached
+			try (Connection connection = newDataSource.getConnection()) {
+				Debugger.debug("mysql", "Connected to " + connection.getMetaData().getDatabaseProductName());
+			}
+
+			final DataSource oldDataSource = this.dataSource;
+
+			// Set first, getConnection() reads them to open its own connection
 			this.lastCredentials = new LastCredentials(url, user, password, table);
+			this.dataSource = newDataSource;
+			newDataSource = null;
+
+			closeDataSource(oldDataSource);
+
 			this.onConnected();
 
 		} catch (final Exception ex) {
@@ -311,9 +353,46 @@ public class SimpleDatabase {
 
 		} finally {
 			this.connecting = false;
+
+			// Connection test failed
+			closeDataSource(newDataSource);
 		}
 	}
 
+	/**
+	 * How many connections can be borrowed at once when connecting to MySQL or MariaDB,
+	 * SQLite always uses a single connection.
+	 * <p>
+	 * Called when connecting. Default: 10
+	 *
+	 * @return
+	 */
+	protected int getMaximumPoolSize() {
+		return 10;
+	}
+
+	/*
+	 * Let MySQL and MariaDB drivers cache prepared statements since we prepare one per operation,
+	 * and make SQLite wait for the file lock held by the getConnection() connection instead of failing
+	 */
+	private static Properties getDriverProperties(final String url) {
+		final Properties properties = new Properties();
+
+		if (url.startsWith("jdbc:sqlite"))
+			properties.setProperty("busy_timeout", "30000");
+
+		if (url.startsWith("jdbc:mysql://") || url.startsWith("jdbc:mariadb://")) {
+			properties.setProperty("cachePrepStmts", "true");
+			properties.setProperty("prepStmtCacheSize", "250");
+			properties.setProperty("useServerPrepStmts", "true");
+
+			if (url.startsWith("jdbc:mysql://"))
+				properties.setProperty("prepStmtCacheSqlLimit", "2048");
+		}
+
+		return properties;
+	}
+
 	/**
 	 * Attempts to connect using last known credentials. Fails gracefully if those are not provided
 	 * i.e. connect function was never called
@@ -349,19 +428,33 @@ public class SimpleDatabase {
 	}
 
 	/**
-	 * Attempts to close the connection, if not null
+	 * Attempts to close the connection pool, if not null
 	 */
 	public final void close() {
-		try {
-			if (this.connection != null)
-				this.connection.close();
-
-			if (this.hikariDataSource != null)
-				ReflectionUtil.invoke("close", this.hikariDataSource);
+		synchronized (this) {
+			try {
+				if (this.legacyConnection != null)
+					this.legacyConnection.close();
 
-		} catch (final SQLException e) {
-			Common.error(e, "Error closing database connection!");
+			} catch (final SQLException e) {
+				Common.error(e, "Error closing database connection!");
+			}
 		}
+
+		closeDataSource(this.dataSource);
+	}
+
+	/*
+	 * Close the Hikari or our own pool, if not null
+	 */
+	private static void closeDataSource(@Nullable final DataSource dataSource) {
+		if (dataSource instanceof AutoCloseable)
+			try {
+				((AutoCloseable) dataSource).close();
+
+			} catch (final Exception e) {
+				Common.error(e, "Error closing database connection pool!");
+			}
 	}
 
 	// --------------------------------------------------------------------
@@ -374,57 +467,55 @@ public class SimpleDatabase {
 	 * @param creator
 	 */
 	protected final void createTable(final TableCreator creator) {
-		synchronized (this.connection) {
-			String columns = "";
+		String columns = "";
 
-			for (final TableRow column : creator.getColumns()) {
-				String dataType = column.getDataType().toLowerCase();
+		for (final TableRow column : creator.getColumns()) {
+			String dataType = column.getDataType().toLowerCase();
 
-				if (this.isSQLite) {
-					if (dataType.equals("datetime") || dataType.equals("longtext"))
-						dataType = "text";
+			if (this.isSQLite) {
+				if (dataType.equals("datetime") || dataType.equals("longtext"))
+					dataType = "text";
 
-					else if (dataType.startsWith("varchar"))
-						dataType = "text";
+				else if (dataType.startsWith("varchar"))
+					dataType = "text";
 
-					else if (dataType.startsWith("bigint"))
-						dataType = "integer";
+				else if (dataType.startsWith("bigint"))
+					dataType = "integer";
 
-					else if (creator.getPrimaryColumn() != null && creator.getPrimaryColumn().equals(column.getName()))
-						dataType = "INTEGER PRIMARY KEY";
-				}
-
-				columns += (columns.isEmpty() ? "" : ", ") + "`" + column.getName() + "` " + dataType;
+				else if (creator.getPrimaryColumn() != null && creator.getPrimaryColumn().equals(column.getName()))
+					dataType = "INTEGER PRIMARY KEY";
+			}
 
-				if (column.getAutoIncrement() != null && column.getAutoIncrement())
-					if (this.isSQLite)
-						columns += " AUTOINCREMENT";
+			columns += (columns.isEmpty() ? "" : ", ") + "`" + column.getName() + "` " + dataType;
 
-					else
-						columns += " NOT NULL AUTO_INCREMENT";
+			if (column.getAutoIncrement() != null && column.getAutoIncrement())
+				if (this.isSQLite)
+					columns += " AUTOINCREMENT";
 
-				else if (column.getNotNull() != null && column.getNotNull())
-					columns += " NOT NULL";
+				else
+					columns += " NOT NULL AUTO_INCREMENT";
 
-				if (column.getDefaultValue() != null)
-					columns += " DEFAULT " + column.getDefaultValue();
-			}
+			else if (column.getNotNull() != null && column.getNotNull())
+				columns += " NOT NULL";
 
-			if (creator.getPrimaryColumn() != null && !this.isSQLite)
-				columns += ", PRIMARY KEY (`" + creator.getPrimaryColumn() + "`)";
+			if (column.getDefaultValue() != null)
+				columns += " DEFAULT " + column.getDefaultValue();
+		}
 
-			try {
-				this.update("CREATE TABLE IF NOT EXISTS `" + creator.getName() + "` (" + columns + ") " + (this.isSQLite ? "" : "DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_520_ci") + ";");
+		if (creator.getPrimaryColumn() != null && !this.isSQLite)
+			columns += ", PRIMARY KEY (`" + creator.getPrimaryColumn() + "`)";
 
-			} catch (final Throwable t) {
-				if (t.toString().contains("Unknown collation")) {
-					Common.log("You need to update your database driver to support utf8mb4_unicode_520_ci collation. We switched to support unicode using 4 bits length because the previous system only supported 3 bits.");
-					Common.log("Some characters such as smiley or Chinese are stored in 4 bits so they would crash the 3-bit database leading to more problems. Most hosting providers have now widely adopted the utf8mb4_unicode_520_ci encoding you seem lacking. Disable database connection or update your driver to fix this.");
-				}
+		try {
+			this.update("CREATE TABLE IF NOT EXISTS `" + creator.getName() + "` (" + columns + ") " + (this.isSQLite ? "" : "DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_520_ci") + ";");
 
-				else
-					throw t;
+		} catch (final Throwable t) {
+			if (t.toString().contains("Unknown collation")) {
+				Common.log("You need to update your database driver to support utf8mb4_unicode_520_ci collation. We switched to support unicode using 4 bits length because the previous system only supported 3 bits.");
+				Common.log("Some characters such as smiley or Chinese are stored in 4 bits so they would crash the 3-bit database leading to more problems. Most hosting providers have now widely adopted the utf8mb4_unicode_520_ci encoding you seem lacking. Disable database connection or update your driver to fix this.");
 			}
+
+			else
+				throw t;
 		}
 	}
 
@@ -455,13 +546,11 @@ public class SimpleDatabase {
 	 * @param columnsAndValues
 	 */
 	protected final void insert(final String table, @NonNull final SerializedMap columnsAndValues) {
-		synchronized (this.connection) {
-			final String columns = Common.join(columnsAndValues.keySet());
-			final String values = Common.join(columnsAndValues.values(), ", ", value -> value == null || value.equals("NULL") ? "NULL" : (value instanceof Number ? String.valueOf(value) : "'" + value + "'"));
-			final String duplicateUpdate = Common.join(columnsAndValues.entrySet(), ", ", entry -> entry.getKey() + "=VALUES(" + entry.getKey() + ")");
+		final String columns = Common.join(columnsAndValues.keySet());
+		final String values = Common.join(columnsAndValues.values(), ", ", value -> value == null || value.equals("NULL") ? "NULL" : (value instanceof Number ? String.valueOf(value) : "'" + value + "'"));
+		final String duplicateUpdate = Common.join(columnsAndValues.entrySet(), ", ", entry -> entry.getKey() + "=VALUES(" + entry.getKey() + ")");
 
-			this.update("INSERT INTO " + this.replaceVariables(table) + " (" + columns + ") VALUES (" + values + ")" + (this.isSQLite ? "" : " ON DUPLICATE KEY UPDATE " + duplicateUpdate + ";"));
-		}
+		this.update("INSERT INTO " + this.replaceVariables(table) + " (" + columns + ") VALUES (" + values + ")" + (this.isSQLite ? "" : " ON DUPLICATE KEY UPDATE " + duplicateUpdate + ";"));
 	}
 
 	/**
@@ -475,40 +564,143 @@ public class SimpleDatabase {
 
 	/**
 	 * Insert the batch map into the database
+	 * <p>
+	 * Rows with the same columns are inserted through one prepared statement with
+	 * many rows per statement, executed every {@link #getBatchSize()} rows, all in a single
+	 * transaction that is rolled back if any row fails.
 	 *
 	 * @param table
 	 * @param maps
 	 */
 	protected final void insertBatch(final String table, @NonNull final List<SerializedMap> maps) {
-		synchronized (this.connection) {
-			final List<String> sqls = new ArrayList<>();
+		if (maps.isEmpty())
+			return;
 
-			for (final SerializedMap map : maps)
-				try {
-					final String columns = Common.join(map.keySet());
-					final String values = Common.join(map.values(), ", ", this::parseValue);
-					final String duplicateUpdate = Common.join(map.entrySet(), ", ", entry -> entry.getKey() + "=VALUES(" + entry.getKey() + ")");
+		this.checkEstablished();
 
-					final String sql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")" + (this.isSQLite ? "" : " ON DUPLICATE KEY UPDATE " + duplicateUpdate + ";");
-					Debugger.debug("mysql", "Inserting batch SQL: " + sql);
+		final String tableName = this.replaceVariables(table);
+		final int batchSize = Math.max(1, this.getBatchSize());
 
-					sqls.add(sql);
+		// Rows with the same columns share one statement
+		final Map<List<String>, List<SerializedMap>> groups = new LinkedHashMap<>();
 
-				} catch (final Throwable t) {
-					Common.error(t, "Error inserting batch map: " + map);
-				}
+		for (final SerializedMap map : maps)
+			if (!map.isEmpty())
+				groups.computeIfAbsent(new ArrayList<>(map.keySet()), columns -> new ArrayList<>()).add(map);
+
+		if (maps.size() > 10_000)
+			Common.log("Inserting " + maps.size() + " rows into " + tableName + "... PLEASE BE PATIENT - If server will print a crash report, ignore it, update will proceed.");
+
+		try (Connection connection = this.borrowConnection()) {
+
+			// Prevent automatically sending db instructions
+			connection.setAutoCommit(false);
 
-			this.batchUpdate(sqls);
+			try {
+				for (final Entry<List<String>, List<SerializedMap>> group : groups.entrySet())
+					this.insertGroup(connection, tableName, group.getKey(), group.getValue(), batchSize);
+
+				connection.commit();
+
+			} catch (final Throwable t) {
+				connection.rollback();
+
+				Common.error(t, "Error inserting a batch of " + maps.size() + " rows into " + tableName + ", no rows were inserted.");
+
+			} finally {
+				connection.setAutoCommit(true);
+			}
+
+		} catch (final SQLException ex) {
+			this.handleError(ex, "Error inserting a batch of " + maps.size() + " rows into " + tableName);
 		}
 	}
 
 	/*
-	 * A helper method to insert compatible value to db
+	 * Insert rows sharing the same columns, packing as many rows per statement as the database allows
+	 */
+	private void insertGroup(final Connection connection, final String table, final List<String> columns, final List<SerializedMap> rows, final int batchSize) throws SQLException {
+		final int rowsPerStatement = Math.max(1, Math.min(batchSize, (this.isSQLite ? 999 : 65_535) / columns.size()));
+		final int fullStatements = rows.size() / rowsPerStatement;
+		final int remainingRows = rows.size() % rowsPerStatement;
+
+		if (fullStatements > 0)
+			try (PreparedStatement statement = connection.prepareStatement(this.buildBatchInsert(table, columns, rowsPerStatement))) {
+				int pendingRows = 0;
+
+				for (int i = 0; i < fullStatements; i++) {
+					this.bindParameters(statement, this.collectValues(columns, rows, i * rowsPerStatement, rowsPerStatement));
+					statement.addBatch();
+
+					pendingRows += rowsPerStatement;
+
+					if (pendingRows >= batchSize) {
+						statement.executeBatch();
+
+						pendingRows = 0;
+					}
+				}
+
+				if (pendingRows > 0)
+					statement.executeBatch();
+			}
+
+		if (remainingRows > 0)
+			try (PreparedStatement statement = connection.prepareStatement(this.buildBatchInsert(table, columns, remainingRows))) {
+				this.bindParameters(statement, this.collectValues(columns, rows, fullStatements * rowsPerStatement, remainingRows));
+
+				statement.executeUpdate();
+			}
+	}
+
+	/*
+	 * Build an INSERT with the given amount of rows, updating existing rows on MySQL
 	 */
-	private final String parseValue(final Object value) {
-		final Object serialized = SerializeUtil.serialize(this.getTableMode(), value);
+	private String buildBatchInsert(final String table, final List<String> columns, final int rowCount) {
+		final String row = "(" + Common.join(Collections.nCopies(columns.size(), "?")) + ")";
+		final StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (").append(Common.join(columns)).append(") VALUES ");
 
-		return value == null || value.equals("NULL") ? "NULL" : "'" + serialized.toString() + "'";
+		for (int i = 0; i < rowCount; i++)
+			sql.append(i == 0 ? "" : ", ").append(row);
+
+		if (!this.isSQLite)
+			sql.append(" ON DUPLICATE KEY UPDATE ").append(Common.join(columns, ", ", column -> column + "=VALUES(" + column + ")"));
+
+		final String result = sql.toString();
+		Debugger.debug("mysql", "Inserting batch SQL: " + result);
+
+		return result;
+	}
+
+	/*
+	 * Flatten the values of the given rows in column order, "NULL" strings are inserted as null
+	 */
+	private Object[] collectValues(final List<String> columns, final List<SerializedMap> rows, final int fromRow, final int rowCount) {
+		final Object[] values = new Object[columns.size() * rowCount];
+		int index = 0;
+
+		for (int i = fromRow; i < fromRow + rowCount; i++) {
+			final SerializedMap row = rows.get(i);
+
+			for (final String column : columns) {
+				final Object value = row.asMap().get(column);
+
+				values[index++] = "NULL".equals(value) ? null : value;
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * How many rows {@link #insertBatch(String, List)} sends to the database at once.
+	 * <p>
+	 * Default: 1000
+	 *
+	 * @return
+	 */
+	protected int getBatchSize() {
+		return 1000;
 	}
 
 	/**
@@ -522,23 +714,18 @@ public class SimpleDatabase {
 		if (!this.connecting)
 			Valid.checkAsync("Updating database must be done async! Call: " + sql);
 
-		synchronized (this.connection) {
-			this.checkEstablished();
-
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		this.checkEstablished();
 
-			sql = this.replaceVariables(sql);
-			Valid.checkBoolean(!sql.contains("{table}"), "Table not set! Either use connect() method that specifies it or call addVariable(table, 'yourtablename') in your constructor!");
+		sql = this.replaceVariables(sql);
+		Valid.checkBoolean(!sql.contains("{table}"), "Table not set! Either use connect() method that specifies it or call addVariable(table, 'yourtablename') in your constructor!");
 
-			Debugger.debug("mysql", "Updating database with: " + sql);
+		Debugger.debug("mysql", "Updating database with: " + sql);
 
-			try (Statement statement = this.connection.createStatement()) {
-				statement.executeUpdate(sql);
+		try (Connection connection = this.borrowConnection(); Statement statement = connection.createStatement()) {
+			statement.executeUpdate(sql);
 
-			} catch (final SQLException e) {
-				this.handleError(e, "Error on updating database with: " + sql);
-			}
+		} catch (final SQLException e) {
+			this.handleError(e, "Error on updating database with: " + sql);
 		}
 	}
 
@@ -564,31 +751,10 @@ public class SimpleDatabase {
 	 * @param consumer
 	 */
 	protected final void select(final String table, @Nullable final String where, final ResultReader consumer) {
-		synchronized (this.connection) {
-			if (!this.isLoaded())
-				return;
-
-			final String tableName = this.replaceVariables(table);
-
-			try (ResultSet resultSet = this.query("SELECT * FROM " + table + (where == null ? "" : " WHERE " + where))) {
-				while (resultSet.next())
-					try {
-						consumer.accept(new SimpleResultSet(tableName, resultSet));
-
-					} catch (final InvalidRowException ex) {
-						// Pardoned
-
-					} catch (final Throwable t) {
-						Common.log("Error reading a row from table " + tableName + " where " + (where == null ? "all" : where) + ", aborting...");
-
-						t.printStackTrace();
-						break;
-					}
+		if (!this.isLoaded())
+			return;
 
-			} catch (final Throwable t) {
-				Common.error(t, "Error selecting rows from table " + table + " where " + (where == null ? "all" : where));
-			}
-		}
+		this.readRows(this.replaceVariables(table), "SELECT * FROM " + table + (where == null ? "" : " WHERE " + where), where == null ? "all" : where.toString(), consumer);
 	}
 
 	/**
@@ -607,30 +773,36 @@ public class SimpleDatabase {
 	 * @param consumer
 	 */
 	protected final void select(final String table, @Nullable final Map<String, Object> where, final ResultReader consumer) {
-		synchronized (this.connection) {
-			if (!this.isLoaded())
-				return;
+		if (!this.isLoaded())
+			return;
 
-			final String tableName = this.replaceVariables(table);
+		this.readRows(this.replaceVariables(table), "SELECT * FROM " + table + " " + buildWhere(where), where == null ? "all" : where.toString(), consumer);
+	}
 
-			try (ResultSet resultSet = this.query("SELECT * FROM " + table + " " + buildWhere(where))) {
-				while (resultSet.next())
-					try {
-						consumer.accept(new SimpleResultSet(tableName, resultSet));
+	/*
+	 * Read all rows into memory and return the connection before handing them to the consumer,
+	 * so it can run other queries, pardoning invalid rows and aborting on other errors
+	 */
+	private void readRows(final String tableName, final String sql, final String where, final ResultReader consumer) {
+		try (ResultSet resultSet = this.query(sql)) {
+			final SimpleResultSet set = new SimpleResultSet(tableName, resultSet);
 
-					} catch (final InvalidRowException ex) {
-						// Pardoned
+			while (resultSet.next())
+				try {
+					consumer.accept(set);
 
-					} catch (final Throwable t) {
-						Common.log("Error reading a row from table " + tableName + " where " + (where == null ? "all" : where) + ", aborting...");
+				} catch (final InvalidRowException ex) {
+					// Pardoned
 
-						t.printStackTrace();
-						break;
-					}
+				} catch (final Throwable t) {
+					Common.log("Error reading a row from table " + tableName + " where " + where + ", aborting...");
 
-			} catch (final Throwable t) {
-				Common.error(t, "Error selecting rows from table " + table + " where " + (where == null ? "all" : where));
-			}
+					t.printStackTrace();
+					break;
+				}
+
+		} catch (final Throwable t) {
+			Common.error(t, "Error selecting rows from table " + tableName + " where " + where);
 		}
 	}
 
@@ -680,36 +852,38 @@ public class SimpleDatabase {
 	 * @return
 	 */
 	protected final int count(final String table, final SerializedMap conditions) {
-		synchronized (this.connection) {
-			// Convert conditions into SQL syntax
-			final Set<String> conditionsList = Common.convertSet(conditions.entrySet(), entry -> entry.getKey() + " = '" + SerializeUtil.serialize(this.getTableMode(), entry.getValue()) + "'");
-
-			// Run the query
-			final String sql = "SELECT * FROM " + table + (conditionsList.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditionsList)) + ";";
+		// Convert conditions into SQL syntax
+		final Set<String> conditionsList = Common.convertSet(conditions.entrySet(), entry -> entry.getKey() + " = '" + SerializeUtil.serialize(this.getTableMode(), entry.getValue()) + "'");
 
-			try (ResultSet resultSet = this.query(sql)) {
-				int count = 0;
+		// Run the query
+		final String sql = "SELECT * FROM " + table + (conditionsList.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditionsList)) + ";";
 
-				while (resultSet.next())
-					count++;
+		try (ResultSet resultSet = this.query(sql)) {
+			int count = 0;
 
-				return count;
+			while (resultSet.next())
+				count++;
 
-			} catch (final SQLException ex) {
-				Common.throwError(ex,
-						"Unable to count rows!",
-						"Table: " + this.replaceVariables(table),
-						"Conditions: " + conditions,
-						"Query: " + sql);
-			}
+			return count;
 
-			return 0;
+		} catch (final SQLException ex) {
+			Common.throwError(ex,
+					"Unable to count rows!",
+					"Table: " + this.replaceVariables(table),
+					"Conditions: " + conditions,
+					"Query: " + sql);
 		}
+
+		return 0;
 	}
 
 	/**
 	 * Attempts to execute a new query
 	 * <p>
+	 * The rows are read into memory and the connection is returned to the pool
+	 * right away, so the result set stays usable after this method returns.
+	 * Columns can be read by their name or their alias from "AS".
+	 * <p>
 	 * Make sure you called connect() first otherwise an error will be thrown
 	 *
 	 * @param sql
@@ -718,31 +892,229 @@ public class SimpleDatabase {
 	protected final ResultSet query(String sql) {
 		Valid.checkAsync("Sending database query must be called async, command: " + sql);
 
-		synchronized (this.connection) {
-			this.checkEstablished();
+		this.checkEstablished();
 
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		sql = this.replaceVariables(sql);
 
-			sql = this.replaceVariables(sql);
+		Debugger.debug("mysql", "Querying database with: " + sql);
 
-			Debugger.debug("mysql", "Querying database with: " + sql);
+		try (Connection connection = this.borrowConnection(); Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+			final CachedRowSet rowSet = getRowSetFactory().createCachedRowSet();
 
-			try {
-				final Statement statement = this.connection.createStatement();
-				final ResultSet resultSet = statement.executeQuery(sql);
+			rowSet.populate(withLabelsAsNames(resultSet));
 
-				return resultSet;
+			return rowSet;
 
-			} catch (final SQLException ex) {
-				if (ex instanceof SQLSyntaxErrorException && ex.getMessage().startsWith("Table") && ex.getMessage().endsWith("doesn't exist"))
-					return new DummyResultSet();
+		} catch (final SQLException ex) {
+			if (ex instanceof SQLSyntaxErrorException && ex.getMessage().startsWith("Table") && ex.getMessage().endsWith("doesn't exist"))
+				return new DummyResultSet();
+
+			this.handleError(ex, "Error on querying database with: " + sql);
+		}
+
+		return null;
+	}
+
+	/*
+	 * Wrap the result set so its metadata reports column labels as names, because
+	 * CachedRowSet finds columns by name and would not find aliases from MySQL otherwise
+	 */
+	private static ResultSet withLabelsAsNames(final ResultSet resultSet) throws SQLException {
+		final ResultSetMetaData metaData = resultSet.getMetaData();
+
+		final ResultSetMetaData labeledMetaData = (ResultSetMetaData) Proxy.newProxyInstance(SimpleDatabase.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+			if ("getColumnName".equals(method.getName()))
+				return metaData.getColumnLabel((Integer) args[0]);
+
+			return invokeUnwrapped(method, metaData, args);
+		});
+
+		return (ResultSet) Proxy.newProxyInstance(SimpleDatabase.class.getClassLoader(), new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+			if ("getMetaData".equals(method.getName()))
+				return labeledMetaData;
+
+			return invokeUnwrapped(method, resultSet, args);
+		});
+	}
+
+	/*
+	 * Invoke the method rethrowing what it has thrown instead of the reflection wrapper
+	 */
+	private static Object invokeUnwrapped(final Method method, final Object target, final Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+
+		} catch (final InvocationTargetException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/*
+	 * Return the factory for disconnected result sets, looking it up once
+	 */
+	private static RowSetFactory getRowSetFactory() throws SQLException {
+		if (rowSetFactory == null)
+			rowSetFactory = RowSetProvider.newFactory();
+
+		return rowSetFactory;
+	}
+
+	/**
+	 * Runs a SELECT and hands each row to the reader as it arrives from the database
+	 * instead of reading the whole result into memory first, binding the given
+	 * parameters to the ? placeholders in order.
+	 * <p>
+	 * The reader must not call next() on the set. The connection is kept
+	 * busy until all rows have been read, so keep the reader fast and do not
+	 * call other database methods from it, they would wait for another connection
+	 * which never comes on SQLite. Use {@link #select(String, String, ResultReader)}
+	 * when you need to. Make sure you called connect() first otherwise an error will be thrown
+	 *
+	 * @param sql
+	 * @param reader
+	 * @param parameters
+	 * @return the amount of rows read
+	 */
+	protected final int stream(final String sql, @NonNull final ResultReader reader, final Object... parameters) {
+		try {
+			return this.streamQuery(sql, reader, parameters);
+
+		} catch (final SQLException ex) {
+			this.handleError(ex, "Error on streaming database query: " + sql);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Runs a SELECT and returns a lazily populated stream of rows turned into objects by the mapper,
+	 * binding the given parameters to the ? placeholders in order. Rows are only fetched from
+	 * the database as you consume the stream, use iterator() to walk it manually.
+	 * <p>
+	 * The mapper must not call next() on the set. You MUST close the stream (use try-with-resources)
+	 * to return the connection to the pool. Do not call other database methods while consuming
+	 * the stream, they would wait for another connection which never comes on SQLite.
+	 * Make sure you called connect() first otherwise an error will be thrown
+	 *
+	 * @param <R>
+	 * @param sql
+	 * @param mapper
+	 * @param parameters
+	 * @return the stream, empty if the query failed
+	 */
+	protected final <R> Stream<R> streamRows(String sql, @NonNull final ResultMapper<R> mapper, final Object... parameters) {
+		Valid.checkAsync("Sending database query must be called async, command: " + sql);
+
+		sql = this.replaceVariables(sql);
+
+		Connection connection = null;
+		PreparedStatement statement = null;
+
+		try {
+			connection = this.borrowConnection();
+			statement = this.prepareStreaming(connection, sql);
+
+			this.bindParameters(statement, parameters);
+
+			final RowCursor<R> cursor = new RowCursor<>(sql, connection, statement, statement.executeQuery(), mapper);
+
+			return StreamSupport.stream(cursor, false).onClose(cursor::close);
+
+		} catch (final SQLException ex) {
+			closeQuietly(statement);
+			closeQuietly(connection);
+
+			this.handleError(ex, "Error on streaming database query: " + sql);
+		}
+
+		return Stream.empty();
+	}
+
+	/*
+	 * Borrow a connection and feed the query rows to the reader one by one, pardoning invalid rows
+	 */
+	private int streamQuery(String sql, final ResultReader reader, final Object... parameters) throws SQLException {
+		Valid.checkAsync("Sending database query must be called async, command: " + sql);
+
+		this.checkEstablished();
+
+		sql = this.replaceVariables(sql);
+		Debugger.debug("mysql", "Streaming database query: " + sql);
+
+		try (Connection connection = this.borrowConnection(); PreparedStatement statement = this.prepareStreaming(connection, sql)) {
+			this.bindParameters(statement, parameters);
+
+			try (ResultSet resultSet = statement.executeQuery()) {
+				final SimpleResultSet set = new SimpleResultSet(getTableLabel(resultSet), resultSet);
+				int count = 0;
 
-				this.handleError(ex, "Error on querying database with: " + sql);
+				while (resultSet.next())
+					try {
+						reader.accept(set);
+
+						count++;
+
+					} catch (final InvalidRowException ex) {
+						// Pardoned
+					}
+
+				return count;
 			}
+		}
+	}
 
-			return null;
+	/*
+	 * Return the table the first column comes from for error messages, or a neutral label if the driver does not say
+	 */
+	private static String getTableLabel(final ResultSet resultSet) {
+		try {
+			final String table = resultSet.getMetaData().getTableName(1);
+
+			if (table != null && !table.isEmpty())
+				return table;
+
+		} catch (final SQLException ex) {
+			// Not supported by the driver
 		}
+
+		return "query result";
+	}
+
+	/*
+	 * Prepare a forward-only read-only statement so drivers do not buffer the whole result
+	 */
+	private PreparedStatement prepareStreaming(final Connection connection, final String sql) throws SQLException {
+		final PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+		// MySQL Connector/J only streams rows with this magic value, others take it as a hint
+		statement.setFetchSize(this.isMySQL() ? Integer.MIN_VALUE : Math.max(1, this.getFetchSize()));
+
+		return statement;
+	}
+
+	/**
+	 * How many rows to fetch from the database at once when streaming rows,
+	 * MySQL always fetches rows one by one.
+	 * <p>
+	 * Default: 500
+	 *
+	 * @return
+	 */
+	protected int getFetchSize() {
+		return 500;
+	}
+
+	/*
+	 * Close the resource ignoring errors
+	 */
+	private static void closeQuietly(@Nullable final AutoCloseable closeable) {
+		if (closeable != null)
+			try {
+				closeable.close();
+
+			} catch (final Exception ex) {
+				// Already closed
+			}
 	}
 
 	/**
@@ -754,13 +1126,10 @@ public class SimpleDatabase {
 		if (sqls.isEmpty())
 			return;
 
-		synchronized (this.connection) {
-			this.checkEstablished();
-
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		this.checkEstablished();
 
-			try (Statement batchStatement = this.getConnection().createStatement(this.isSQLite ? ResultSet.TYPE_FORWARD_ONLY : ResultSet.TYPE_SCROLL_SENSITIVE, this.isSQLite ? ResultSet.CONCUR_READ_ONLY : ResultSet.CONCUR_UPDATABLE)) {
+		try (Connection connection = this.borrowConnection()) {
+			try (Statement batchStatement = connection.createStatement()) {
 				final int processedCount = sqls.size();
 
 				for (final String sql : sqls)
@@ -771,16 +1140,18 @@ public class SimpleDatabase {
 							+ (processedCount > 50_000 ? "10-20 MINUTES" : "5-10 MINUTES") + " - If server will print a crash report, ignore it, update will proceed.");
 
 				// Prevent automatically sending db instructions
-				this.getConnection().setAutoCommit(false);
+				connection.setAutoCommit(false);
 
 				try {
 					// Execute
 					batchStatement.executeBatch();
 
 					// This will block the thread
-					this.getConnection().commit();
+					connection.commit();
 
 				} catch (final Throwable t) {
+					connection.rollback();
+
 					final List<String> errorMessage = new ArrayList<>();
 
 					errorMessage.add("Error executing a batch update with " + sqls.size() + " SQLs:");
@@ -794,69 +1165,212 @@ public class SimpleDatabase {
 					throw t;
 				}
 
-			} catch (final Throwable t) {
-				t.printStackTrace();
-
 			} finally {
-				try {
-					this.getConnection().setAutoCommit(true);
-
-				} catch (final SQLException ex) {
-					ex.printStackTrace();
-				}
+				connection.setAutoCommit(true);
 			}
+
+		} catch (final Throwable t) {
+			t.printStackTrace();
 		}
 	}
 
 	/**
-	 * Attempts to return a prepared statement
+	 * Attempts to return a prepared statement on the connection from {@link #getConnection()}
 	 * <p>
+	 * The connection is shared and stays open, so statements you forget to close do not
+	 * block other operations. Prefer {@link #updatePrepared(String, Object...)} and
+	 * {@link #queryPrepared(String, ResultMapper, Object...)} which use the pool.
 	 * Make sure you called connect() first otherwise an error will be thrown
 	 *
 	 * @param sql
 	 * @return
 	 * @throws SQLException
 	 */
-	protected final java.sql.PreparedStatement prepareStatement(String sql) throws SQLException {
-		synchronized (this.connection) {
-			this.checkEstablished();
+	protected final PreparedStatement prepareStatement(String sql) throws SQLException {
+		return this.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	/**
+	 * Attempts to return a prepared statement on the connection from {@link #getConnection()}
+	 * <p>
+	 * The connection is shared and stays open, so statements you forget to close do not
+	 * block other operations. Make sure you called connect() first otherwise an error will be thrown
+	 *
+	 * @param sql
+	 * @param type
+	 * @param concurrency
+	 *
+	 * @return
+	 * @throws SQLException
+	 */
+	protected final PreparedStatement prepareStatement(String sql, final int type, final int concurrency) throws SQLException {
+		this.checkEstablished();
+
+		sql = this.replaceVariables(sql);
+		Debugger.debug("mysql", "Preparing statement: " + sql);
+
+		final Connection connection = this.getConnection();
+
+		if (connection == null)
+			throw new SQLException("Could not open database connection to prepare: " + sql);
+
+		return connection.prepareStatement(sql, type, concurrency);
+	}
+
+	/**
+	 * Runs an INSERT, UPDATE or DELETE through a prepared statement,
+	 * binding the given parameters to the ? placeholders in order.
+	 * <p>
+	 * MySQL and MariaDB drivers cache the statement so it is only parsed once per
+	 * connection, use this for queries you run often. Make sure you called connect()
+	 * first otherwise an error will be thrown
+	 *
+	 * @param sql
+	 * @param parameters
+	 * @return the amount of affected rows
+	 */
+	protected final int updatePrepared(String sql, final Object... parameters) {
+		if (!this.connecting)
+			Valid.checkAsync("Updating database must be done async! Call: " + sql);
+
+		this.checkEstablished();
 
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		sql = this.replaceVariables(sql);
+		Debugger.debug("mysql", "Updating database with prepared: " + sql);
 
-			sql = this.replaceVariables(sql);
+		try (Connection connection = this.borrowConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+			this.bindParameters(statement, parameters);
 
-			Debugger.debug("mysql", "Preparing statement: " + sql);
-			return this.connection.prepareStatement(sql);
+			return statement.executeUpdate();
+
+		} catch (final SQLException ex) {
+			this.handleError(ex, "Error on updating database with: " + sql);
 		}
+
+		return 0;
 	}
 
 	/**
-	 * Attempts to return a prepared statement
+	 * Runs a SELECT through a prepared statement, binding the given parameters
+	 * to the ? placeholders in order, and returns what the mapper makes out of the results.
 	 * <p>
+	 * The result set is closed for you after the mapper is called.
 	 * Make sure you called connect() first otherwise an error will be thrown
 	 *
+	 * @param <R>
 	 * @param sql
-	 * @param type
-	 * @param concurrency
+	 * @param mapper
+	 * @param parameters
+	 * @return the mapper result or null if the query failed
+	 */
+	protected final <R> R queryPrepared(String sql, @NonNull final ResultMapper<R> mapper, final Object... parameters) {
+		Valid.checkAsync("Sending database query must be called async, command: " + sql);
+
+		this.checkEstablished();
+
+		sql = this.replaceVariables(sql);
+		Debugger.debug("mysql", "Querying database with prepared: " + sql);
+
+		try (Connection connection = this.borrowConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+			this.bindParameters(statement, parameters);
+
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return mapper.apply(new SimpleResultSet(sql, resultSet));
+			}
+
+		} catch (final SQLException ex) {
+			this.handleError(ex, "Error on querying database with: " + sql);
+		}
+
+		return null;
+	}
+
+	/*
+	 * Bind the parameters to the statement, serializing values the driver does not know
+	 */
+	private void bindParameters(final PreparedStatement statement, final Object... parameters) throws SQLException {
+		for (int i = 0; i < parameters.length; i++) {
+			final Object value = parameters[i];
+
+			if (value == null)
+				statement.setNull(i + 1, Types.NULL);
+
+			else if (value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof byte[] || value instanceof java.util.Date)
+				statement.setObject(i + 1, value);
+
+			else if (value instanceof UUID || value instanceof Enum)
+				statement.setString(i + 1, value.toString());
+
+			else
+				statement.setString(i + 1, SerializeUtil.serialize(this.getTableMode(), value).toString());
+		}
+	}
+
+	/**
+	 * Borrow a connection from the pool. Close it when done (use try-with-resources)
+	 * to return it to the pool so that other operations can use it.
+	 * <p>
+	 * Make sure you called connect() first otherwise an error will be thrown
 	 *
 	 * @return
 	 * @throws SQLException
 	 */
-	protected final java.sql.PreparedStatement prepareStatement(String sql, final int type, final int concurrency) throws SQLException {
-		synchronized (this.connection) {
-			this.checkEstablished();
+	protected final Connection borrowConnection() throws SQLException {
+		this.checkEstablished();
 
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		return this.dataSource.getConnection();
+	}
 
-			sql = this.replaceVariables(sql);
+	/**
+	 * Return a connection kept open until {@link #close()} is called. It is opened separately
+	 * and does not take a connection from the pool. This is also the connection
+	 * {@link #prepareStatement(String)} uses.
+	 * <p>
+	 * On SQLite this is a second connection to the file, its writes wait for the pooled
+	 * connection to finish writing and the other way around.
+	 *
+	 * @deprecated other methods here borrow a connection per operation so they run in parallel,
+	 * use {@link #borrowConnection()} in try-with-resources instead
+	 * @return
+	 */
+	@Deprecated
+	protected final Connection getConnection() {
+		this.checkEstablished();
 
-			Debugger.debug("mysql", "Preparing statement: " + sql);
-			return this.connection.prepareStatement(sql, type, concurrency);
+		synchronized (this) {
+			try {
+				if (this.legacyConnection == null || this.legacyConnection.isClosed())
+					this.legacyConnection = this.openUnpooled();
+
+			} catch (final SQLException ex) {
+				this.handleError(ex, "Error opening database connection");
+			}
+
+			return this.legacyConnection;
 		}
 	}
 
+	/*
+	 * Open a connection that does not count towards the pool limit, also for HikariCP
+	 */
+	private Connection openUnpooled() throws SQLException {
+		final DataSource dataSource = this.dataSource;
+
+		if (dataSource instanceof SimpleConnectionPool)
+			return ((SimpleConnectionPool) dataSource).openUnpooled();
+
+		final LastCredentials credentials = this.lastCredentials;
+		final Properties properties = getDriverProperties(credentials.url);
+
+		if (credentials.user != null)
+			properties.setProperty("user", credentials.user);
+
+		if (credentials.password != null)
+			properties.setProperty("password", credentials.password);
+
+		return DriverManager.getConnection(credentials.url, properties);
+	}
+
 	/**
 	 * Is the connection established, open and valid?
 	 * Performs a blocking ping request to the database
@@ -867,15 +1381,13 @@ public class SimpleDatabase {
 		if (!this.isLoaded())
 			return false;
 
-		try {
-			if (!this.connection.isValid(0))
-				return false;
-		} catch (SQLException | AbstractMethodError err) {
-			// Pass through silently
-		}
+		try (Connection connection = this.dataSource.getConnection()) {
+			try {
+				return connection.isValid(0);
 
-		try {
-			return !this.connection.isClosed();
+			} catch (final AbstractMethodError err) {
+				return !connection.isClosed();
+			}
 
 		} catch (final SQLException ex) {
 			return false;
@@ -940,7 +1452,7 @@ public class SimpleDatabase {
 	 * @return
 	 */
 	public final boolean isLoaded() {
-		return this.connection != null;
+		return this.dataSource != null;
 	}
 
 	// --------------------------------------------------------------------
@@ -981,6 +1493,13 @@ public class SimpleDatabase {
 		return SerializeUtil.Mode.YAML;
 	}
 
+	/*
+	 * Return if we connected through the MySQL driver that needs special streaming
+	 */
+	private boolean isMySQL() {
+		return this.lastCredentials != null && this.lastCredentials.url.startsWith("jdbc:mysql://");
+	}
+
 	/**
 	 * Return if the database is SQLite
 	 *
@@ -1140,6 +1659,79 @@ public class SimpleDatabase {
 		void accept(SimpleResultSet set) throws SQLException;
 	}
 
+	/**
+	 * A helper class to turn a results set into a single value. (We cannot use a simple Function since it does not
+	 * catch exceptions automatically.)
+	 *
+	 * @param <R>
+	 */
+	protected interface ResultMapper<R> {
+
+		/**
+		 * Reads the given results set and returns the value, we handle exceptions for you
+		 *
+		 * @param set
+		 * @return
+		 * @throws SQLException
+		 */
+		R apply(SimpleResultSet set) throws SQLException;
+	}
+
+	/*
+	 * Reads rows lazily for streamRows and releases the connection when closed
+	 */
+	private static final class RowCursor<R> extends Spliterators.AbstractSpliterator<R> {
+
+		private final String sql;
+		private final Connection connection;
+		private final Statement statement;
+		private final ResultSet resultSet;
+		private final SimpleResultSet set;
+		private final ResultMapper<R> mapper;
+
+		private RowCursor(final String sql, final Connection connection, final Statement statement, final ResultSet resultSet, final ResultMapper<R> mapper) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED);
+
+			this.sql = sql;
+			this.connection = connection;
+			this.statement = statement;
+			this.resultSet = resultSet;
+			this.set = new SimpleResultSet(getTableLabel(resultSet), resultSet);
+			this.mapper = mapper;
+		}
+
+		@Override
+		public boolean tryAdvance(final Consumer<? super R> action) {
+			try {
+				while (this.resultSet.next()) {
+					final R row;
+
+					try {
+						row = this.mapper.apply(this.set);
+
+					} catch (final InvalidRowException ex) {
+						// Pardoned
+						continue;
+					}
+
+					action.accept(row);
+					return true;
+				}
+
+				return false;
+
+			} catch (final SQLException ex) {
+				throw new FoException(ex, "Error reading a row from query: " + this.sql);
+			}
+		}
+
+		private void close() {
+			closeQuietly(this.resultSet);
+			closeQuietly(this.statement);
+			closeQuietly(this.connection);
+		}
+	}
+
 	private static class InvalidRowException extends RuntimeException {
 		private static final long serialVersionUID = 1L;
 	}
@@ -1,13 +1,11 @@
 package org.mineacademy.fo.database;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.mineacademy.fo.ChatUtil;
 import org.mineacademy.fo.Common;
@@ -15,7 +13,7 @@ import org.mineacademy.fo.MathUtil;
 import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.collection.SerializedMap;
 import org.mineacademy.fo.debug.Debugger;
-import org.mineacademy.fo.debug.LagCatcher;
+import org.mineacademy.fo.exception.FoException;
 import org.mineacademy.fo.settings.SimpleSettings;
 
 import lombok.NonNull;
@@ -45,10 +43,21 @@ import lombok.NonNull;
 public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 
 	/**
-	 * An internal flag to prevent dead lock so that we do not call any
-	 * more queries within the {@link #load(UUID, Object)} or {@link #save(UUID, Object)} methods
+	 * Inserts or updates the row in one round trip on MySQL and MariaDB
 	 */
-	private boolean isQuerying = false;
+	private static final String MYSQL_UPSERT = "INSERT INTO {table}(UUID, Name, Data, Updated) VALUES (?, ?, ?, ?) "
+			+ "ON DUPLICATE KEY UPDATE Data = VALUES(Data), Updated = VALUES(Updated)";
+
+	/**
+	 * Inserts or replaces the row in one round trip on SQLite, also works with
+	 * the older SQLite bundled with legacy servers which has no ON CONFLICT clause
+	 */
+	private static final String SQLITE_UPSERT = "INSERT OR REPLACE INTO {table}(UUID, Name, Data, Updated) VALUES (?, ?, ?, ?)";
+
+	/**
+	 * The queue running loads and saves per unique ID, created on first use
+	 */
+	private FlatDatabaseQueue queue;
 
 	/**
 	 * Creates the table if it does not exist
@@ -84,7 +93,7 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	private void removeOldEntries() {
 		final long threshold = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(this.getExpirationDays());
 
-		this.update("DELETE FROM {table} WHERE Updated < " + threshold + "");
+		this.updatePrepared("DELETE FROM {table} WHERE Updated < ?", threshold);
 	}
 
 	/**
@@ -139,43 +148,47 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 * @param runAfterLoad callback synced on the main thread
 	 */
 	public final void load(final UUID uuid, final T cache, @Nullable Runnable runAfterLoad) {
-		if (!this.isLoaded() || this.isQuerying)
-			return;
+		final CompletableFuture<Void> future = this.loadAsync(uuid, cache);
 
-		LagCatcher.start("mysql");
-		this.isQuerying = true;
+		if (runAfterLoad != null)
+			future.thenRun(runAfterLoad);
+	}
+
+	/**
+	 * Queue loading the data for the given unique ID and his cache.
+	 * <p>
+	 * Loads and saves for the same unique ID are run in the order they were
+	 * called while different players are loaded in parallel. Nothing is dropped.
+	 * <p>
+	 * The returned future is completed on the main thread after {@link #onLoad(SerializedMap, Object)}
+	 * has been called, or exceptionally if loading failed or the database is not connected.
+	 *
+	 * @param uuid
+	 * @param cache
+	 * @return
+	 */
+	public final CompletableFuture<Void> loadAsync(@NonNull final UUID uuid, final T cache) {
+		if (!this.isLoaded())
+			return this.failNotLoaded();
 
 		Debugger.debug("mysql", "---------------- MySQL - Loading data for " + uuid);
 
-		Common.runAsync(() -> {
+		return this.getQueue().submit(uuid, false, () -> {
+			final long startNanos = System.nanoTime();
 
 			try {
-				final ResultSet resultSet = this.query("SELECT * FROM {table} WHERE UUID='" + uuid + "'");
-				final String dataRaw = resultSet.next() ? resultSet.getString("Data") : "{}";
-				Debugger.debug("mysql", "JSON: " + dataRaw);
-
-				Common.runLater(() -> {
+				final String dataRaw = this.queryPrepared("SELECT Data FROM {table} WHERE UUID = ?", resultSet -> {
+					final String json = resultSet.next() ? resultSet.getString("Data") : "";
 
-					try {
-						final SerializedMap data = SerializedMap.fromJson(dataRaw);
-						Debugger.debug("mysql", "Deserialized data: " + data);
+					return json.isEmpty() ? "{}" : json;
+				}, uuid);
 
-						// Call the user specified load method
-						this.onLoad(data, cache);
+				if (dataRaw == null)
+					throw new FoException("Could not query data for " + uuid + ", see the error above");
 
-						// Invoke sync callback when load finish
-						if (runAfterLoad != null)
-							runAfterLoad.run();
-
-					} catch (final Throwable t) {
-						Common.error(t,
-								"Failed to parse loaded data from MySQL!",
-								"UUID: " + uuid,
-								"Raw data: " + dataRaw,
-								"Error: %error");
+				Debugger.debug("mysql", "JSON: " + dataRaw);
 
-					}
-				});
+				return dataRaw;
 
 			} catch (final Throwable t) {
 				Common.error(t,
@@ -183,11 +196,38 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 						"UUID: " + uuid,
 						"Error: %error");
 
-			} finally {
-				this.isQuerying = false;
+				throw t;
 
-				this.logPerformance("loading");
+			} finally {
+				this.logPerformance("loading", startNanos);
 			}
+
+		}).thenCompose(dataRaw -> {
+			final CompletableFuture<Void> loadFuture = new CompletableFuture<>();
+
+			Common.runLater(() -> {
+
+				try {
+					final SerializedMap data = SerializedMap.fromJson(dataRaw);
+					Debugger.debug("mysql", "Deserialized data: " + data);
+
+					// Call the user specified load method
+					this.onLoad(data, cache);
+
+					loadFuture.complete(null);
+
+				} catch (final Throwable t) {
+					Common.error(t,
+							"Failed to parse loaded data from MySQL!",
+							"UUID: " + uuid,
+							"Raw data: " + dataRaw,
+							"Error: %error");
+
+					loadFuture.completeExceptionally(t);
+				}
+			});
+
+			return loadFuture;
 		});
 	}
 
@@ -249,11 +289,33 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 * @param runAfterSave sync callback to be run when save is done
 	 */
 	public final void save(final String name, final UUID uuid, final T cache, @Nullable final Runnable runAfterSave) {
-		if (!this.isLoaded() || this.isQuerying)
-			return;
+		final CompletableFuture<Void> future = this.saveAsync(name, uuid, cache);
 
-		LagCatcher.start("mysql");
-		this.isQuerying = true;
+		if (runAfterSave != null)
+			future.thenRun(runAfterSave);
+	}
+
+	/**
+	 * Queue saving the data for the given name, unique ID and his cache.
+	 * <p>
+	 * The data is taken from {@link #onSave(Object)} right away on the calling thread.
+	 * If a save for the same unique ID is still waiting in the queue, it is replaced
+	 * with this snapshot so that only the latest data is written once.
+	 * <p>
+	 * If the onSave returns empty data we delete the row.
+	 * <p>
+	 * The returned future is completed on the main thread after the data was written,
+	 * or exceptionally if saving failed or the database is not connected. Call join() on it
+	 * in onPluginStop to block until the data is written.
+	 *
+	 * @param name
+	 * @param uuid
+	 * @param cache
+	 * @return
+	 */
+	public final CompletableFuture<Void> saveAsync(final String name, @NonNull final UUID uuid, final T cache) {
+		if (!this.isLoaded())
+			return this.failNotLoaded();
 
 		// Save using the user configured save method
 		final SerializedMap data = this.onSave(cache);
@@ -262,23 +324,21 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 		Debugger.debug("mysql", "Raw data: " + data);
 		Debugger.debug("mysql", "JSON: " + (data == null ? "null" : data.toJson()));
 
-		Common.runAsync(() -> {
+		return this.getQueue().submit(uuid, true, () -> {
+			final long startNanos = System.nanoTime();
 
 			try {
 				// Remove data if empty
 				if (data == null || data.isEmpty()) {
-					this.update("DELETE FROM {table} WHERE UUID= '" + uuid + "';");
+					this.updatePrepared("DELETE FROM {table} WHERE UUID = ?", uuid);
 
 					if (Debugger.isDebugged("mysql"))
 						Debugger.debug("mysql", "Data was empty, row has been removed.");
 
-				} else if (this.isStored(uuid))
-					this.update("UPDATE {table} SET Data='" + data.toJson() + "', Updated='" + System.currentTimeMillis() + "' WHERE UUID='" + uuid + "';");
-				else
-					this.update("INSERT INTO {table}(UUID, Name, Data, Updated) VALUES ('" + uuid + "', '" + name + "', '" + data.toJson() + "', '" + System.currentTimeMillis() + "');");
+				} else
+					this.updatePrepared(this.isSQLite() ? SQLITE_UPSERT : MYSQL_UPSERT, uuid, name, data.toJson(), System.currentTimeMillis());
 
-				if (runAfterSave != null)
-					Common.runLater(() -> runAfterSave.run());
+				return null;
 
 			} catch (final Throwable ex) {
 				Common.error(ex,
@@ -286,45 +346,81 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 						"UUID: " + uuid,
 						"Error: %error");
 
-			} finally {
-				this.isQuerying = false;
+				throw ex;
 
-				this.logPerformance("saving");
+			} finally {
+				this.logPerformance("saving", startNanos);
 			}
+
+		}).thenCompose(nothing -> {
+			final CompletableFuture<Void> saveFuture = new CompletableFuture<>();
+
+			Common.runLater(() -> saveFuture.complete(null));
+
+			return saveFuture;
 		});
 	}
 
-	/*
-	 * Utility method to finish LagCatcher mysql measure and log
-	 * if there was some lag, or if we detected mysql being run
-	 * from the main thread.
+	/**
+	 * Return how many players have loads or saves waiting in the queue or running
 	 *
-	 * @param operation
+	 * @return
 	 */
-	private void logPerformance(final String operation) {
-		final boolean isMainThread = Bukkit.isPrimaryThread();
-
-		LagCatcher.end("mysql", isMainThread ? 10 : MathUtil.atLeast(200, SimpleSettings.LAG_THRESHOLD_MILLIS),
-				ChatUtil.capitalize(operation) + " data to MySQL took {time} ms" + (isMainThread ? " - To prevent slowing the server, " + operation + " can be made async (carefully)" : ""));
+	public final int getPendingOperations() {
+		synchronized (this) {
+			return this.queue == null ? 0 : this.queue.getPendingCount();
+		}
 	}
 
-	/*
-	 * Checks if the given unique id is stored in the database
+	/**
+	 * How many players can be loaded or saved at the same time, at least 1.
+	 * <p>
+	 * Called once when the first load or save is queued.
+	 * <p>
+	 * Default: 4
 	 *
-	 * @param uuid
 	 * @return
-	 * @throws SQLException
 	 */
-	private boolean isStored(@NonNull final UUID uuid) throws SQLException {
-		final ResultSet resultSet = this.query("SELECT * FROM {table} WHERE UUID= '" + uuid.toString() + "'");
+	protected int getQueueThreads() {
+		return 4;
+	}
+
+	/*
+	 * Lazily create the queue so that getQueueThreads can be overridden
+	 */
+	private FlatDatabaseQueue getQueue() {
+		synchronized (this) {
+			if (this.queue == null)
+				this.queue = new FlatDatabaseQueue(this.getClass().getSimpleName() + "-Queue", Math.max(1, this.getQueueThreads()));
+
+			return this.queue;
+		}
+	}
+
+	/*
+	 * Return a future failed because the connection was never established
+	 */
+	private CompletableFuture<Void> failNotLoaded() {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		future.completeExceptionally(new FoException("Connection was never established, did you call connect() on " + this + "?"));
 
-		if (resultSet == null)
-			return false;
+		return future;
+	}
+
+	/*
+	 * Utility method to log if there was some lag
+	 *
+	 * @param operation
+	 * @param startNanos
+	 */
+	private void logPerformance(final String operation, final long startNanos) {
+		if (SimpleSettings.LAG_THRESHOLD_MILLIS == -1)
+			return;
 
-		if (resultSet.next())
-			return resultSet.getString("UUID") != null;
+		final long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 
-		return false;
+		if (tookMillis > MathUtil.atLeast(200, SimpleSettings.LAG_THRESHOLD_MILLIS))
+			Common.log(ChatUtil.capitalize(operation) + " data to MySQL took " + tookMillis + " ms");
 	}
 
 	/**
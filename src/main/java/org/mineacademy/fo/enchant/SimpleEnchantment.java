@@ -2,11 +2,16 @@ package org.mineacademy.fo.enchant;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 
@@ -88,6 +93,21 @@ public abstract class SimpleEnchantment implements Listener {
 	 */
 	private static final StrictSet<SimpleEnchantment> registeredEnchantments = new StrictSet<>();
 
+	/**
+	 * Registered enchants overriding each event method, so we skip events nobody listens to
+	 */
+	private static final Map<Hook, Set<SimpleEnchantment>> enchantmentsByHook = new EnumMap<>(Hook.class);
+
+	/**
+	 * Bukkit enchantments we already paired with our enchant, or found they are not ours
+	 */
+	private static final Map<Enchantment, Optional<SimpleEnchantment>> resolvedEnchantments = new ConcurrentHashMap<>();
+
+	static {
+		for (final Hook hook : Hook.values())
+			enchantmentsByHook.put(hook, new HashSet<>());
+	}
+
 	/**
 	 * The class that will be instantiated to wrap custom enchants.
 	 */
@@ -143,6 +163,12 @@ public abstract class SimpleEnchantment implements Listener {
 			this.handle.register();
 
 			registeredEnchantments.add(this);
+
+			for (final Hook hook : Hook.values())
+				if (hook.isOverriddenBy(this.getClass()))
+					enchantmentsByHook.get(hook).add(this);
+
+			resolvedEnchantments.clear();
 		}
 	}
 
@@ -477,6 +503,8 @@ public abstract class SimpleEnchantment implements Listener {
 	@Deprecated
 	public final void setLegacyId(int id) {
 		this.id = id;
+
+		resolvedEnchantments.clear();
 	}
 
 	// ------------------------------------------------------------------------------------------
@@ -502,24 +530,7 @@ public abstract class SimpleEnchantment implements Listener {
 	 */
 	public static Map<SimpleEnchantment, Integer> findEnchantments(ItemStack item) {
 		final Map<SimpleEnchantment, Integer> map = new HashMap<>();
-
-		if (item == null)
-			return map;
-
-		final Map<Enchantment, Integer> vanilla;
-
-		try {
-			vanilla = item.hasItemMeta() ? item.getItemMeta().getEnchants() : new HashMap<>();
-		} catch (final NoSuchMethodError err) {
-			if (Remain.hasItemMeta())
-				err.printStackTrace();
-
-			return map;
-
-		} catch (final NullPointerException ex) {
-			// Caused if any associated enchant is null, probably by a third party plugin
-			return map;
-		}
+		final Map<Enchantment, Integer> vanilla = getVanillaEnchants(item);
 
 		for (final Entry<Enchantment, Integer> entry : vanilla.entrySet()) {
 			final Enchantment enchantment = entry.getKey();
@@ -541,26 +552,7 @@ public abstract class SimpleEnchantment implements Listener {
 	 * @return
 	 */
 	public static boolean hasEnchantment(ItemStack item, @NonNull SimpleEnchantment simpleEnchantment) {
-		if (item == null)
-			return false;
-
-		final Map<Enchantment, Integer> vanilla;
-
-		try {
-			vanilla = item.hasItemMeta() ? item.getItemMeta().getEnchants() : new HashMap<>();
-
-		} catch (final NoSuchMethodError err) {
-			if (Remain.hasItemMeta())
-				err.printStackTrace();
-
-			return false;
-
-		} catch (final NullPointerException ex) {
-			return false;
-		}
-
-		for (final Entry<Enchantment, Integer> entry : vanilla.entrySet()) {
-			final Enchantment enchantment = entry.getKey();
+		for (final Enchantment enchantment : getVanillaEnchants(item).keySet()) {
 			final SimpleEnchantment otherSimpleEnchantment = fromBukkit(enchantment);
 
 			if (otherSimpleEnchantment != null && otherSimpleEnchantment.getNamespacedName().equals(simpleEnchantment.getNamespacedName()))
@@ -728,7 +720,49 @@ public abstract class SimpleEnchantment implements Listener {
 		return null;
 	}
 
+	/*
+	 * Return enchants on the item, reading them from the item directly without cloning its meta
+	 */
+	private static Map<Enchantment, Integer> getVanillaEnchants(ItemStack item) {
+		if (item == null || registeredEnchantments.isEmpty())
+			return Collections.emptyMap();
+
+		try {
+			return item.getEnchantments();
+
+		} catch (final NoSuchMethodError err) {
+			if (Remain.hasItemMeta())
+				err.printStackTrace();
+
+		} catch (final NullPointerException ex) {
+			// Caused if any associated enchant is null, probably by a third party plugin
+		}
+
+		return Collections.emptyMap();
+	}
+
+	/*
+	 * Return our enchant paired with the Bukkit one, or null if it is not ours
+	 */
 	private static SimpleEnchantment fromBukkit(Enchantment bukkitEnchantment) {
+		if (bukkitEnchantment == null)
+			return null;
+
+		Optional<SimpleEnchantment> resolved = resolvedEnchantments.get(bukkitEnchantment);
+
+		if (resolved == null) {
+			resolved = Optional.ofNullable(findSimpleEnchantment(bukkitEnchantment));
+
+			resolvedEnchantments.put(bukkitEnchantment, resolved);
+		}
+
+		return resolved.orElse(null);
+	}
+
+	/*
+	 * Find our enchant paired with the Bukkit one by comparing all registered enchants
+	 */
+	private static SimpleEnchantment findSimpleEnchantment(Enchantment bukkitEnchantment) {
 		if (hasNamespacedKeys) {
 			final String key = bukkitEnchantment.getKey().getNamespace() + ":" + bukkitEnchantment.getKey().getKey();
 
@@ -758,6 +792,42 @@ public abstract class SimpleEnchantment implements Listener {
 		return null;
 	}
 
+	/*
+	 * Event methods enchants may override
+	 */
+	private enum Hook {
+		DAMAGE("onDamage", int.class, LivingEntity.class, EntityDamageByEntityEvent.class),
+		INTERACT("onInteract", int.class, PlayerInteractEvent.class),
+		BREAK_BLOCK("onBreakBlock", int.class, BlockBreakEvent.class),
+		SHOOT("onShoot", int.class, LivingEntity.class, ProjectileLaunchEvent.class),
+		HIT("onHit", int.class, LivingEntity.class, ProjectileHitEvent.class);
+
+		private final String methodName;
+		private final Class<?>[] parameterTypes;
+
+		Hook(String methodName, Class<?>... parameterTypes) {
+			this.methodName = methodName;
+			this.parameterTypes = parameterTypes;
+		}
+
+		/*
+		 * Return true if the enchant class or any of its parents below SimpleEnchantment declares this method
+		 */
+		private boolean isOverriddenBy(Class<?> enchantClass) {
+			for (Class<?> type = enchantClass; type != null && type != SimpleEnchantment.class; type = type.getSuperclass())
+				try {
+					type.getDeclaredMethod(this.methodName, this.parameterTypes);
+
+					return true;
+
+				} catch (final NoSuchMethodException ex) {
+					// Continue with the parent
+				}
+
+			return false;
+		}
+	}
+
 	/**
 	 * A wrapper for 1.20.5+ cost handling
 	 */
@@ -793,7 +863,7 @@ public abstract class SimpleEnchantment implements Listener {
 			final Entity damager = event.getDamager();
 
 			if (damager instanceof LivingEntity)
-				this.execute((LivingEntity) damager, (enchant, level) -> enchant.onDamage(level, (LivingEntity) damager, event));
+				this.execute((LivingEntity) damager, Hook.DAMAGE, (enchant, level) -> enchant.onDamage(level, (LivingEntity) damager, event));
 		}
 
 		@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = false)
@@ -801,12 +871,12 @@ public abstract class SimpleEnchantment implements Listener {
 			if (!Remain.isInteractEventPrimaryHand(event))
 				return;
 
-			this.execute(event.getPlayer(), (enchant, level) -> enchant.onInteract(level, event));
+			this.execute(event.getPlayer(), Hook.INTERACT, (enchant, level) -> enchant.onInteract(level, event));
 		}
 
 		@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
 		public void onBreakBlock(BlockBreakEvent event) {
-			this.execute(event.getPlayer(), (enchant, level) -> enchant.onBreakBlock(level, event));
+			this.execute(event.getPlayer(), Hook.BREAK_BLOCK, (enchant, level) -> enchant.onBreakBlock(level, event));
 		}
 
 		@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
@@ -817,8 +887,10 @@ public abstract class SimpleEnchantment implements Listener {
 				if (projectileSource instanceof LivingEntity) {
 					final LivingEntity shooter = (LivingEntity) projectileSource;
 
-					this.execute(shooter, (enchant, level) -> enchant.onShoot(level, shooter, event));
-					EntityUtil.trackHit(event.getEntity(), hitEvent -> this.execute(shooter, (enchant, level) -> enchant.onHit(level, shooter, hitEvent)));
+					this.execute(shooter, Hook.SHOOT, (enchant, level) -> enchant.onShoot(level, shooter, event));
+
+					if (!enchantmentsByHook.get(Hook.HIT).isEmpty())
+						EntityUtil.trackHit(event.getEntity(), hitEvent -> this.execute(shooter, Hook.HIT, (enchant, level) -> enchant.onHit(level, shooter, hitEvent)));
 				}
 			} catch (final NoSuchMethodError ex) {
 				if (MinecraftVersion.atLeast(V.v1_4))
@@ -826,13 +898,22 @@ public abstract class SimpleEnchantment implements Listener {
 			}
 		}
 
-		private void execute(LivingEntity source, BiConsumer<SimpleEnchantment, Integer> executer) {
+		private void execute(LivingEntity source, Hook hook, BiConsumer<SimpleEnchantment, Integer> executer) {
+			final Set<SimpleEnchantment> listening = enchantmentsByHook.get(hook);
+
+			// No need to look at the item when no enchant overrides this event
+			if (listening.isEmpty())
+				return;
+
 			try {
 				final ItemStack hand = source instanceof Player ? ((Player) source).getItemInHand() : source.getEquipment().getItemInHand();
 
-				if (hand != null)
-					for (final Entry<SimpleEnchantment, Integer> e : SimpleEnchantment.findEnchantments(hand).entrySet())
-						executer.accept(e.getKey(), e.getValue());
+				for (final Entry<Enchantment, Integer> entry : getVanillaEnchants(hand).entrySet()) {
+					final SimpleEnchantment enchant = fromBukkit(entry.getKey());
+
+					if (enchant != null && listening.contains(enchant))
+						executer.accept(enchant, entry.getValue());
+				}
 
 			} catch (final NoSuchMethodError ex) {
 				if (Remain.hasItemMeta())
@@ -386,14 +386,20 @@ public abstract class Menu {
 	protected final Button getButton(final ItemStack fromItem) {
 		this.registerButtonsIfHasnt();
 
+		final ItemUtil.ItemFingerprint fingerprint = ItemUtil.getFingerprint(fromItem);
+
 		for (final Map.Entry<Button, Position> entry : this.registeredButtons.entrySet()) {
 			final Button button = entry.getKey();
 			final Position position = entry.getValue();
 
 			Valid.checkNotNull(button, "Menu button is null at " + this.getClass().getSimpleName());
 
-			if (position == null && button.getSlot() == -1 && ItemUtil.isSimilar(fromItem, button.getItem()))
-				return button;
+			if (position == null && button.getSlot() == -1) {
+				final ItemStack buttonItem = button.getItem();
+
+				if (ItemUtil.isSimilar(fromItem, buttonItem, fingerprint, button.getItemFingerprint(buttonItem)))
+					return button;
+			}
 		}
 
 		return null;
@@ -14,6 +14,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.inventory.ClickType;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
+import org.mineacademy.fo.ItemUtil;
 import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.conversation.SimplePrompt;
 import org.mineacademy.fo.conversation.SimpleStringPrompt;
@@ -54,6 +55,11 @@ public abstract class Button {
 	@Getter
 	private int slot = -1;
 
+	/**
+	 * The fingerprint of the item this button returned last, see {@link #getItemFingerprint(ItemStack)}
+	 */
+	private final ItemUtil.FingerprintCache itemFingerprint = new ItemUtil.FingerprintCache();
+
 	/**
 	 * Create a new button with the given slot
 	 *
@@ -89,6 +95,18 @@ public abstract class Button {
 	 */
 	public abstract ItemStack getItem();
 
+	/**
+	 * Return the fingerprint of the item you got from {@link #getItem()}, only computed
+	 * again when getItem() returns another instance
+	 *
+	 * @param item
+	 * @return the fingerprint, or null if the item is null
+	 */
+	@Nullable
+	public final ItemUtil.ItemFingerprint getItemFingerprint(@Nullable ItemStack item) {
+		return this.itemFingerprint.get(item);
+	}
+
 	// ----------------------------------------------------------------
 	// Static methods
 	// ----------------------------------------------------------------
@@ -1,20 +1,38 @@
 package org.mineacademy.fo.menu.tool;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.inventory.ItemStack;
 import org.mineacademy.fo.Common;
 import org.mineacademy.fo.ItemUtil;
+import org.mineacademy.fo.MinecraftVersion;
+import org.mineacademy.fo.MinecraftVersion.V;
 import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.menu.model.ItemCreator;
+import org.mineacademy.fo.plugin.SimplePlugin;
+import org.mineacademy.fo.remain.CompMaterial;
+import org.mineacademy.fo.remain.CompMetadata;
 
 /**
  * Represents a tool. A tool is a simple ItemStack that is registered within the
  * plugin and fires automatic events
+ * <p>
+ * Items given through {@link #give(Player)} carry the tool id in their NBT so we can
+ * find the tool with a single tag read. Items without the id, such as those given
+ * before or created from {@link #getItem()} directly, are only compared the old way
+ * for tools returning true from {@link #matchUntaggedItems()}.
  */
 public abstract class Tool {
 
@@ -23,6 +41,22 @@ public abstract class Tool {
 	 */
 	private static final Collection<Tool> tools = new ConcurrentLinkedQueue<>();
 
+	/**
+	 * The registered tools by their id
+	 */
+	private static final Map<String, Tool> toolsById = new ConcurrentHashMap<>();
+
+	/**
+	 * The item types of registered tools, replaced as a whole when tools are indexed
+	 */
+	private static volatile Set<Material> toolTypes = EnumSet.noneOf(Material.class);
+
+	/**
+	 * The registered tools we compare untagged items with by their item type, in the order
+	 * they were registered, replaced as a whole when tools are indexed
+	 */
+	private static volatile Map<Material, List<Tool>> untaggedToolsByType = new HashMap<>();
+
 	/**
 	 * Add a new tool to register.
 	 * <p>
@@ -34,6 +68,40 @@ public abstract class Tool {
 		Valid.checkBoolean(!isRegistered(tool), "Tool with itemstack " + tool.getItem() + " already registered");
 
 		tools.add(tool);
+
+		toolsById.putIfAbsent(tool.getId(), tool);
+		index();
+	}
+
+	/**
+	 * Index the item types of tools again since their items may have changed
+	 *
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public static void onReload() {
+		index();
+	}
+
+	/*
+	 * Rebuild the item type indexes from the current tool items
+	 */
+	private static synchronized void index() {
+		final Set<Material> types = EnumSet.noneOf(Material.class);
+		final Map<Material, List<Tool>> untagged = new HashMap<>();
+
+		for (final Tool tool : tools) {
+			final Material type = tool.getItem().getType();
+
+			types.add(type);
+
+			// Tools sharing an id with another one are only found by comparing items
+			if (MinecraftVersion.olderThan(V.v1_7) || tool.matchUntaggedItems() || toolsById.get(tool.getId()) != tool)
+				untagged.computeIfAbsent(type, key -> new ArrayList<>()).add(tool);
+		}
+
+		toolTypes = types;
+		untaggedToolsByType = untagged;
 	}
 
 	/**
@@ -43,19 +111,51 @@ public abstract class Tool {
 	 * @return true if the tool is registered
 	 */
 	static boolean isRegistered(Tool tool) {
-		return getTool(tool.getItem()) != null;
+		final ItemStack item = tool.getItem();
+
+		for (final Tool other : tools)
+			if (other == tool || ItemUtil.isSimilar(other.getItem(), item))
+				return true;
+
+		return false;
 	}
 
 	/**
 	 * Attempts to find a registered tool from given itemstack
+	 * <p>
+	 * Items of a type no tool uses return right away, tagged items are found
+	 * by their id and untagged items are only compared with tools that
+	 * return true from {@link #matchUntaggedItems()}.
 	 *
 	 * @param item the item
 	 * @return the corresponding tool, or null
 	 */
 	public static Tool getTool(ItemStack item) {
-		for (final Tool t : tools)
-			if (t.isTool(item))
+		if (CompMaterial.isAir(item) || !toolTypes.contains(item.getType()))
+			return null;
+
+		final String id = readId(item);
+
+		if (id != null) {
+			final Tool tool = toolsById.get(id);
+
+			if (tool != null)
+				return tool;
+		}
+
+		final List<Tool> candidates = untaggedToolsByType.get(item.getType());
+
+		if (candidates == null)
+			return null;
+
+		final ItemUtil.ItemFingerprint fingerprint = ItemUtil.getFingerprint(item);
+
+		for (final Tool t : candidates) {
+			final ItemStack toolItem = t.getItem();
+
+			if (ItemUtil.isSimilar(toolItem, item, t.itemFingerprint.get(toolItem), fingerprint))
 				return t;
+		}
 
 		return null;
 	}
@@ -69,10 +169,34 @@ public abstract class Tool {
 		return tools.toArray(new Tool[tools.size()]);
 	}
 
+	/*
+	 * Return the tool id stored in the item, or null if it has none
+	 */
+	private static String readId(ItemStack item) {
+		if (MinecraftVersion.olderThan(V.v1_7))
+			return null;
+
+		final String id = CompMetadata.getMetadata(item, getIdTag());
+
+		return id == null || id.isEmpty() ? null : id;
+	}
+
+	/*
+	 * Return the NBT key we store tool ids under
+	 */
+	private static String getIdTag() {
+		return SimplePlugin.getNamed() + "_Tool";
+	}
+
 	// -------------------------------------------------------------------------------------------
 	// Main class implementation
 	// -------------------------------------------------------------------------------------------
 
+	/**
+	 * The fingerprint of the item this tool returned last
+	 */
+	private final ItemUtil.FingerprintCache itemFingerprint = new ItemUtil.FingerprintCache();
+
 	/**
 	 * Create a new tool
 	 */
@@ -105,7 +229,9 @@ public abstract class Tool {
 	 * @return true if this tool is the given itemstack
 	 */
 	public final boolean isTool(final ItemStack item) {
-		return ItemUtil.isSimilar(this.getItem(), item);
+		final ItemStack toolItem = this.getItem();
+
+		return ItemUtil.isSimilar(toolItem, item, this.itemFingerprint.get(toolItem), null);
 	}
 
 	/**
@@ -125,8 +251,11 @@ public abstract class Tool {
 	 * @return
 	 */
 	public final boolean hasTool(Player player) {
+		final ItemStack toolItem = this.getItem();
+		final ItemUtil.ItemFingerprint fingerprint = this.itemFingerprint.get(toolItem);
+
 		for (final ItemStack item : player.getInventory().getContents())
-			if (this.isTool(item))
+			if (ItemUtil.isSimilar(toolItem, item, fingerprint, null))
 				return true;
 
 		return false;
@@ -141,6 +270,49 @@ public abstract class Tool {
 	 */
 	public abstract ItemStack getItem();
 
+	/**
+	 * Return the id stored in items of this tool
+	 * <p>
+	 * Defaults to the class name, override if you create more instances of the same class.
+	 *
+	 * @return
+	 */
+	protected String getId() {
+		return this.getClass().getName();
+	}
+
+	/**
+	 * Return a copy of {@link #getItem()} with this tool's id stored in it,
+	 * use this when giving the tool to players yourself
+	 * <p>
+	 * The item is returned as is on Minecraft older than 1.7.10, or when
+	 * another tool registered the same id first.
+	 *
+	 * @return
+	 */
+	public final ItemStack getTaggedItem() {
+		final ItemStack item = this.getItem();
+
+		if (MinecraftVersion.olderThan(V.v1_7) || toolsById.get(this.getId()) != this)
+			return item;
+
+		return CompMetadata.setMetadata(item, getIdTag(), this.getId());
+	}
+
+	/**
+	 * Should we also find this tool from items without its id, by comparing them
+	 * with {@link #getItem()} the old way? Such items are given out by older versions
+	 * of your plugin or by giving {@link #getItem()} instead of {@link #getTaggedItem()}.
+	 * <p>
+	 * False by default since comparing items is slow. Ignored on Minecraft older than 1.7.10
+	 * where items cannot carry the id and are always compared. Called when tools are registered and on reload.
+	 *
+	 * @return true if untagged items similar to this tool's item are this tool
+	 */
+	protected boolean matchUntaggedItems() {
+		return false;
+	}
+
 	/**
 	 * Called automatically when the tool is clicked
 	 *
@@ -218,7 +390,7 @@ public abstract class Tool {
 	 * @param slot
 	 */
 	public final void give(final Player player, final int slot) {
-		player.getInventory().setItem(slot, this.getItem());
+		player.getInventory().setItem(slot, this.getTaggedItem());
 	}
 
 	/**
@@ -227,7 +399,7 @@ public abstract class Tool {
 	 * @param player
 	 */
 	public final void give(final Player player) {
-		player.getInventory().addItem(this.getItem());
+		player.getInventory().addItem(this.getTaggedItem());
 	}
 
 	/**
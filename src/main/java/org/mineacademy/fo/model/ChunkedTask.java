@@ -1,7 +1,14 @@
 package org.mineacademy.fo.model;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 import org.mineacademy.fo.Common;
 import org.mineacademy.fo.Valid;
+import org.mineacademy.fo.exception.FoException;
+import org.mineacademy.fo.plugin.SimplePlugin;
+import org.mineacademy.fo.remain.Remain;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -9,6 +16,10 @@ import lombok.Setter;
 /**
  * Splits manipulating with large about of items in a list
  * into smaller pieces
+ * <p>
+ * By default we process a fixed amount every few ticks. Set {@link #setTickBudgetMillis(int)}
+ * to instead process as much as fits in a time slice every tick, or {@link #setParallelThreads(int)}
+ * to process async on several threads for work that does not touch the world.
  */
 public abstract class ChunkedTask {
 
@@ -23,17 +34,39 @@ public abstract class ChunkedTask {
 	 */
 	private final int processAmount;
 
+	/**
+	 * How many milliseconds per tick can we spend processing? When above 0, we process
+	 * every tick until the budget is spent instead of processAmount every waitPeriodTicks.
+	 * The budget shrinks automatically when the server is lagging (Paper only).
+	 */
+	@Setter
+	private int tickBudgetMillis = 0;
+
+	/**
+	 * On how many async threads should we process at once? When above 0, processAmount
+	 * indexes are processed in parallel per batch with no waiting. Only use this when
+	 * {@link #onProcess(int)} is thread-safe and does not touch the world.
+	 */
+	@Setter
+	private int parallelThreads = 0;
+
+	/*
+	 * The average milliseconds we spent per tick in the time-sliced mode, to tell our own
+	 * load apart from the rest of the server when adapting the budget
+	 */
+	private double averageSliceMillis = 0;
+
 	/*
 	 * The current index where we are processing at, right now
 	 */
 	@Getter
-	private int currentIndex = 0;
+	private volatile int currentIndex = 0;
 
 	/*
 	 * Private flag to prevent dupe executions and cancel running tasks
 	 */
 	@Getter
-	private boolean processing = false;
+	private volatile boolean processing = false;
 	private boolean firstLaunch = false;
 
 	/**
@@ -63,6 +96,18 @@ public abstract class ChunkedTask {
 	 */
 	public final void startChain() {
 
+		if (!this.firstLaunch && (this.parallelThreads > 0 || this.tickBudgetMillis > 0)) {
+			this.processing = true;
+			this.firstLaunch = true;
+
+			if (this.parallelThreads > 0)
+				this.startParallel();
+			else
+				this.startTimeSliced();
+
+			return;
+		}
+
 		if (!this.firstLaunch) {
 			this.processing = true;
 
@@ -123,6 +168,167 @@ public abstract class ChunkedTask {
 		});
 	}
 
+	/*
+	 * Run one timer every tick and process until the tick budget is spent
+	 */
+	private void startTimeSliced() {
+		new SimpleRunnable() {
+
+			private long logTime = System.currentTimeMillis();
+			private int processedSinceLog = 0;
+
+			@Override
+			public void run() {
+
+				// Cancelled prematurely
+				if (!ChunkedTask.this.processing) {
+					this.cancel();
+					ChunkedTask.this.finish(false);
+
+					return;
+				}
+
+				final long start = System.nanoTime();
+				final long deadline = start + ChunkedTask.this.getTickBudgetNanos();
+				boolean finished = false;
+
+				do {
+					final int index = ChunkedTask.this.currentIndex;
+
+					if (!ChunkedTask.this.canContinue(index)) {
+						finished = true;
+
+						break;
+					}
+
+					try {
+						ChunkedTask.this.onProcess(index);
+
+					} catch (final Throwable t) {
+						Common.error(t, "Error in " + ChunkedTask.this + " processing index " + index);
+
+						this.cancel();
+						ChunkedTask.this.finish(false);
+
+						return;
+					}
+
+					ChunkedTask.this.currentIndex++;
+					this.processedSinceLog++;
+
+				} while (System.nanoTime() < deadline);
+
+				ChunkedTask.this.averageSliceMillis = ChunkedTask.this.averageSliceMillis * 0.9 + (System.nanoTime() - start) / 1_000_000D * 0.1;
+
+				if (this.processedSinceLog > 0 && (finished || System.currentTimeMillis() - this.logTime >= 1000)) {
+					final String message = ChunkedTask.this.getProcessMessage(this.logTime, this.processedSinceLog);
+
+					if (message != null)
+						Common.log(message);
+
+					this.logTime = System.currentTimeMillis();
+					this.processedSinceLog = 0;
+				}
+
+				if (finished) {
+					this.cancel();
+
+					ChunkedTask.this.finish(true);
+				}
+			}
+		}.runTaskTimer(SimplePlugin.getInstance(), 0, 1);
+	}
+
+	/*
+	 * Return the budget for this tick, leaving the server its own share of the 50ms tick
+	 */
+	private long getTickBudgetNanos() {
+		double budget = this.tickBudgetMillis;
+		final double mspt = Remain.getAverageTickTime();
+
+		if (mspt > 0) {
+			final double headroom = 50 - Math.max(0, mspt - this.averageSliceMillis);
+
+			budget = Math.min(budget, headroom * 0.8);
+		}
+
+		return (long) (Math.max(1, budget) * 1_000_000);
+	}
+
+	/*
+	 * Process batches of indexes async on a dedicated pool until we cannot continue
+	 */
+	private void startParallel() {
+		final ForkJoinPool pool = new ForkJoinPool(this.parallelThreads);
+
+		Common.runAsync(() -> {
+			boolean gracefully = false;
+
+			try {
+				while (this.processing) {
+					final long now = System.currentTimeMillis();
+					final int from = this.currentIndex;
+					int to = from;
+
+					while (to < from + this.processAmount && this.canContinue(to))
+						to++;
+
+					final int end = to;
+
+					if (end > from)
+						pool.submit(() -> IntStream.range(from, end).parallel().forEach(this::processUnchecked)).get();
+
+					this.currentIndex = end;
+
+					final String message = end > from ? this.getProcessMessage(now, end - from) : null;
+
+					if (message != null)
+						Common.log(message);
+
+					if (end < from + this.processAmount) {
+						gracefully = true;
+
+						break;
+					}
+				}
+
+			} catch (final ExecutionException ex) {
+				Common.error(ex.getCause(), "Error in " + this + " processing indexes in parallel");
+
+			} catch (final Throwable t) {
+				Common.error(t, "Error in " + this + " processing indexes in parallel");
+
+			} finally {
+				pool.shutdown();
+
+				final boolean finishedGracefully = gracefully;
+				Common.runLater(() -> this.finish(finishedGracefully));
+			}
+		});
+	}
+
+	/*
+	 * Call onProcess from a stream, rethrowing errors unchecked
+	 */
+	private void processUnchecked(final int index) {
+		try {
+			this.onProcess(index);
+
+		} catch (final Throwable t) {
+			throw new FoException(t, "Error processing index " + index);
+		}
+	}
+
+	/*
+	 * Reset our state and notify the implementation
+	 */
+	private void finish(final boolean gracefully) {
+		this.processing = false;
+		this.firstLaunch = false;
+
+		this.onFinish(gracefully);
+	}
+
 	/**
 	 * Attempts to cancel this running task, throwing error if it is not running (use {@link #isProcessing()}
 	 */
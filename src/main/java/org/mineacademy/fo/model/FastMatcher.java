@@ -33,6 +33,8 @@ import lombok.RequiredArgsConstructor;
  *
  * Rationale: The Protect plugin evaluates each slot in the inventory (27 + armor) against all rules,
  * and using the complex regex class drags performance down too much.
+ *
+ * To evaluate many matchers against the same message, compile them into a {@link FastMatcherSet}.
  */
 @Getter
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
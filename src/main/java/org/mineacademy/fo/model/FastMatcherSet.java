@@ -0,0 +1,390 @@
+package org.mineacademy.fo.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.mineacademy.fo.Valid;
+
+import lombok.Getter;
+
+/**
+ * A compiled list of {@link FastMatcher}s that finds all matching entries
+ * by scanning the message only once.
+ * <p>
+ * All literal parts of all matchers are merged into one Aho-Corasick automaton,
+ * keeping the start, end and equal modes. Matchers using "* " regex are evaluated
+ * one by one after the scan, and "*" matchers always match.
+ * <p>
+ * Use this when you evaluate hundreds of matchers against each message, such as rule files.
+ * The set is immutable and can be shared between threads.
+ */
+public final class FastMatcherSet {
+
+	/**
+	 * The matchers in the order they were given, indexes in results refer to this list
+	 */
+	@Getter
+	private final List<FastMatcher> matchers;
+
+	/**
+	 * Indexes of matchers matching everything
+	 */
+	private final BitSet matchingEverything = new BitSet();
+
+	/**
+	 * Indexes of matchers using regex, evaluated separately
+	 */
+	private final int[] regexMatchers;
+
+	/**
+	 * Sorted outgoing characters of all nodes, a node's edges start at {@link #edgeOffsets}
+	 */
+	private final char[] edgeChars;
+
+	/**
+	 * The target node of each edge in {@link #edgeChars}
+	 */
+	private final int[] edgeTargets;
+
+	/**
+	 * Where edges of each node start, with one extra element marking the end
+	 */
+	private final int[] edgeOffsets;
+
+	/**
+	 * The longest proper suffix of each node that is also a node
+	 */
+	private final int[] failures;
+
+	/**
+	 * The closest node along failures that has outputs, or -1
+	 */
+	private final int[] outputLinks;
+
+	/**
+	 * Where outputs of each node start, with one extra element marking the end
+	 */
+	private final int[] outputOffsets;
+
+	/**
+	 * The matcher index of each output
+	 */
+	private final int[] outputMatchers;
+
+	/**
+	 * The pattern length of each output
+	 */
+	private final int[] outputLengths;
+
+	/**
+	 * The {@link Matcher} mode of each output
+	 */
+	private final int[] outputModes;
+
+	/*
+	 * Build the automaton from the given matchers
+	 */
+	private FastMatcherSet(List<FastMatcher> matchers) {
+		this.matchers = Collections.unmodifiableList(new ArrayList<>(matchers));
+
+		final List<Map<Character, Integer>> children = new ArrayList<>();
+		final List<List<int[]>> outputs = new ArrayList<>();
+		final List<Integer> regexMatchers = new ArrayList<>();
+
+		children.add(new TreeMap<>());
+		outputs.add(new ArrayList<>());
+
+		for (int index = 0; index < matchers.size(); index++) {
+			final FastMatcher fastMatcher = matchers.get(index);
+
+			if (fastMatcher.getMatchers() == null) {
+				this.matchingEverything.set(index);
+
+				continue;
+			}
+
+			if (fastMatcher.getPattern() != null) {
+				regexMatchers.add(index);
+
+				continue;
+			}
+
+			for (final Matcher matcher : fastMatcher.getMatchers()) {
+				final String pattern = matcher.getPattern();
+				Valid.checkNotEmpty(pattern, "Matcher pattern cannot be empty! Use * instead to match everything in " + fastMatcher);
+
+				int node = 0;
+
+				for (int i = 0; i < pattern.length(); i++) {
+					final Map<Character, Integer> edges = children.get(node);
+					Integer next = edges.get(pattern.charAt(i));
+
+					if (next == null) {
+						next = children.size();
+
+						edges.put(pattern.charAt(i), next);
+						children.add(new TreeMap<>());
+						outputs.add(new ArrayList<>());
+					}
+
+					node = next;
+				}
+
+				outputs.get(node).add(new int[] { index, pattern.length(), matcher.getMode() });
+			}
+		}
+
+		this.regexMatchers = new int[regexMatchers.size()];
+
+		for (int i = 0; i < this.regexMatchers.length; i++)
+			this.regexMatchers[i] = regexMatchers.get(i);
+
+		// Flatten the trie
+		final int nodeCount = children.size();
+		int edgeCount = 0;
+		int outputCount = 0;
+
+		for (int node = 0; node < nodeCount; node++) {
+			edgeCount += children.get(node).size();
+			outputCount += outputs.get(node).size();
+		}
+
+		this.edgeChars = new char[edgeCount];
+		this.edgeTargets = new int[edgeCount];
+		this.edgeOffsets = new int[nodeCount + 1];
+		this.outputMatchers = new int[outputCount];
+		this.outputLengths = new int[outputCount];
+		this.outputModes = new int[outputCount];
+		this.outputOffsets = new int[nodeCount + 1];
+
+		for (int node = 0, edge = 0, output = 0; node < nodeCount; node++) {
+			this.edgeOffsets[node] = edge;
+			this.outputOffsets[node] = output;
+
+			for (final Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+				this.edgeChars[edge] = entry.getKey();
+				this.edgeTargets[edge++] = entry.getValue();
+			}
+
+			for (final int[] entry : outputs.get(node)) {
+				this.outputMatchers[output] = entry[0];
+				this.outputLengths[output] = entry[1];
+				this.outputModes[output++] = entry[2];
+			}
+		}
+
+		this.edgeOffsets[nodeCount] = edgeCount;
+		this.outputOffsets[nodeCount] = outputCount;
+
+		// Link failures breadth first so parents are always resolved before children
+		this.failures = new int[nodeCount];
+		this.outputLinks = new int[nodeCount];
+		this.outputLinks[0] = -1;
+
+		final Deque<Integer> queue = new ArrayDeque<>();
+		queue.add(0);
+
+		while (!queue.isEmpty()) {
+			final int node = queue.poll();
+
+			for (int edge = this.edgeOffsets[node]; edge < this.edgeOffsets[node + 1]; edge++) {
+				final int child = this.edgeTargets[edge];
+				int failure = 0;
+
+				if (node != 0)
+					for (int state = this.failures[node];; state = this.failures[state]) {
+						final int next = this.findChild(state, this.edgeChars[edge]);
+
+						if (next != -1) {
+							failure = next;
+
+							break;
+						}
+
+						if (state == 0)
+							break;
+					}
+
+				this.failures[child] = failure;
+				this.outputLinks[child] = this.hasOutputs(failure) ? failure : this.outputLinks[failure];
+
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Return true if any matcher matches the given message
+	 *
+	 * @param message
+	 * @return
+	 */
+	public boolean find(String message) {
+		return !this.scan(message, true).isEmpty();
+	}
+
+	/**
+	 * Return the index of the first matcher in the list that matches the given message, or -1
+	 *
+	 * @param message
+	 * @return
+	 */
+	public int findFirst(String message) {
+		return this.scan(message, false).nextSetBit(0);
+	}
+
+	/**
+	 * Return indexes of all matchers that match the given message, in the order
+	 * of {@link #getMatchers()}
+	 *
+	 * @param message
+	 * @return
+	 */
+	public BitSet findAll(String message) {
+		return this.scan(message, false);
+	}
+
+	/**
+	 * Return all matchers that match the given message
+	 *
+	 * @param message
+	 * @return
+	 */
+	public List<FastMatcher> findAllMatchers(String message) {
+		final BitSet found = this.scan(message, false);
+		final List<FastMatcher> result = new ArrayList<>(found.cardinality());
+
+		for (int index = found.nextSetBit(0); index != -1; index = found.nextSetBit(index + 1))
+			result.add(this.matchers.get(index));
+
+		return result;
+	}
+
+	/*
+	 * Scan the message once and collect matching indexes, optionally stopping at the first one
+	 */
+	private BitSet scan(String message, boolean stopAtFirst) {
+		final BitSet found = (BitSet) this.matchingEverything.clone();
+
+		// Like FastMatcher, nothing but * matches an empty message
+		if (message.isEmpty() || stopAtFirst && !found.isEmpty())
+			return found;
+
+		final int length = message.length();
+		int state = 0;
+
+		for (int position = 0; position < length; position++) {
+			final char letter = message.charAt(position);
+			int next;
+
+			while ((next = this.findChild(state, letter)) == -1 && state != 0)
+				state = this.failures[state];
+
+			state = next == -1 ? 0 : next;
+
+			for (int node = this.hasOutputs(state) ? state : this.outputLinks[state]; node != -1; node = this.outputLinks[node])
+				for (int output = this.outputOffsets[node]; output < this.outputOffsets[node + 1]; output++) {
+					if (!this.isAnchored(this.outputModes[output], position - this.outputLengths[output] + 1, position, length))
+						continue;
+
+					found.set(this.outputMatchers[output]);
+
+					if (stopAtFirst)
+						return found;
+				}
+		}
+
+		for (final int index : this.regexMatchers)
+			if (!found.get(index) && this.matchers.get(index).find(message)) {
+				found.set(index);
+
+				if (stopAtFirst)
+					return found;
+			}
+
+		return found;
+	}
+
+	/*
+	 * Return true if the occurrence between the given positions satisfies the matcher mode,
+	 * see Matcher#find(String)
+	 */
+	private boolean isAnchored(int mode, int start, int end, int length) {
+		if (mode == 1)
+			return start == 0;
+
+		else if (mode == 2)
+			return end == length - 1;
+
+		else if (mode == 3)
+			return start == 0 && end == length - 1;
+
+		return true;
+	}
+
+	/*
+	 * Return the child of the node for the given letter, or -1
+	 */
+	private int findChild(int node, char letter) {
+		int low = this.edgeOffsets[node];
+		int high = this.edgeOffsets[node + 1] - 1;
+
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final char middleChar = this.edgeChars[middle];
+
+			if (middleChar < letter)
+				low = middle + 1;
+
+			else if (middleChar > letter)
+				high = middle - 1;
+
+			else
+				return this.edgeTargets[middle];
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Return true if any pattern ends at the given node
+	 */
+	private boolean hasOutputs(int node) {
+		return this.outputOffsets[node] != this.outputOffsets[node + 1];
+	}
+
+	@Override
+	public String toString() {
+		return "FastMatcherSet{matchers=" + this.matchers.size() + ", nodes=" + this.failures.length + "}";
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Compile a set from the given matchers
+	 *
+	 * @param matchers
+	 * @return
+	 */
+	public static FastMatcherSet of(List<FastMatcher> matchers) {
+		return new FastMatcherSet(matchers);
+	}
+
+	/**
+	 * Compile a set from the given patterns, see {@link FastMatcher#compile(String)}
+	 *
+	 * @param patterns
+	 * @return
+	 */
+	public static FastMatcherSet compile(List<String> patterns) {
+		return new FastMatcherSet(FastMatcher.compileFromList(patterns));
+	}
+}
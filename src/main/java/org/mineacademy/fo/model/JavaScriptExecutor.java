@@ -2,17 +2,25 @@ package org.mineacademy.fo.model;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
@@ -31,6 +39,9 @@ import lombok.NonNull;
  * <p>
  * The code is based off JavaScript with new Java methods, see:
  * https://winterbe.com/posts/2014/04/05/java8-nashorn-tutorial/
+ * <p>
+ * Scripts are compiled once and cached by their source. Each run borrows its own
+ * script context from a pool so that scripts can be evaluated from several threads at once.
  */
 public final class JavaScriptExecutor {
 
@@ -39,6 +50,43 @@ public final class JavaScriptExecutor {
 	 */
 	private static final ScriptEngine engine;
 
+	/**
+	 * Matches player.hasPermission("...") calls we evaluate ourselves for null senders
+	 */
+	private static final Pattern PERMISSION_PATTERN = Pattern.compile("player\\.hasPermission\\(\"([^\"]+)\"\\)");
+
+	/**
+	 * How many compiled scripts to keep before evicting the least recently used
+	 */
+	private static final int COMPILED_CACHE_SIZE = 1000;
+
+	/**
+	 * How many idle script contexts to keep for reuse
+	 */
+	private static final int CONTEXT_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+	/**
+	 * Compiled scripts by their source, in access order
+	 */
+	private static final Map<String, CompiledScript> compiledCache = new LinkedHashMap<String, CompiledScript>(256, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, CompiledScript> eldest) {
+			return this.size() > COMPILED_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Idle script contexts, each with its own global scope
+	 */
+	private static final Queue<ScriptContext> contextPool = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The amount of contexts in the pool, since the queue size is not constant time
+	 */
+	private static final AtomicInteger contextPoolCount = new AtomicInteger();
+
 	// Load the engine
 	static {
 		Thread.currentThread().setContextClassLoader(SimplePlugin.class.getClassLoader());
@@ -130,8 +178,7 @@ public final class JavaScriptExecutor {
 			replacements = new HashMap<>();
 
 		// Workaround hasPermission for null senders (i.e. Discord)
-		final Pattern pattern = Pattern.compile("player\\.hasPermission\\(\"([^\"]+)\"\\)");
-		final Matcher matcher = pattern.matcher(javascript);
+		final Matcher matcher = PERMISSION_PATTERN.matcher(javascript);
 
 		while (matcher.find()) {
 			final String permission = matcher.group(1);
@@ -198,29 +245,33 @@ public final class JavaScriptExecutor {
 	 * @throws FoScriptException
 	 */
 	public static Object run(@NonNull String javascript, Map<String, Object> replacements) throws FoScriptException {
-		synchronized (SimplePlugin.getInstance()) {
-			if (replacements == null)
-				replacements = new HashMap<>();
+		if (replacements == null)
+			replacements = new HashMap<>();
 
-			// Mohist is unsupported
-			if (Bukkit.getName().equals("Mohist"))
-				return null;
+		// Mohist is unsupported
+		if (Bukkit.getName().equals("Mohist"))
+			return null;
 
-			// Speed up
-			if (javascript.equals("true") || javascript.equals("!false") || javascript.equals("yes"))
-				return true;
+		// Speed up
+		if (javascript.equals("true") || javascript.equals("!false") || javascript.equals("yes"))
+			return true;
 
-			if (javascript.equals("false") || javascript.equals("!true") || javascript.equals("no"))
-				return false;
+		if (javascript.equals("false") || javascript.equals("!true") || javascript.equals("no"))
+			return false;
 
-			if (engine == null) {
-				Common.warning("Not running script because JavaScript library is missing (try installing mineacademy.org/nashorn). Script: " + javascript);
+		if (engine == null) {
+			Common.warning("Not running script because JavaScript library is missing (try installing mineacademy.org/nashorn). Script: " + javascript);
 
-				return null;
-			}
+			return null;
+		}
+
+		final ScriptContext context = borrowContext();
 
-			// CLear past variables
-			engine.getBindings(ScriptContext.ENGINE_SCOPE).clear();
+		try {
+			final Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+
+			// Clear past variables
+			bindings.clear();
 
 			// Put new variables
 			for (final Map.Entry<String, Object> replacement : replacements.entrySet()) {
@@ -230,61 +281,115 @@ public final class JavaScriptExecutor {
 				final Object value = replacement.getValue();
 				Valid.checkNotNull(value, "Value can't be null in javascript variables for key " + key + ": " + replacements);
 
-				engine.put(key, value);
+				bindings.put(key, value);
 			}
 
-			try {
-				final Object result = engine.eval(javascript);
+			final CompiledScript compiled = compile(javascript);
+			final Object result = compiled != null ? compiled.eval(context) : engine.eval(javascript, context);
+
+			if (result instanceof String) {
+				String resultString = Common.stripColors((String) result).trim().toLowerCase();
+
+				if (resultString.startsWith("\"") || resultString.startsWith("'"))
+					resultString = resultString.substring(1);
+
+				if (resultString.endsWith("\"") || resultString.endsWith("'"))
+					resultString = resultString.substring(0, resultString.length() - 1);
+
+				if (resultString.equals("true"))
+					return true;
+
+				else if (resultString.equals("false"))
+					return false;
+			}
 
-				if (result instanceof String) {
-					String resultString = Common.stripColors((String) result).trim().toLowerCase();
+			return result;
 
-					if (resultString.startsWith("\"") || resultString.startsWith("'"))
-						resultString = resultString.substring(1);
+		} catch (ClassCastException | ScriptException ex) {
 
-					if (resultString.endsWith("\"") || resultString.endsWith("'"))
-						resultString = resultString.substring(0, resultString.length() - 1);
+			// Special support for throwing exceptions in the JS code so that users
+			// can send messages to player directly if upstream supports that
+			final String cause = ex.getCause() != null ? ex.getCause().toString() : "";
 
-					if (resultString.equals("true"))
-						return true;
+			if (ex.getCause() != null && cause.contains("event handled")) {
+				final String[] errorMessageSplit = cause.contains("event handled: ") ? cause.split("event handled\\: ") : new String[0];
+				final Object sender = replacements.get("player");
 
-					else if (resultString.equals("false"))
-						return false;
-				}
+				if (errorMessageSplit.length == 2 && sender instanceof CommandSender)
+					Common.tellNoPrefix((CommandSender) sender, errorMessageSplit[1]);
 
-				return result;
+				throw new EventHandledException(true);
+			}
 
-			} catch (ClassCastException | ScriptException ex) {
+			final String message = ex.toString();
+			final List<String> errorMessage = Common.newList("Error parsing JavaScript!");
 
-				// Special support for throwing exceptions in the JS code so that users
-				// can send messages to player directly if upstream supports that
-				final String cause = ex.getCause() != null ? ex.getCause().toString() : "";
+			if (message.contains("Cannot cast org.openjdk.nashorn.internal.runtime.Undefined to org.bukkit.Statistic"))
+				errorMessage.add("Your code uses invalid Statistic enum for your MC version. Do NOT report this, check Bukkit javadocs.");
 
-				if (ex.getCause() != null && cause.contains("event handled")) {
-					final String[] errorMessageSplit = cause.contains("event handled: ") ? cause.split("event handled\\: ") : new String[0];
-					final Object sender = replacements.get("player");
+			if (message.contains("ReferenceError:") && message.contains("is not defined"))
+				errorMessage.add("Invalid or unparsed variable!");
 
-					if (errorMessageSplit.length == 2 && sender instanceof CommandSender)
-						Common.tellNoPrefix((CommandSender) sender, errorMessageSplit[1]);
+			if (ex instanceof ScriptException)
+				errorMessage.add("Line: " + ((ScriptException) ex).getLineNumber() + ". Error: " + ex.getMessage());
+			else
+				errorMessage.add("Error: " + ex.getMessage());
+			throw new FoScriptException(String.join(" ", errorMessage), javascript, ex instanceof ScriptException ? ((ScriptException) ex).getLineNumber() : -1, ex);
 
-					throw new EventHandledException(true);
-				}
+		} finally {
+			returnContext(context);
+		}
+	}
 
-				final String message = ex.toString();
-				final List<String> errorMessage = Common.newList("Error parsing JavaScript!");
+	/*
+	 * Return the cached compiled script for the source, compiling it on first use,
+	 * or null if the engine cannot compile
+	 */
+	@Nullable
+	private static CompiledScript compile(final String javascript) throws ScriptException {
+		if (!(engine instanceof Compilable))
+			return null;
 
-				if (message.contains("Cannot cast org.openjdk.nashorn.internal.runtime.Undefined to org.bukkit.Statistic"))
-					errorMessage.add("Your code uses invalid Statistic enum for your MC version. Do NOT report this, check Bukkit javadocs.");
+		synchronized (compiledCache) {
+			CompiledScript compiled = compiledCache.get(javascript);
 
-				if (message.contains("ReferenceError:") && message.contains("is not defined"))
-					errorMessage.add("Invalid or unparsed variable!");
+			if (compiled == null) {
+				compiled = ((Compilable) engine).compile(javascript);
 
-				if (ex instanceof ScriptException)
-					errorMessage.add("Line: " + ((ScriptException) ex).getLineNumber() + ". Error: " + ex.getMessage());
-				else
-					errorMessage.add("Error: " + ex.getMessage());
-				throw new FoScriptException(String.join(" ", errorMessage), javascript, ex instanceof ScriptException ? ((ScriptException) ex).getLineNumber() : -1, ex);
+				compiledCache.put(javascript, compiled);
 			}
+
+			return compiled;
 		}
 	}
+
+	/*
+	 * Take an idle context or create a new one with a fresh global scope
+	 */
+	private static ScriptContext borrowContext() {
+		final ScriptContext pooled = contextPool.poll();
+
+		if (pooled != null) {
+			contextPoolCount.decrementAndGet();
+
+			return pooled;
+		}
+
+		final ScriptContext context = new SimpleScriptContext();
+
+		context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+		context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+
+		return context;
+	}
+
+	/*
+	 * Put the context back for reuse unless the pool is full
+	 */
+	private static void returnContext(final ScriptContext context) {
+		if (contextPoolCount.incrementAndGet() <= CONTEXT_POOL_SIZE)
+			contextPool.offer(context);
+		else
+			contextPoolCount.decrementAndGet();
+	}
 }
\ No newline at end of file
@@ -1,12 +1,20 @@
 package org.mineacademy.fo.model;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,6 +26,7 @@ import org.mineacademy.fo.MinecraftVersion;
 import org.mineacademy.fo.MinecraftVersion.V;
 import org.mineacademy.fo.ReflectionUtil;
 import org.mineacademy.fo.ReflectionUtil.ReflectionException;
+import org.mineacademy.fo.collection.expiringmap.NamedThreadFactory;
 import org.mineacademy.fo.event.RegionScanCompleteEvent;
 import org.mineacademy.fo.plugin.SimplePlugin;
 import org.mineacademy.fo.remain.Remain;
@@ -49,7 +58,7 @@ public abstract class OfflineRegionScanner {
 	/**
 	 * Changing flag: How many files processed out of total?
 	 */
-	private int processedFilesCount = 0;
+	private final AtomicInteger processedFilesCount = new AtomicInteger();
 
 	/**
 	 * Changing flag: The total amount of region files to scan
@@ -76,6 +85,31 @@ public abstract class OfflineRegionScanner {
 	@Setter
 	private boolean fastMode = false;
 
+	/**
+	 * In fast mode, also read and decompress each chunk's NBT data from the disk
+	 * and pass it to {@link #onChunkScanFast(int, int, DataInputStream)}
+	 */
+	@Setter
+	private boolean readChunkData = false;
+
+	/**
+	 * How many worker threads read region files at the same time. 0 means we process
+	 * one file per tick on the main thread.
+	 *
+	 * When above 0, {@link #onChunkScanFast(int, int)} is called from worker threads and
+	 * must be thread safe, while chunks for {@link #onChunkScan(Chunk)} are loaded on the
+	 * main thread within {@link #chunkLoadBudgetMillis} each tick.
+	 */
+	@Setter
+	private int parallelThreads = 0;
+
+	/**
+	 * How many milliseconds per tick we may spend loading chunks on the main thread
+	 * when {@link #parallelThreads} is above 0
+	 */
+	@Setter
+	private int chunkLoadBudgetMillis = 20;
+
 	/**
 	 * Starts the scan for the given world (warning: this operation is blocking
 	 * and takes long time, see {@link #getEstimatedWaitTimeSec(World)})
@@ -104,9 +138,6 @@ public abstract class OfflineRegionScanner {
 				"Scanning regions in " + world.getName(),
 				Common.consoleLine());
 
-		// Disable watch dog
-		this.disableWatchdog();
-
 		// Collect files
 		final File[] files = getRegionFiles(world);
 
@@ -122,6 +153,15 @@ public abstract class OfflineRegionScanner {
 		this.totalFilesCount = files.length;
 		this.world = world;
 
+		if (this.parallelThreads > 0) {
+			this.scanParallel(files);
+
+			return;
+		}
+
+		// Disable watch dog
+		this.disableWatchdog();
+
 		// Start the schedule
 		this.schedule0(queue);
 	}
@@ -154,14 +194,7 @@ public abstract class OfflineRegionScanner {
 
 				// Queue finished
 				if (file == null) {
-					Common.log(
-							Common.consoleLine(),
-							"Region scanner finished. World saved.",
-							Common.consoleLine());
-
-					Common.callEvent(new RegionScanCompleteEvent(OfflineRegionScanner.this.world));
-
-					OfflineRegionScanner.this.onScanFinished();
+					OfflineRegionScanner.this.finishScan();
 					this.cancel();
 
 					return;
@@ -184,7 +217,7 @@ public abstract class OfflineRegionScanner {
 		final int regionX = Integer.parseInt(matcher.group(1));
 		final int regionZ = Integer.parseInt(matcher.group(2));
 
-		System.out.print("[" + Math.round((double) this.processedFilesCount++ / (double) this.totalFilesCount * 100) + "%] Processing " + file);
+		System.out.print("[" + Math.round((double) this.processedFilesCount.getAndIncrement() / (double) this.totalFilesCount * 100) + "%] Processing " + file);
 
 		// Calculate time, collect memory and increase pauses in between if running out of memory
 		if (System.currentTimeMillis() - this.lastTick > 4000) {
@@ -205,6 +238,19 @@ public abstract class OfflineRegionScanner {
 
 		System.out.println();
 
+		// Fast mode reads the file directly and does not need the server
+		if (this.fastMode) {
+			try (RegionFileReader reader = RegionFileReader.open(file)) {
+				this.scanFileFast(reader);
+
+			} catch (final Throwable t) {
+				Common.error(t, "Failed to read region file " + file + ", skipping");
+			}
+
+			this.schedule0(queue);
+			return;
+		}
+
 		// Load the file
 		final Object region = RegionAccessor.getRegionFile(this.world.getName(), file);
 
@@ -215,22 +261,18 @@ public abstract class OfflineRegionScanner {
 				final int chunkX = x + (regionX << 5);
 				final int chunkZ = z + (regionZ << 5);
 
-				if (RegionAccessor.isChunkSaved(region, x, z))
-					if (this.fastMode)
-						this.onChunkScanFast(chunkX, chunkZ);
-
-					else {
-						final Chunk chunk = this.world.getChunkAt(chunkX, chunkZ);
+				if (RegionAccessor.isChunkSaved(region, x, z)) {
+					final Chunk chunk = this.world.getChunkAt(chunkX, chunkZ);
 
-						try {
-							this.onChunkScan(chunk);
+					try {
+						this.onChunkScan(chunk);
 
-						} catch (final Throwable t) {
-							Common.error(t, "Failed to scan chunk " + chunk + ", aborting for safety");
+					} catch (final Throwable t) {
+						Common.error(t, "Failed to scan chunk " + chunk + ", aborting for safety");
 
-							break scan;
-						}
+						break scan;
 					}
+				}
 			}
 
 		// Save
@@ -242,12 +284,132 @@ public abstract class OfflineRegionScanner {
 			Remain.sneaky(t);
 		}
 
-		if (this.fastMode)
-			this.schedule0(queue);
+		Common.runLater(WAIT_TIME_BETWEEN_SCAN_SECONDS, () -> this.schedule0(queue));
+	}
 
-		else
-			Common.runLater(WAIT_TIME_BETWEEN_SCAN_SECONDS, () -> this.schedule0(queue));
+	/*
+	 * Call the fast scan method for each saved chunk in the region, with its data if requested
+	 */
+	private void scanFileFast(RegionFileReader reader) throws IOException {
+		for (final int index : reader.getSavedChunks()) {
+			final int localX = index & 31;
+			final int localZ = index >> 5;
+			final int chunkX = localX + (reader.getRegionX() << 5);
+			final int chunkZ = localZ + (reader.getRegionZ() << 5);
+
+			if (this.readChunkData)
+				try (DataInputStream data = reader.readChunk(localX, localZ)) {
+					this.onChunkScanFast(chunkX, chunkZ, data);
+				}
 
+			else
+				this.onChunkScanFast(chunkX, chunkZ);
+		}
+	}
+
+	/*
+	 * Read region files on worker threads and only load chunks on the main thread
+	 */
+	private void scanParallel(File[] files) {
+		final ExecutorService executor = Executors.newFixedThreadPool(this.parallelThreads, new NamedThreadFactory("Region-Scanner-%s"));
+		final BlockingQueue<Long> chunksToLoad = new ArrayBlockingQueue<>(8192);
+		final AtomicInteger remainingFiles = new AtomicInteger(files.length);
+
+		for (final File file : files)
+			executor.execute(() -> {
+				try {
+					this.scanFileParallel(file, chunksToLoad);
+
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+
+				} catch (final Throwable t) {
+					Common.error(t, "Failed to scan region file " + file + ", skipping");
+
+				} finally {
+					remainingFiles.decrementAndGet();
+				}
+			});
+
+		new SimpleRunnable() {
+
+			@Override
+			public void run() {
+				final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(OfflineRegionScanner.this.chunkLoadBudgetMillis);
+				final World world = OfflineRegionScanner.this.world;
+				Long packed;
+
+				while (System.nanoTime() < deadline && (packed = chunksToLoad.poll()) != null) {
+					final int chunkX = (int) (packed >> 32);
+					final int chunkZ = (int) packed.longValue();
+					final boolean wasLoaded = world.isChunkLoaded(chunkX, chunkZ);
+					final Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+
+					try {
+						OfflineRegionScanner.this.onChunkScan(chunk);
+
+					} catch (final Throwable t) {
+						Common.error(t, "Failed to scan chunk " + chunk + ", aborting scan for safety");
+
+						executor.shutdownNow();
+						this.cancel();
+
+						return;
+					}
+
+					if (!wasLoaded)
+						world.unloadChunkRequest(chunkX, chunkZ);
+				}
+
+				if (remainingFiles.get() == 0 && chunksToLoad.isEmpty()) {
+					executor.shutdown();
+					this.cancel();
+
+					OfflineRegionScanner.this.finishScan();
+				}
+			}
+		}.runTaskTimer(SimplePlugin.getInstance(), 1, 1);
+	}
+
+	/*
+	 * Find saved chunks in the region file from the worker thread
+	 */
+	private void scanFileParallel(File file, BlockingQueue<Long> chunksToLoad) throws IOException, InterruptedException {
+		if (!FILE_PATTERN.matcher(file.getName()).matches())
+			return;
+
+		try (RegionFileReader reader = RegionFileReader.open(file)) {
+			if (this.fastMode)
+				this.scanFileFast(reader);
+
+			else
+				for (final int index : reader.getSavedChunks()) {
+					final int chunkX = (index & 31) + (reader.getRegionX() << 5);
+					final int chunkZ = (index >> 5) + (reader.getRegionZ() << 5);
+
+					chunksToLoad.put((long) chunkX << 32 | chunkZ & 0xFFFFFFFFL);
+				}
+		}
+
+		final int processed = this.processedFilesCount.incrementAndGet();
+		final long percent = Math.round((double) processed / this.totalFilesCount * 100);
+
+		if (percent != Math.round((double) (processed - 1) / this.totalFilesCount * 100))
+			Common.log("[" + percent + "%] Processed " + processed + "/" + this.totalFilesCount + " region files");
+	}
+
+	/*
+	 * Log and call the finish event and method
+	 */
+	private void finishScan() {
+		Common.log(
+				Common.consoleLine(),
+				"Region scanner finished. World saved.",
+				Common.consoleLine());
+
+		Common.callEvent(new RegionScanCompleteEvent(this.world));
+
+		this.onScanFinished();
 	}
 
 	/**
@@ -262,6 +424,8 @@ public abstract class OfflineRegionScanner {
 	/**
 	 * Called when a chunk is being scanned and loaded
 	 * ONLY CALLED WHEN FASTMODE IS ENABLED
+	 * <p>
+	 * When {@link #setParallelThreads(int)} is above 0 this is called from worker threads.
 	 *
 	 * @param chunkX
 	 * @param chunkZ
@@ -269,6 +433,21 @@ public abstract class OfflineRegionScanner {
 	protected void onChunkScanFast(int chunkX, int chunkZ) {
 	}
 
+	/**
+	 * Called instead of {@link #onChunkScanFast(int, int)} when {@link #setReadChunkData(boolean)} is true,
+	 * with the decompressed chunk NBT read straight from the region file. The stream is closed after this call.
+	 * ONLY CALLED WHEN FASTMODE IS ENABLED
+	 * <p>
+	 * When {@link #setParallelThreads(int)} is above 0 this is called from worker threads.
+	 *
+	 * @param chunkX
+	 * @param chunkZ
+	 * @param nbt the chunk data, or null if it uses a compression we cannot read such as LZ4
+	 */
+	protected void onChunkScanFast(int chunkX, int chunkZ, DataInputStream nbt) {
+		this.onChunkScanFast(chunkX, chunkZ);
+	}
+
 	/**
 	 * Called when the scan is finished, after {@link RegionScanCompleteEvent}
 	 */
@@ -291,6 +470,18 @@ public abstract class OfflineRegionScanner {
 		return regionDir == null ? null : regionDir.listFiles((FilenameFilter) (dir, name) -> name.toLowerCase().endsWith(".mca"));
 	}
 
+	/**
+	 * Return the indexes (x + z * 32) of chunks saved in the given region file
+	 * by reading its location table, without loading the file through the server
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static int[] readSavedChunks(File file) throws IOException {
+		return RegionFileReader.open(file).getSavedChunks();
+	}
+
 	/**
 	 * Return the region directory for the given world
 	 *
@@ -328,6 +519,7 @@ public abstract class OfflineRegionScanner {
 class RegionAccessor {
 
 	private static Constructor<?> regionFileConstructor;
+	private static Constructor<?> chunkCoordinatesConstructor;
 	private static Method isChunkSaved;
 
 	private static final boolean atleast1_13, atleast1_14, atleast1_15, atleast1_16, atleast1_18;
@@ -349,7 +541,10 @@ class RegionAccessor {
 							: atleast1_15 ? regionFileClass.getConstructor(File.class, File.class)
 									: regionFileClass.getConstructor(File.class);
 
-			isChunkSaved = atleast1_14 ? regionFileClass.getMethod("b", ReflectionUtil.getNMSClass("ChunkCoordIntPair", "net.minecraft.world.level.ChunkCoordIntPair"))
+			if (atleast1_14)
+				chunkCoordinatesConstructor = ReflectionUtil.getNMSClass("ChunkCoordIntPair", "net.minecraft.world.level.ChunkCoordIntPair").getConstructor(int.class, int.class);
+
+			isChunkSaved = atleast1_14 ? regionFileClass.getMethod("b", chunkCoordinatesConstructor.getDeclaringClass())
 					: regionFileClass.getMethod(atleast1_13 ? "b" : "c", int.class, int.class);
 
 		} catch (final ReflectiveOperationException ex) {
@@ -373,12 +568,8 @@ class RegionAccessor {
 
 	static boolean isChunkSaved(Object region, int x, int z) {
 		try {
-			if (MinecraftVersion.newerThan(V.v1_13)) {
-				final Object chunkCoordinates = ReflectionUtil.getNMSClass("ChunkCoordIntPair", "net.minecraft.world.level.ChunkCoordIntPair")
-						.getConstructor(int.class, int.class).newInstance(x, z);
-
-				return (boolean) isChunkSaved.invoke(region, chunkCoordinates);
-			}
+			if (atleast1_14)
+				return (boolean) isChunkSaved.invoke(region, chunkCoordinatesConstructor.newInstance(x, z));
 
 			return (boolean) isChunkSaved.invoke(region, x, z);
 
@@ -0,0 +1,272 @@
+package org.mineacademy.fo.model;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nullable;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads Anvil (.mca) region files directly from the disk without using the server,
+ * so it works the same on every Minecraft version and from any thread.
+ * <p>
+ * Only the 4 KiB location table is read when opening, chunk presence is answered from it.
+ * Chunk data is read on demand, the file stays open from the first {@link #readChunk(int, int)}
+ * until you {@link #close()} the reader.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RegionFileReader implements Closeable {
+
+	/**
+	 * The region file name pattern, r.x.z.mca
+	 */
+	private static final Pattern FILE_PATTERN = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+	/**
+	 * The size of one sector, the location table takes exactly one
+	 */
+	private static final int SECTOR_BYTES = 4096;
+
+	/**
+	 * The file we read
+	 */
+	@Getter
+	private final File file;
+
+	/**
+	 * The region x coordinate from the file name
+	 */
+	@Getter
+	private final int regionX;
+
+	/**
+	 * The region z coordinate from the file name
+	 */
+	@Getter
+	private final int regionZ;
+
+	/**
+	 * The location table, empty if the file is shorter than one sector
+	 */
+	private final ByteBuffer header;
+
+	/**
+	 * The channel we read chunk data from, opened on the first chunk read
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Return true if the chunk at the given coordinates within this region (0-31) is saved
+	 *
+	 * @param localX
+	 * @param localZ
+	 * @return
+	 */
+	public boolean hasChunk(int localX, int localZ) {
+		return this.getLocation(localX, localZ) != 0;
+	}
+
+	/**
+	 * Return the indexes (x + z * 32) of all chunks saved in this region
+	 *
+	 * @return
+	 */
+	public int[] getSavedChunks() {
+		if (this.header.limit() < SECTOR_BYTES)
+			return new int[0];
+
+		final int[] saved = new int[1024];
+		int count = 0;
+
+		for (int index = 0; index < 1024; index++)
+			if (this.header.getInt(index << 2) != 0)
+				saved[count++] = index;
+
+		return Arrays.copyOf(saved, count);
+	}
+
+	/**
+	 * Return the decompressed NBT data of the chunk at the given coordinates within
+	 * this region (0-31), or null if the chunk is not saved or uses a compression
+	 * we cannot read (LZ4 or custom)
+	 *
+	 * @param localX
+	 * @param localZ
+	 * @return
+	 * @throws IOException
+	 */
+	@Nullable
+	public DataInputStream readChunk(int localX, int localZ) throws IOException {
+		final int location = this.getLocation(localX, localZ);
+
+		if (location == 0)
+			return null;
+
+		final long offset = (long) (location >>> 8) * SECTOR_BYTES;
+		final ByteBuffer buffer = this.read(offset, (location & 0xFF) * SECTOR_BYTES);
+
+		if (buffer.limit() < 5)
+			throw new IOException("Chunk " + localX + " " + localZ + " points outside of " + this.file);
+
+		final int length = buffer.getInt(0);
+		final byte compression = buffer.get(4);
+
+		// Chunk stored in its own file since it was too large
+		if ((compression & 0x80) != 0) {
+			final int chunkX = (this.regionX << 5) + localX;
+			final int chunkZ = (this.regionZ << 5) + localZ;
+
+			return decompress(compression & 0x7F, new BufferedInputStream(new FileInputStream(new File(this.file.getParentFile(), "c." + chunkX + "." + chunkZ + ".mcc"))));
+		}
+
+		if (length < 1 || 4 + length > buffer.limit())
+			throw new IOException("Chunk " + localX + " " + localZ + " has invalid length " + length + " in " + this.file);
+
+		buffer.position(5);
+		buffer.limit(4 + length);
+
+		return decompress(compression, new ByteBufferInputStream(buffer));
+	}
+
+	/**
+	 * Close the file if chunk data was read from it
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+
+			this.channel = null;
+		}
+	}
+
+	/*
+	 * Read the sectors of one chunk at the given position, the buffer is shorter if the file ends sooner
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		if (this.channel == null)
+			this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+
+		return readFully(this.channel, position, length);
+	}
+
+	/*
+	 * Return the location table entry, 3 bytes sector offset and 1 byte sector count
+	 */
+	private int getLocation(int localX, int localZ) {
+		if (this.header.limit() < SECTOR_BYTES)
+			return 0;
+
+		return this.header.getInt(((localX & 31) + (localZ & 31) * 32) << 2);
+	}
+
+	/*
+	 * Wrap the raw stream per the compression id, closing it if unsupported
+	 */
+	@Nullable
+	private static DataInputStream decompress(int compression, InputStream raw) throws IOException {
+		switch (compression) {
+			case 1:
+				return new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw)));
+			case 2:
+				return new DataInputStream(new BufferedInputStream(new InflaterInputStream(raw)));
+			case 3:
+				return new DataInputStream(raw);
+			default:
+				raw.close();
+
+				return null;
+		}
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Read the location table of the given region file. The file must be named r.x.z.mca
+	 * <p>
+	 * The file is closed right away, you only need to close the reader after reading chunk data.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static RegionFileReader open(@NonNull File file) throws IOException {
+		final Matcher matcher = FILE_PATTERN.matcher(file.getName());
+
+		if (!matcher.matches())
+			throw new IOException("Not a region file: " + file);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer header = readFully(channel, 0, SECTOR_BYTES);
+
+			return new RegionFileReader(file, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), header);
+		}
+	}
+
+	/*
+	 * Read up to the given amount of bytes at the given position without moving the channel
+	 */
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position + buffer.position());
+
+			if (read == -1)
+				break;
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/*
+	 * Reads a byte buffer without copying it
+	 */
+	@RequiredArgsConstructor
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		@Override
+		public int read() {
+			return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!this.buffer.hasRemaining())
+				return -1;
+
+			final int read = Math.min(length, this.buffer.remaining());
+			this.buffer.get(bytes, offset, read);
+
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+	}
+}
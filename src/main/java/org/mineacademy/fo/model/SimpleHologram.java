@@ -2,17 +2,25 @@ package org.mineacademy.fo.model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitTask;
 import org.mineacademy.fo.Common;
+import org.mineacademy.fo.MinecraftVersion;
+import org.mineacademy.fo.MinecraftVersion.V;
 import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.remain.CompMaterial;
 import org.mineacademy.fo.remain.CompParticle;
@@ -22,10 +30,21 @@ import lombok.Getter;
 import lombok.Setter;
 
 /**
- *
+ * An entity with floating lore lines above it.
+ * <p>
+ * We track which players are within {@link #getViewDistance()} of each hologram using a
+ * chunk index. Particles are only shown to those players. When {@link #setVirtualLore(boolean)}
+ * is enabled and ProtocolLib is installed, lore lines are not spawned in the world at all and
+ * only exist as packets sent to viewers, which also lets each player see different text
+ * through {@link #replaceVariables(Player, String)}.
  */
 public abstract class SimpleHologram {
 
+	/**
+	 * How often we recalculate who can see which hologram
+	 */
+	private static final int VIEWER_UPDATE_TICKS = 10;
+
 	/**
 	 * The distance between each line of lore for this item
 	 */
@@ -33,23 +52,63 @@ public abstract class SimpleHologram {
 	@Setter
 	private static double loreLineHeight = 0.26D;
 
+	/**
+	 * Should lore lines of newly spawned holograms only be sent as packets to nearby players
+	 * instead of spawning armor stands? Requires ProtocolLib and Minecraft 1.9+, otherwise ignored.
+	 */
+	@Getter
+	@Setter
+	private static boolean virtualLore = false;
+
+	/**
+	 * How many blocks away can players see holograms
+	 */
+	@Getter
+	@Setter
+	private static int viewDistance = 48;
+
 	/**
 	 * A registry of created animated items
 	 */
 	@Getter
 	private static Set<SimpleHologram> registeredItems = new HashSet<>();
 
+	/**
+	 * Spawned holograms by world name and chunk key, used to quickly find holograms near players
+	 */
+	private static final Map<String, Map<Long, Set<SimpleHologram>>> chunkIndex = new HashMap<>();
+
+	/**
+	 * The holograms each player is currently viewing
+	 */
+	private static final Map<UUID, Set<SimpleHologram>> viewedHolograms = new HashMap<>();
+
 	/**
 	 * The ticking task responsible for calling {@link #onTick()}
 	 */
 	private static BukkitTask tickingTask = null;
 
+	/**
+	 * The task updating who can see which hologram
+	 */
+	private static BukkitTask viewerTask = null;
+
 	/**
 	 * The armor stand names, each line spawns another invisible stand
 	 */
 	@Getter
 	private final List<ArmorStand> loreEntities = new ArrayList<>();
 
+	/**
+	 * The lore lines sent as packets when this hologram uses virtual lore
+	 */
+	private final List<VirtualHologramLine> virtualLines = new ArrayList<>();
+
+	/**
+	 * Players viewing this hologram and the lore text they were last sent
+	 */
+	private final Map<UUID, String[]> viewers = new HashMap<>();
+
 	/**
 	 * The spawning location
 	 */
@@ -73,6 +132,16 @@ public abstract class SimpleHologram {
 	@Getter
 	private Entity entity;
 
+	/*
+	 * Did we spawn the lore as packets?
+	 */
+	private boolean virtual = false;
+
+	/*
+	 * The chunk key we are indexed at, or null if not indexed
+	 */
+	private Long indexedChunk = null;
+
 	/*
 	 * A private flag to help with teleporting of this entity
 	 */
@@ -99,7 +168,27 @@ public abstract class SimpleHologram {
 		if (tickingTask != null)
 			tickingTask.cancel();
 
+		if (viewerTask != null)
+			viewerTask.cancel();
+
 		tickingTask = scheduleTickingTask();
+		viewerTask = Common.runTimer(VIEWER_UPDATE_TICKS, SimpleHologram::updateViewers);
+	}
+
+	/**
+	 * Forget which holograms the player is viewing because their client dropped our
+	 * packet lines, so they are sent again on the next viewer update
+	 *
+	 * @param player
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public static void onViewerReset(Player player) {
+		final Set<SimpleHologram> viewed = viewedHolograms.remove(player.getUniqueId());
+
+		if (viewed != null)
+			for (final SimpleHologram hologram : viewed)
+				hologram.viewers.remove(player.getUniqueId());
 	}
 
 	/*
@@ -107,6 +196,7 @@ public abstract class SimpleHologram {
 	 */
 	private static BukkitTask scheduleTickingTask() {
 		return Common.runTimer(1, () -> {
+			final List<SimpleHologram> moved = new ArrayList<>();
 
 			for (final Iterator<SimpleHologram> it = registeredItems.iterator(); it.hasNext();) {
 				final SimpleHologram model = it.next();
@@ -115,14 +205,78 @@ public abstract class SimpleHologram {
 					if (!model.getEntity().isValid() || model.getEntity().isDead()) {
 						model.removeLore();
 						model.getEntity().remove();
+						model.forget();
 
 						it.remove();
-					} else
-						model.tick();
+
+					} else if (model.tick())
+						moved.add(model);
 			}
+
+			// Send all teleports of this tick together
+			for (final SimpleHologram model : moved)
+				model.sendVirtualMove();
 		});
 	}
 
+	/*
+	 * Show and hide holograms for players as they move around
+	 */
+	private static void updateViewers() {
+		final int chunkRadius = (viewDistance >> 4) + 1;
+		final double maxDistanceSquared = (double) viewDistance * viewDistance;
+
+		for (final Player player : Remain.getOnlinePlayers()) {
+			final Set<SimpleHologram> viewed = viewedHolograms.computeIfAbsent(player.getUniqueId(), uniqueId -> new HashSet<>());
+			final Set<SimpleHologram> visible = new HashSet<>();
+			final Map<Long, Set<SimpleHologram>> worldIndex = chunkIndex.get(player.getWorld().getName());
+
+			if (worldIndex != null) {
+				final Location location = player.getLocation();
+				final int chunkX = location.getBlockX() >> 4;
+				final int chunkZ = location.getBlockZ() >> 4;
+
+				for (int x = chunkX - chunkRadius; x <= chunkX + chunkRadius; x++)
+					for (int z = chunkZ - chunkRadius; z <= chunkZ + chunkRadius; z++) {
+						final Set<SimpleHologram> holograms = worldIndex.get(toChunkKey(x, z));
+
+						if (holograms != null)
+							for (final SimpleHologram hologram : holograms)
+								if (hologram.distanceSquared(location) <= maxDistanceSquared)
+									visible.add(hologram);
+					}
+			}
+
+			for (final Iterator<SimpleHologram> it = viewed.iterator(); it.hasNext();) {
+				final SimpleHologram hologram = it.next();
+
+				if (!visible.contains(hologram)) {
+					hologram.hideFrom(player);
+
+					it.remove();
+				}
+			}
+
+			for (final SimpleHologram hologram : visible)
+				if (viewed.add(hologram))
+					hologram.showTo(player);
+				else
+					hologram.refreshFor(player);
+		}
+
+		// Forget players who left, their client already forgot our lines
+		for (final Iterator<Map.Entry<UUID, Set<SimpleHologram>>> it = viewedHolograms.entrySet().iterator(); it.hasNext();) {
+			final Map.Entry<UUID, Set<SimpleHologram>> entry = it.next();
+
+			if (Bukkit.getPlayer(entry.getKey()) == null) {
+				for (final SimpleHologram hologram : entry.getValue())
+					hologram.viewers.remove(entry.getKey());
+
+				it.remove();
+			}
+		}
+	}
+
 	/**
 	 * Spawns this hologram entity
 	 *
@@ -134,7 +288,10 @@ public abstract class SimpleHologram {
 		this.entity = this.createEntity();
 		Valid.checkNotNull(this.entity, "Failed to spawn entity from " + this);
 
+		this.virtual = virtualLore && isVirtualLoreSupported();
+
 		this.drawLore(this.lastTeleportLocation);
+		this.index();
 
 		return this;
 	}
@@ -146,6 +303,18 @@ public abstract class SimpleHologram {
 	 */
 	protected abstract Entity createEntity();
 
+	/**
+	 * Replaces variables in the lore line for the given player, only used for virtual lore
+	 * where each player can see different text
+	 *
+	 * @param player
+	 * @param line
+	 * @return
+	 */
+	protected String replaceVariables(Player player, String line) {
+		return line;
+	}
+
 	/*
 	 * Set a lore for this armor stand
 	 */
@@ -153,50 +322,238 @@ public abstract class SimpleHologram {
 		if (this.loreLines.isEmpty())
 			return;
 
-		if (this.entity instanceof ArmorStand && ((ArmorStand) this.entity).isSmall())
-			location = location.add(0, -0.5, 0);
+		for (final Location lineLocation : this.getLoreLocations(location))
+			if (this.virtual)
+				this.virtualLines.add(new VirtualHologramLine(lineLocation));
 
-		for (final String loreLine : this.loreLines) {
-			final ArmorStand armorStand = (ArmorStand) location.getWorld().spawnEntity(location, EntityType.ARMOR_STAND);
+			else {
+				final ArmorStand armorStand = (ArmorStand) lineLocation.getWorld().spawnEntity(lineLocation, EntityType.ARMOR_STAND);
 
-			armorStand.setGravity(false);
-			armorStand.setVisible(false);
+				armorStand.setGravity(false);
+				armorStand.setVisible(false);
 
-			Remain.setCustomName(armorStand, loreLine);
+				Remain.setCustomName(armorStand, this.loreLines.get(this.loreEntities.size()));
 
-			location = location.subtract(0, loreLineHeight, 0);
+				this.loreEntities.add(armorStand);
+			}
+	}
+
+	/*
+	 * Return where each lore line should be for the hologram at the given location
+	 */
+	private List<Location> getLoreLocations(Location location) {
+		final List<Location> locations = new ArrayList<>();
+		location = location.clone();
 
-			this.loreEntities.add(armorStand);
+		if (this.entity instanceof ArmorStand && ((ArmorStand) this.entity).isSmall())
+			location.add(0, -0.5, 0);
+
+		for (int i = 0; i < this.loreLines.size(); i++) {
+			locations.add(location.clone());
+
+			location.subtract(0, loreLineHeight, 0);
 		}
+
+		return locations;
 	}
 
 	/*
-	 * Iterate the ticking mechanism of this entity
+	 * Iterate the ticking mechanism of this entity, returning true if virtual lore needs to be moved
 	 */
-	private void tick() {
+	private boolean tick() {
 
 		if (this.pendingTeleport != null) {
+			final List<Location> loreLocations = this.getLoreLocations(this.pendingTeleport);
+
 			this.entity.teleport(this.pendingTeleport);
 
-			for (final ArmorStand loreEntity : this.loreEntities)
-				loreEntity.teleport(this.pendingTeleport);
+			for (int i = 0; i < this.loreEntities.size() && i < loreLocations.size(); i++)
+				this.loreEntities.get(i).teleport(loreLocations.get(i));
 
 			this.pendingTeleport = null;
-			return;
+			this.index();
+
+			return this.virtual;
 		}
 
 		this.onTick();
 
-		for (final Tuple<CompParticle, Object> tuple : this.particles) {
-			final CompParticle particle = tuple.getKey();
-			final Object extra = tuple.getValue();
+		if (this.particles.isEmpty() || this.viewers.isEmpty())
+			return false;
+
+		final Location location = this.getLocation();
+
+		for (final UUID viewerId : this.viewers.keySet()) {
+			final Player viewer = Bukkit.getPlayer(viewerId);
+
+			if (viewer == null)
+				continue;
+
+			for (final Tuple<CompParticle, Object> tuple : this.particles) {
+				final CompParticle particle = tuple.getKey();
+				final Object extra = tuple.getValue();
+
+				if (extra instanceof CompMaterial)
+					particle.spawn(viewer, location, (CompMaterial) extra);
+
+				else if (extra instanceof Double)
+					particle.spawn(viewer, location, (double) extra);
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * Move virtual lore lines for all viewers after a teleport
+	 */
+	private void sendVirtualMove() {
+		final List<Location> loreLocations = this.getLoreLocations(this.lastTeleportLocation);
+		final List<Player> players = this.getViewerPlayers();
+		boolean respawn = false;
+
+		for (int i = 0; i < this.virtualLines.size() && i < loreLocations.size(); i++)
+			if (!this.virtualLines.get(i).moveTo(loreLocations.get(i), players))
+				respawn = true;
+
+		// This Minecraft version has no teleport packet we can build, spawn the lines again
+		if (respawn)
+			for (final Player player : players) {
+				this.hideFrom(player);
+				this.showTo(player);
+			}
+	}
+
+	/*
+	 * Start showing this hologram to the player
+	 */
+	private void showTo(Player player) {
+		final String[] texts = new String[this.virtualLines.size()];
+
+		for (int i = 0; i < texts.length && i < this.loreLines.size(); i++) {
+			texts[i] = this.replaceVariables(player, this.loreLines.get(i));
+
+			this.virtualLines.get(i).show(player, texts[i]);
+		}
+
+		this.viewers.put(player.getUniqueId(), texts);
+	}
+
+	/*
+	 * Send changed per-player texts to a player already viewing this hologram
+	 */
+	private void refreshFor(Player player) {
+		final String[] texts = this.viewers.get(player.getUniqueId());
+
+		if (texts == null)
+			return;
+
+		for (int i = 0; i < texts.length && i < this.loreLines.size(); i++) {
+			final String text = this.replaceVariables(player, this.loreLines.get(i));
+
+			if (!text.equals(texts[i])) {
+				texts[i] = text;
+
+				this.virtualLines.get(i).updateText(player, text);
+			}
+		}
+	}
+
+	/*
+	 * Stop showing this hologram to the player
+	 */
+	private void hideFrom(Player player) {
+		if (this.viewers.remove(player.getUniqueId()) != null && !this.virtualLines.isEmpty())
+			VirtualHologramLine.destroy(player, this.getVirtualEntityIds());
+	}
+
+	/*
+	 * Return the online players viewing this hologram
+	 */
+	private List<Player> getViewerPlayers() {
+		final List<Player> players = new ArrayList<>();
+
+		for (final UUID viewerId : this.viewers.keySet()) {
+			final Player viewer = Bukkit.getPlayer(viewerId);
+
+			if (viewer != null)
+				players.add(viewer);
+		}
+
+		return players;
+	}
+
+	/*
+	 * Return the entity ids of our virtual lore lines
+	 */
+	private List<Integer> getVirtualEntityIds() {
+		final List<Integer> entityIds = new ArrayList<>(this.virtualLines.size());
+
+		for (final VirtualHologramLine line : this.virtualLines)
+			entityIds.add(line.getEntityId());
+
+		return entityIds;
+	}
+
+	/*
+	 * Return the squared distance from the given location in the same world, ignoring worlds
+	 */
+	private double distanceSquared(Location location) {
+		final double x = this.lastTeleportLocation.getX() - location.getX();
+		final double y = this.lastTeleportLocation.getY() - location.getY();
+		final double z = this.lastTeleportLocation.getZ() - location.getZ();
+
+		return x * x + y * y + z * z;
+	}
+
+	/*
+	 * Put this hologram into the chunk index at its current location
+	 */
+	private void index() {
+		final long chunkKey = toChunkKey(this.lastTeleportLocation.getBlockX() >> 4, this.lastTeleportLocation.getBlockZ() >> 4);
+
+		if (this.indexedChunk != null && this.indexedChunk == chunkKey)
+			return;
+
+		this.unindex();
 
-			if (extra instanceof CompMaterial)
-				particle.spawn(this.getLocation(), (CompMaterial) extra);
+		chunkIndex.computeIfAbsent(this.lastTeleportLocation.getWorld().getName(), world -> new HashMap<>()).computeIfAbsent(chunkKey, key -> new HashSet<>()).add(this);
+		this.indexedChunk = chunkKey;
+	}
 
-			else if (extra instanceof Double)
-				particle.spawn(this.getLocation(), (double) extra);
+	/*
+	 * Remove this hologram from the chunk index
+	 */
+	private void unindex() {
+		if (this.indexedChunk == null)
+			return;
+
+		final Map<Long, Set<SimpleHologram>> worldIndex = chunkIndex.get(this.lastTeleportLocation.getWorld().getName());
+
+		if (worldIndex != null) {
+			final Set<SimpleHologram> holograms = worldIndex.get(this.indexedChunk);
+
+			if (holograms != null && holograms.remove(this) && holograms.isEmpty())
+				worldIndex.remove(this.indexedChunk);
 		}
+
+		this.indexedChunk = null;
+	}
+
+	/*
+	 * Remove this hologram from the index and from every player viewing it
+	 */
+	private void forget() {
+		this.unindex();
+
+		for (final UUID viewerId : this.viewers.keySet()) {
+			final Set<SimpleHologram> viewed = viewedHolograms.get(viewerId);
+
+			if (viewed != null)
+				viewed.remove(this);
+		}
+
+		this.viewers.clear();
 	}
 
 	/**
@@ -214,11 +571,30 @@ public abstract class SimpleHologram {
 		return this.entity != null;
 	}
 
+	/**
+	 * Return the unique IDs of players this hologram is currently shown to
+	 *
+	 * @return
+	 */
+	public final Set<UUID> getViewers() {
+		return Collections.unmodifiableSet(this.viewers.keySet());
+	}
+
 	/**
 	 * Deletes all text that the armor stand has
 	 */
 	public final void removeLore() {
 		this.loreEntities.forEach(ArmorStand::remove);
+		this.loreEntities.clear();
+
+		if (!this.virtualLines.isEmpty()) {
+			final List<Integer> entityIds = this.getVirtualEntityIds();
+
+			for (final Player player : this.getViewerPlayers())
+				VirtualHologramLine.destroy(player, entityIds);
+
+			this.virtualLines.clear();
+		}
 	}
 
 	/**
@@ -281,7 +657,7 @@ public abstract class SimpleHologram {
 		Valid.checkBoolean(this.pendingTeleport == null, this + " is already pending teleport to " + this.pendingTeleport);
 		this.checkSpawned("teleport");
 
-		this.lastTeleportLocation.setX(location.getY());
+		this.lastTeleportLocation.setX(location.getX());
 		this.lastTeleportLocation.setY(location.getY());
 		this.lastTeleportLocation.setZ(location.getZ());
 
@@ -297,6 +673,7 @@ public abstract class SimpleHologram {
 		if (this.entity != null)
 			this.entity.remove();
 
+		this.forget();
 		registeredItems.remove(this);
 	}
 
@@ -327,7 +704,25 @@ public abstract class SimpleHologram {
 				item.getEntity().remove();
 
 			item.removeLore();
+			item.forget();
+
 			it.remove();
 		}
 	}
+
+	/**
+	 * Return true if lore lines can be sent as packets only on this server
+	 *
+	 * @return
+	 */
+	public static boolean isVirtualLoreSupported() {
+		return MinecraftVersion.atLeast(V.v1_9) && HookManager.isProtocolLibLoaded();
+	}
+
+	/*
+	 * Pack chunk coordinates into a single key
+	 */
+	private static long toChunkKey(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
 }
@@ -2,7 +2,11 @@ package org.mineacademy.fo.model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
@@ -34,6 +38,10 @@ import lombok.NonNull;
  * Maximum title lengths:
  * - 1.8: 30 with color, 32 without color
  * - 1.13: 126 with color, 128 without color
+ * <p>
+ * We remember what each viewer was last sent and only update the teams and scores
+ * of lines that changed. Use {@link #setAsyncRendering(boolean)} to compute the lines
+ * off the main thread.
  *
  * @author kangarko and Tijn (<a href="https://github.com/Tvhee-Dev">Tvhee-Dev</a>)
  */
@@ -50,6 +58,11 @@ public class SimpleScoreboard {
 	 */
 	private static final String[] COLORS = { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f" };
 
+	/**
+	 * Matches useless colors in front of only spaces (e.g. [§a     §aText] becomes [     §aText])
+	 */
+	private static final Pattern SPACE_COLOR_PATTERN = Pattern.compile("^( )+(" + COLOR_CHAR + ")");
+
 	/**
 	 * List of all active scoreboard (added upon creating a new instance)
 	 */
@@ -67,6 +80,11 @@ public class SimpleScoreboard {
 
 	private final List<UUID> viewers = new ArrayList<>();
 
+	/**
+	 * What we last sent to each viewer, used to only send what changed
+	 */
+	private final Map<UUID, RenderedBoard> rendered = new HashMap<>();
+
 	/**
 	 * The color theme for key: value pairs such as
 	 * <p>
@@ -86,11 +104,22 @@ public class SimpleScoreboard {
 	@Getter
 	private int updateDelayTicks = 20;
 
+	/**
+	 * Should we compute rows off the main thread?
+	 */
+	@Getter
+	private boolean asyncRendering = false;
+
 	/**
 	 * The running update task
 	 */
 	private BukkitTask updateTask;
 
+	/**
+	 * True while an async render is running, so we skip updates instead of piling them up
+	 */
+	private volatile boolean renderingAsync = false;
+
 	/**
 	 * Create a new scoreboard updating every second
 	 */
@@ -200,6 +229,17 @@ public class SimpleScoreboard {
 		this.updateDelayTicks = updateDelayTicks;
 	}
 
+	/**
+	 * Set if we should compute rows off the main thread, only the changes are then
+	 * sent on the main thread. Only enable when your {@link #replaceVariables(Player, String)}
+	 * is thread-safe.
+	 *
+	 * @param asyncRendering
+	 */
+	public final void setAsyncRendering(boolean asyncRendering) {
+		this.asyncRendering = asyncRendering;
+	}
+
 	/**
 	 * Show this scoreboard to the player
 	 *
@@ -229,6 +269,7 @@ public class SimpleScoreboard {
 
 		player.setScoreboard(Bukkit.getScoreboardManager().getMainScoreboard());
 		this.viewers.remove(player.getUniqueId());
+		this.rendered.remove(player.getUniqueId());
 
 		if (this.viewers.isEmpty())
 			this.cancelUpdateTask();
@@ -339,33 +380,88 @@ public class SimpleScoreboard {
 		Valid.checkBoolean(this.updateTask == null, "Scoreboard " + this + " already running");
 
 		this.updateTask = Bukkit.getScheduler().runTaskTimer(SimplePlugin.getInstance(), () -> {
+			if (this.renderingAsync)
+				return;
+
 			try {
 				this.onUpdate();
 
+				final List<Player> players = new ArrayList<>();
+
 				for (final UUID viewerId : new ArrayList<>(this.viewers)) {
 					final Player viewer = Bukkit.getPlayer(viewerId);
 
 					if (viewer == null || !viewer.isOnline()) {
 						this.viewers.remove(viewerId);
+						this.rendered.remove(viewerId);
+
 						continue;
 					}
 
-					this.reloadEntries(viewer);
+					players.add(viewer);
 				}
 
+				final List<String> rowsSnapshot = new ArrayList<>(this.rows);
+				final String titleSnapshot = this.title;
+
+				if (this.asyncRendering && !players.isEmpty()) {
+					this.renderingAsync = true;
+
+					Common.runAsync(() -> {
+						try {
+							final List<RenderedBoard> boards = new ArrayList<>(players.size());
+
+							for (final Player player : players)
+								boards.add(this.render(player, rowsSnapshot, titleSnapshot));
+
+							Common.runLater(() -> {
+								try {
+									for (int i = 0; i < players.size(); i++) {
+										final Player player = players.get(i);
+
+										if (player.isOnline() && this.isViewing(player))
+											this.apply(player, boards.get(i));
+									}
+
+								} catch (final Throwable t) {
+									this.handleRenderError(t);
+
+								} finally {
+									this.renderingAsync = false;
+								}
+							});
+
+						} catch (final Throwable t) {
+							this.renderingAsync = false;
+
+							Common.runLater(() -> this.handleRenderError(t));
+						}
+					});
+
+				} else
+					for (final Player player : players)
+						this.apply(player, this.render(player, rowsSnapshot, titleSnapshot));
+
 			} catch (final Throwable t) {
-				Common.error(t,
-						"Error displaying " + this,
-						"Entries: " + this.rows,
-						"Title: " + this.title,
-						"%error",
-						"Stopping rendering for safety.");
-
-				this.stop();
+				this.handleRenderError(t);
 			}
 		}, 0, this.updateDelayTicks);
 	}
 
+	/*
+	 * Log the error and stop rendering
+	 */
+	private void handleRenderError(Throwable t) {
+		Common.error(t,
+				"Error displaying " + this,
+				"Entries: " + this.rows,
+				"Title: " + this.title,
+				"%error",
+				"Stopping rendering for safety.");
+
+		this.stop();
+	}
+
 	/**
 	 * Stops this scoreboard and removes it from all viewers
 	 */
@@ -378,6 +474,7 @@ public class SimpleScoreboard {
 		});
 
 		this.viewers.clear();
+		this.rendered.clear();
 
 		if (this.updateTask != null)
 			this.cancelUpdateTask();
@@ -427,89 +524,187 @@ public class SimpleScoreboard {
 	// Rendering
 	// ------------------------------------------------------------------------------------------------------------
 
-	/**
-	 * Reload entries for the given player
-	 *
-	 * @param player
+	/*
+	 * Compute what the player should see without touching the scoreboard, so this can run async
 	 */
-	private void reloadEntries(Player player) throws IllegalArgumentException {
-		final String colorizedTitle = Common.colorize(this.title);
+	private RenderedBoard render(Player player, List<String> rows, String title) {
+		final boolean mc1_13 = MinecraftVersion.atLeast(MinecraftVersion.V.v1_13);
+		final boolean mc1_18 = MinecraftVersion.atLeast(MinecraftVersion.V.v1_18);
+		final RenderedBoard board = new RenderedBoard(Common.colorize(title), rows.size());
+		final Set<String> rowsDone = new HashSet<>();
+
+		for (int lineNumber = 0; lineNumber < board.lines; lineNumber++) {
+			final String scoreboardLineRaw = rows.get(lineNumber).replace("{player}", player.getName());
+			final String finishedRow = Common.colorize(this.replaceTheme(this.replaceVariables(player, scoreboardLineRaw)));
+			final boolean rowUsed = rowsDone.contains(finishedRow);
+			final int[] splitPoints = { mc1_13 ? 64 : 16, mc1_18 ? 32767 : 40, mc1_13 ? 64 : 16 };
+
+			if (rowUsed)
+				splitPoints[1] = splitPoints[1] - 2;
+
+			final List<String> copy = this.copyColors(finishedRow, splitPoints);
+			String entry = copy.size() < 2 ? COLOR_CHAR + COLORS[lineNumber] + COLOR_CHAR + "r" : copy.get(1) + (rowUsed ? COLOR_CHAR + COLORS[lineNumber] : "");
+
+			if (MinecraftVersion.olderThan(V.v1_13) && entry.length() > 16)
+				entry = entry.substring(0, 16);
+
+			board.prefixes[lineNumber] = copy.isEmpty() ? "" : copy.get(0);
+			board.entries[lineNumber] = entry;
+			board.suffixes[lineNumber] = copy.size() < 3 ? "" : copy.get(2);
+			board.entrySet.add(entry);
+
+			rowsDone.add(finishedRow);
+		}
+
+		return board;
+	}
+
+	/*
+	 * Send the rendered board to the player, only updating lines that changed since the last time
+	 */
+	private void apply(Player player, RenderedBoard board) {
 		final Scoreboard scoreboard = player.getScoreboard();
-		final List<String> rowsDone = new ArrayList<>();
 		Objective mainboard = scoreboard.getObjective("mainboard");
+		RenderedBoard previous = this.rendered.get(player.getUniqueId());
+
+		// What we remember is only valid for the scoreboard we rendered to
+		if (previous != null && (previous.scoreboard != scoreboard || mainboard == null))
+			previous = null;
 
 		if (mainboard == null) {
 			mainboard = scoreboard.registerNewObjective("mainboard", "dummy");
-			mainboard.setDisplayName(colorizedTitle);
+			mainboard.setDisplayName(board.title);
 			mainboard.setDisplaySlot(DisplaySlot.SIDEBAR);
 		}
 
-		if (!mainboard.getDisplayName().equals(colorizedTitle))
-			mainboard.setDisplayName(colorizedTitle);
+		if (previous == null ? !mainboard.getDisplayName().equals(board.title) : !previous.title.equals(board.title))
+			mainboard.setDisplayName(board.title);
 
-		for (int lineNumber = 0; lineNumber < 15; lineNumber++) {
-			final int scoreboardLineNumber = this.rows.size() - lineNumber;
-			Team line = scoreboard.getTeam("line" + scoreboardLineNumber);
+		for (int lineNumber = 0; lineNumber < board.lines; lineNumber++) {
+			final int score = board.getScore(lineNumber);
+			final int previousLine = previous == null ? -1 : previous.getLine(score);
 
-			if (lineNumber < this.rows.size()) {
-				if (line == null)
-					line = scoreboard.registerNewTeam("line" + scoreboardLineNumber);
+			if (previousLine == -1)
+				this.writeLine(scoreboard, mainboard, board, lineNumber);
 
-				final String scoreboardLineRaw = this.rows.get(lineNumber).replace("{player}", player.getName());
-				final boolean mc1_13 = MinecraftVersion.atLeast(MinecraftVersion.V.v1_13);
-				final boolean mc1_18 = MinecraftVersion.atLeast(MinecraftVersion.V.v1_18);
-				final String finishedRow = Common.colorize(replaceTheme(this.replaceVariables(player, scoreboardLineRaw)));
-				final boolean rowUsed = rowsDone.contains(finishedRow);
-				final int[] splitPoints = { mc1_13 ? 64 : 16, mc1_18 ? 32767 : 40, mc1_13 ? 64 : 16 };
+			else if (!previous.isSame(previousLine, board, lineNumber))
+				this.updateLine(scoreboard, mainboard, previous, previousLine, board, lineNumber);
+		}
 
-				if (rowUsed)
-					splitPoints[1] = splitPoints[1] - 2;
+		// Remove lines no longer shown
+		if (previous == null) {
+			for (int lineNumber = board.lines; lineNumber < 15; lineNumber++)
+				this.removeLine(scoreboard, board, board.getScore(lineNumber), null);
 
-				final List<String> copy = copyColors(finishedRow, splitPoints);
-				final String prefix = copy.isEmpty() ? "" : copy.get(0);
-				String entry = copy.size() < 2 ? COLOR_CHAR + COLORS[lineNumber] + COLOR_CHAR + "r" : copy.get(1) + (rowUsed ? COLOR_CHAR + COLORS[lineNumber] : "");
+		} else
+			for (int lineNumber = 0; lineNumber < previous.lines; lineNumber++) {
+				final int score = previous.getScore(lineNumber);
 
-				if (MinecraftVersion.olderThan(V.v1_13) && entry.length() > 16)
-					entry = entry.substring(0, 16);
+				if (board.getLine(score) == -1)
+					this.removeLine(scoreboard, board, score, previous.entries[lineNumber]);
+			}
 
-				final String suffix = copy.size() < 3 ? "" : copy.get(2);
-				String oldEntry = null;
+		board.scoreboard = scoreboard;
+		this.rendered.put(player.getUniqueId(), board);
+	}
 
-				if (!line.getPrefix().equals(prefix))
-					line.setPrefix(prefix);
+	/*
+	 * Write the line comparing against the team itself, used when we do not know what the player sees
+	 */
+	private void writeLine(Scoreboard scoreboard, Objective mainboard, RenderedBoard board, int lineNumber) {
+		final int score = board.getScore(lineNumber);
+		final String prefix = board.prefixes[lineNumber];
+		final String entry = board.entries[lineNumber];
+		final String suffix = board.suffixes[lineNumber];
+		Team line = scoreboard.getTeam("line" + score);
+		String oldEntry = null;
 
-				if (line.getEntries().size() > 1) {
-					for (final String teamEntry : line.getEntries()) {
-						line.removeEntry(teamEntry);
-						scoreboard.resetScores(teamEntry);
-					}
-				}
+		if (line == null)
+			line = scoreboard.registerNewTeam("line" + score);
 
-				if (!line.getEntries().contains(entry)) {
-					if (!line.getEntries().isEmpty()) {
-						oldEntry = new ArrayList<>(line.getEntries()).get(0);
+		if (!line.getPrefix().equals(prefix))
+			line.setPrefix(prefix);
 
-						line.removeEntry(oldEntry);
-					}
+		if (line.getEntries().size() > 1) {
+			for (final String teamEntry : line.getEntries()) {
+				line.removeEntry(teamEntry);
+				scoreboard.resetScores(teamEntry);
+			}
+		}
 
-					line.addEntry(entry);
-				}
+		if (!line.getEntries().contains(entry)) {
+			if (!line.getEntries().isEmpty()) {
+				oldEntry = new ArrayList<>(line.getEntries()).get(0);
 
-				if (!line.getSuffix().equals(suffix))
-					line.setSuffix(suffix);
+				line.removeEntry(oldEntry);
+			}
 
-				if (oldEntry != null)
-					scoreboard.resetScores(oldEntry);
+			line.addEntry(entry);
+		}
+
+		if (!line.getSuffix().equals(suffix))
+			line.setSuffix(suffix);
+
+		if (oldEntry != null && !board.entrySet.contains(oldEntry))
+			scoreboard.resetScores(oldEntry);
+
+		mainboard.getScore(entry).setScore(score);
+	}
+
+	/*
+	 * Update only the parts of the line that changed since we last sent it
+	 */
+	private void updateLine(Scoreboard scoreboard, Objective mainboard, RenderedBoard previous, int previousLine, RenderedBoard board, int lineNumber) {
+		final int score = board.getScore(lineNumber);
+		final String entry = board.entries[lineNumber];
+		final String oldEntry = previous.entries[previousLine];
+		Team line = scoreboard.getTeam("line" + score);
+
+		// Someone removed our team, write it from scratch
+		if (line == null) {
+			this.writeLine(scoreboard, mainboard, board, lineNumber);
+
+			return;
+		}
+
+		if (!previous.prefixes[previousLine].equals(board.prefixes[lineNumber]))
+			line.setPrefix(board.prefixes[lineNumber]);
+
+		final boolean entryChanged = !oldEntry.equals(entry);
 
-				mainboard.getScore(entry).setScore(scoreboardLineNumber);
-				rowsDone.add(finishedRow);
-			} else if (line != null) {
-				for (final String oldEntry : line.getEntries())
+		if (entryChanged) {
+			line.removeEntry(oldEntry);
+
+			line.addEntry(entry);
+		}
+
+		if (!previous.suffixes[previousLine].equals(board.suffixes[lineNumber]))
+			line.setSuffix(board.suffixes[lineNumber]);
+
+		if (entryChanged) {
+			if (!board.entrySet.contains(oldEntry))
+				scoreboard.resetScores(oldEntry);
+
+			mainboard.getScore(entry).setScore(score);
+		}
+	}
+
+	/*
+	 * Unregister the team of a line no longer shown and reset its score
+	 */
+	private void removeLine(Scoreboard scoreboard, RenderedBoard board, int score, String knownEntry) {
+		final Team line = scoreboard.getTeam("line" + score);
+
+		if (line != null) {
+			for (final String oldEntry : line.getEntries())
+				if (!board.entrySet.contains(oldEntry))
 					scoreboard.resetScores(oldEntry);
 
-				line.unregister();
-			}
+			line.unregister();
 		}
+
+		if (knownEntry != null && !board.entrySet.contains(knownEntry))
+			scoreboard.resetScores(knownEntry);
 	}
 
 	/**
@@ -518,15 +713,13 @@ public class SimpleScoreboard {
 	 * @return The method will split the text at the given splitPoints and will copy the colors over
 	 */
 	private List<String> copyColors(String text, int... splitPoints) {
-		//Removes useless colors in front of only spaces (e.g. [§a     §aText] becomes [     §aText])
-		final Pattern spaceMatcher = Pattern.compile("^( )+(" + COLOR_CHAR + ")");
 		final List<String> splitText = new ArrayList<>();
 
 		for (final int splitPoint : splitPoints) {
 			final String lastEntry = splitText.isEmpty() ? "" : splitText.get(splitText.size() - 1);
 			final String lastColor = ChatColor.getLastColors(lastEntry);
 
-			final boolean addColor = !text.startsWith(COLOR_CHAR) && !lastColor.isEmpty() && !spaceMatcher.matcher(text).find();
+			final boolean addColor = !text.startsWith(COLOR_CHAR) && !lastColor.isEmpty() && !SPACE_COLOR_PATTERN.matcher(text).find();
 			final int realSplitPoint = Math.min(splitPoint - (addColor ? 2 : 0), text.length());
 			String line = (addColor ? lastColor : "") + text.substring(0, realSplitPoint);
 
@@ -545,4 +738,61 @@ public class SimpleScoreboard {
 
 		return splitText;
 	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Classes
+	// ------------------------------------------------------------------------------------------------------------
+
+	/*
+	 * The lines as last computed for a single viewer
+	 */
+	private static final class RenderedBoard {
+
+		private final String title;
+		private final int rowCount;
+		private final int lines;
+		private final String[] prefixes;
+		private final String[] entries;
+		private final String[] suffixes;
+		private final Set<String> entrySet = new HashSet<>();
+
+		/*
+		 * The scoreboard we sent this to, set once applied
+		 */
+		private Scoreboard scoreboard;
+
+		private RenderedBoard(String title, int rowCount) {
+			this.title = title;
+			this.rowCount = rowCount;
+			this.lines = Math.min(rowCount, 15);
+			this.prefixes = new String[this.lines];
+			this.entries = new String[this.lines];
+			this.suffixes = new String[this.lines];
+		}
+
+		/*
+		 * Return the score and team number of the line, the first line has the highest score
+		 */
+		private int getScore(int lineNumber) {
+			return this.rowCount - lineNumber;
+		}
+
+		/*
+		 * Return the line number having the given score or -1 if none
+		 */
+		private int getLine(int score) {
+			final int lineNumber = this.rowCount - score;
+
+			return lineNumber >= 0 && lineNumber < this.lines ? lineNumber : -1;
+		}
+
+		/*
+		 * Return true if our line looks exactly like the line of the other board
+		 */
+		private boolean isSame(int lineNumber, RenderedBoard other, int otherLineNumber) {
+			return this.entries[lineNumber].equals(other.entries[otherLineNumber])
+					&& this.prefixes[lineNumber].equals(other.prefixes[otherLineNumber])
+					&& this.suffixes[lineNumber].equals(other.suffixes[otherLineNumber]);
+		}
+	}
 }
\ No newline at end of file
@@ -1,15 +1,19 @@
 package org.mineacademy.fo.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.bukkit.ChatColor;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.entity.Player;
@@ -20,6 +24,7 @@ import org.mineacademy.fo.Messenger;
 import org.mineacademy.fo.MinecraftVersion;
 import org.mineacademy.fo.PlayerUtil;
 import org.mineacademy.fo.TimeUtil;
+import org.mineacademy.fo.collection.SerializedMap;
 import org.mineacademy.fo.collection.StrictList;
 import org.mineacademy.fo.collection.StrictMap;
 import org.mineacademy.fo.collection.expiringmap.ExpiringMap;
@@ -29,6 +34,9 @@ import org.mineacademy.fo.settings.SimpleLocalization;
 
 /**
  * A simple engine that replaces variables in a message.
+ * <p>
+ * Messages are compiled once into literal parts and variable slots, which are
+ * then filled in a single pass on each call.
  */
 public final class Variables {
 
@@ -62,6 +70,16 @@ public final class Variables {
 	 */
 	private static final Map<String, Map<String, String>> cache = ExpiringMap.builder().expiration(500, TimeUnit.MILLISECONDS).build();
 
+	/**
+	 * How many compiled messages to keep before starting over
+	 */
+	private static final int TEMPLATE_CACHE_SIZE = 2000;
+
+	/**
+	 * Compiled messages having variables by their source
+	 */
+	private static final Map<String, Template> templates = new ConcurrentHashMap<>();
+
 	// ------------------------------------------------------------------------------------------------------------
 	// Custom variables
 	// ------------------------------------------------------------------------------------------------------------
@@ -247,28 +265,8 @@ public final class Variables {
 				return cachedVar;
 		}
 
-		// Replace custom variables first
-		if (replacements != null && !replacements.isEmpty())
-			message = Replacer.replaceArray(message, replacements);
-
-		// PlaceholderAPI and MVdWPlaceholderAPI
-		if (senderIsPlayer)
-			message = HookManager.replacePlaceholders((Player) sender, message);
-
-		else if (sender instanceof DiscordSender)
-			message = HookManager.replacePlaceholders(((DiscordSender) sender).getOfflinePlayer(), message);
-
-		// Replace hard variables
-		message = replaceHardVariables0(sender, message, Variables.VARIABLE_PATTERN.matcher(message));
-		message = replaceHardVariables0(sender, message, Variables.BRACKET_VARIABLE_PATTERN.matcher(message));
-		message = Messenger.replacePrefixes(message);
-
-		// Custom placeholders
-		if (replaceScript)
-			message = replaceJavascriptVariables0(message, sender, replacements);
-
-		if (!message.startsWith("[JSON]") && colorize)
-			message = Common.colorize(message);
+		// Replace custom variables, PlaceholderAPI, hard and script variables in one pass
+		message = compile(message).render(new RenderContext(sender, replacements, colorize, replaceScript));
 
 		if (senderIsPlayer) {
 			final Map<String, String> map = cache.get(sender.getName());
@@ -283,68 +281,27 @@ public final class Variables {
 	}
 
 	/*
-	 * Replaces JavaScript variables in the message
+	 * Return the compiled form of the message, compiling it on first use
 	 */
-	private static String replaceJavascriptVariables0(String message, CommandSender sender, Map<String, Object> replacements) {
-
-		message = replaceJavascriptVariables0(message, sender, replacements, VARIABLE_PATTERN.matcher(message));
-		message = replaceJavascriptVariables0(message, sender, replacements, BRACKET_VARIABLE_PATTERN.matcher(message));
-
-		return message;
-	}
-
-	private static String replaceJavascriptVariables0(String message, CommandSender sender, Map<String, Object> replacements, Matcher matcher) {
-		while (matcher.find()) {
-			final String variableKey = matcher.group();
-
-			// Find the variable key without []
-			final Variable variable = Variable.findVariable(variableKey.substring(1, variableKey.length() - 1));
-
-			if (variable != null && variable.getType() == Variable.Type.FORMAT) {
-				String plain = variable.buildPlain(sender, replacements);
-
-				// And we remove the white prefix that is by default added in every component
-				if (plain.startsWith(ChatColor.COLOR_CHAR + "f" + ChatColor.COLOR_CHAR + "f"))
-					plain = plain.substring(4);
-
-				message = message.replace(variableKey, plain);
-			}
-		}
-
-		return message;
-	}
-
-	private static String replaceHardVariables0(CommandSender sender, String message, Matcher matcher) {
-		final Player player = sender instanceof Player ? (Player) sender : null;
-
-		while (matcher.find()) {
-			String variable = matcher.group(1);
-			boolean frontSpace = false;
-			boolean backSpace = false;
-
-			if (variable.startsWith("+")) {
-				variable = variable.substring(1);
-
-				frontSpace = true;
-			}
+	private static Template compile(String message) {
 
-			if (variable.endsWith("+")) {
-				variable = variable.substring(0, variable.length() - 1);
+		// Plain text such as most chat lines has nothing to compile, do not let it push formats out
+		if (message.indexOf('%') == -1 && message.indexOf('{') == -1)
+			return Template.literal(message);
 
-				backSpace = true;
-			}
+		Template template = templates.get(message);
 
-			String value = lookupVariable0(player, sender, variable);
+		if (template == null) {
+			template = Template.compile(message, false);
 
-			if (value != null) {
-				final boolean emptyColorless = Common.stripColors(value).isEmpty();
-				value = value.isEmpty() ? "" : (frontSpace && !emptyColorless ? " " : "") + Common.colorize(value) + (backSpace && !emptyColorless ? " " : "");
+			// Start over rather than tracking usage, formats are compiled again on next use
+			if (templates.size() >= TEMPLATE_CACHE_SIZE)
+				templates.clear();
 
-				message = message.replace(matcher.group(), value);
-			}
+			templates.put(message, template);
 		}
 
-		return message;
+		return template;
 	}
 
 	/*
@@ -354,7 +311,7 @@ public final class Variables {
 		GeoResponse geoResponse = null;
 
 		if (player != null && Arrays.asList("country_code", "country_name", "region_name", "isp").contains(variable))
-			geoResponse = GeoAPI.getCountry(player.getAddress());
+			geoResponse = GeoAPI.getCachedCountry(player.getAddress());
 
 		if (console != null) {
 
@@ -487,4 +444,373 @@ public final class Variables {
 			return player.getAddress() != null ? player.getAddress().toString() : "";
 		}
 	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Compiled messages
+	// ------------------------------------------------------------------------------------------------------------
+
+	/*
+	 * The order in which we try to resolve a variable, the same as the order of the passes we used to run
+	 */
+	private static final int STAGE_REPLACEMENTS = 0;
+	private static final int STAGE_PLACEHOLDERS = 1;
+	private static final int STAGE_HARD = 2;
+	private static final int STAGE_SCRIPT = 3;
+
+	/*
+	 * How many times a replaced value may introduce new variables that we replace again
+	 */
+	private static final int MAX_NESTING = 3;
+
+	/*
+	 * Strip {} from replacement keys the same way Replacer does
+	 */
+	private static Map<String, String> normalizeReplacements(Map<String, Object> replacements) {
+		if (replacements == null || replacements.isEmpty())
+			return null;
+
+		final Map<String, String> variables = new HashMap<>();
+
+		for (final Map.Entry<String, Object> entry : SerializedMap.ofArray(replacements).entrySet()) {
+			String key = entry.getKey();
+
+			key = key.startsWith("{") ? key.substring(1) : key;
+			key = key.endsWith("}") ? key.substring(0, key.length() - 1) : key;
+
+			variables.put(key, entry.getValue() == null ? "null" : entry.getValue().toString());
+		}
+
+		return variables;
+	}
+
+	/*
+	 * Return false if the text ends with something that could form a color code
+	 * together with the text following it, such as & or an incomplete hex color
+	 */
+	private static boolean isColorSafeEnd(String text) {
+		final int length = text.length();
+
+		if (length == 0)
+			return true;
+
+		final char last = text.charAt(length - 1);
+
+		if (last == '&' || last == '\\' || last == '{')
+			return false;
+
+		for (int i = length - 1; i >= 0 && i >= length - 7; i--) {
+			final char character = text.charAt(i);
+
+			if (character == '#')
+				return false;
+
+			if (Character.digit(character, 16) == -1)
+				return true;
+		}
+
+		return true;
+	}
+
+	/*
+	 * The state of a single replace call
+	 */
+	private static final class RenderContext {
+
+		private final CommandSender sender;
+		private final Player player;
+		private final boolean placeholders;
+		private final OfflinePlayer placeholderTarget;
+		private final Map<String, Object> replacements;
+		private final Map<String, String> variables;
+		private final boolean colorize;
+		private final boolean replaceScript;
+
+		/*
+		 * The message as the passes would have left it before colorizing
+		 */
+		private final StringBuilder raw = new StringBuilder(128);
+
+		/*
+		 * The message colorized part by part, valid as long as split is true
+		 */
+		private final StringBuilder colored = new StringBuilder(128);
+		private boolean split;
+
+		private RenderContext(CommandSender sender, Map<String, Object> replacements, boolean colorize, boolean replaceScript) {
+			this.sender = sender;
+			this.player = sender instanceof Player ? (Player) sender : null;
+			this.placeholders = (this.player != null || sender instanceof DiscordSender) && (HookManager.isPlaceholderAPILoaded() || HookManager.isMVdWPlaceholderAPILoaded());
+			this.placeholderTarget = this.player != null ? this.player : sender instanceof DiscordSender ? ((DiscordSender) sender).getOfflinePlayer() : null;
+			this.replacements = replacements;
+			this.variables = normalizeReplacements(replacements);
+			this.colorize = colorize;
+			this.replaceScript = replaceScript;
+			this.split = colorize;
+		}
+
+		private void appendLiteral(String literal, String colorizedLiteral) {
+			this.raw.append(literal);
+
+			if (this.split)
+				this.colored.append(colorizedLiteral);
+		}
+
+		private void appendValue(String value) {
+			this.raw.append(value);
+
+			if (this.split) {
+				if (isColorSafeEnd(value))
+					this.colored.append(Common.colorize(value));
+				else
+					this.split = false;
+			}
+		}
+	}
+
+	/*
+	 * A message split into literal parts and variable slots, there is always one more literal than slots
+	 */
+	private static final class Template {
+
+		private final String[] literals;
+		private final Slot[] slots;
+
+		/*
+		 * True if colorizing the parts one by one gives the same result as colorizing the whole message
+		 */
+		private final boolean colorSplittable;
+
+		/*
+		 * The colorized literals, created on first use
+		 */
+		private volatile String[] colorizedLiterals;
+
+		private Template(String[] literals, Slot[] slots) {
+			this.literals = literals;
+			this.slots = slots;
+
+			boolean colorSplittable = true;
+
+			for (int i = 0; i < literals.length && colorSplittable; i++)
+				if (!isColorSafeEnd(literals[i]))
+					colorSplittable = false;
+
+			// Common#colorize only removes {prefix} when the whole message starts with it
+			for (int i = 0; i < slots.length && colorSplittable; i++)
+				if (slots[i].name.equals("prefix"))
+					colorSplittable = false;
+
+			this.colorSplittable = colorSplittable;
+		}
+
+		/*
+		 * Render the message and apply prefixes and colors the same way the old passes did
+		 */
+		private String render(RenderContext context) {
+			this.render(context, STAGE_REPLACEMENTS, 0);
+
+			String message = context.raw.toString();
+			final boolean hasPrefixes = message.contains("prefix");
+
+			if (context.split && !hasPrefixes && !message.startsWith("[JSON]"))
+				return context.colored.toString();
+
+			if (hasPrefixes)
+				message = Messenger.replacePrefixes(message);
+
+			if (!message.startsWith("[JSON]") && context.colorize)
+				message = Common.colorize(message);
+
+			return message;
+		}
+
+		private void render(RenderContext context, int fromStage, int depth) {
+			if (!this.colorSplittable)
+				context.split = false;
+
+			final String[] colorized = context.split ? this.getColorizedLiterals() : null;
+
+			for (int i = 0; i < this.slots.length; i++) {
+				context.appendLiteral(this.literals[i], colorized == null ? null : colorized[i]);
+
+				this.slots[i].render(context, fromStage, depth);
+			}
+
+			context.appendLiteral(this.literals[this.slots.length], colorized == null ? null : colorized[this.slots.length]);
+		}
+
+		private String[] getColorizedLiterals() {
+			String[] colorized = this.colorizedLiterals;
+
+			if (colorized == null) {
+				colorized = new String[this.literals.length];
+
+				for (int i = 0; i < this.literals.length; i++)
+					colorized[i] = Common.colorize(this.literals[i]);
+
+				this.colorizedLiterals = colorized;
+			}
+
+			return colorized;
+		}
+
+		/*
+		 * Return a template rendering the message as is
+		 */
+		private static Template literal(String message) {
+			return new Template(new String[] { message }, new Slot[0]);
+		}
+
+		/*
+		 * Split the message into literals and slots, finding %syntax% first and {syntax} in
+		 * the text between them, the same as the old passes did
+		 */
+		private static Template compile(String message, boolean bracketsOnly) {
+			final List<String> literals = new ArrayList<>();
+			final List<Slot> slots = new ArrayList<>();
+			final StringBuilder literal = new StringBuilder();
+			int last = 0;
+
+			if (!bracketsOnly) {
+				final Matcher matcher = VARIABLE_PATTERN.matcher(message);
+
+				while (matcher.find()) {
+					compileBrackets(message.substring(last, matcher.start()), literal, literals, slots);
+
+					literals.add(literal.toString());
+					literal.setLength(0);
+
+					slots.add(new Slot(matcher.group(), matcher.group(1), true));
+					last = matcher.end();
+				}
+			}
+
+			compileBrackets(message.substring(last), literal, literals, slots);
+			literals.add(literal.toString());
+
+			return new Template(literals.toArray(new String[literals.size()]), slots.toArray(new Slot[slots.size()]));
+		}
+
+		private static void compileBrackets(String text, StringBuilder literal, List<String> literals, List<Slot> slots) {
+			final Matcher matcher = BRACKET_VARIABLE_PATTERN.matcher(text);
+			int last = 0;
+
+			while (matcher.find()) {
+				literal.append(text, last, matcher.start());
+
+				literals.add(literal.toString());
+				literal.setLength(0);
+
+				slots.add(new Slot(matcher.group(), matcher.group(1), false));
+				last = matcher.end();
+			}
+
+			literal.append(text, last, text.length());
+		}
+	}
+
+	/*
+	 * A single %syntax% or {syntax} variable in a compiled message
+	 */
+	private static final class Slot {
+
+		private final String raw;
+		private final String inner;
+		private final String name;
+		private final boolean percent;
+		private final boolean frontSpace;
+		private final boolean backSpace;
+
+		/*
+		 * Used for %syntax% when it cannot be replaced but contains {syntax} variables
+		 */
+		private final Template fallback;
+
+		private Slot(String raw, String inner, boolean percent) {
+			String name = inner;
+
+			this.frontSpace = name.startsWith("+");
+			name = this.frontSpace ? name.substring(1) : name;
+
+			this.backSpace = name.endsWith("+");
+			name = this.backSpace ? name.substring(0, name.length() - 1) : name;
+
+			this.raw = raw;
+			this.inner = inner;
+			this.name = name;
+			this.percent = percent;
+			this.fallback = percent && inner.indexOf('{') != -1 ? Template.compile(raw, true) : null;
+		}
+
+		private void render(RenderContext context, int fromStage, int depth) {
+			String value = null;
+			int stage = fromStage;
+
+			for (; stage <= STAGE_SCRIPT; stage++)
+				if ((value = this.resolve(context, stage)) != null)
+					break;
+
+			if (value == null) {
+				if (this.fallback != null)
+					this.fallback.render(context, fromStage, depth);
+				else
+					context.appendValue(this.raw);
+
+				return;
+			}
+
+			// The value introduced new variables, replace them with the stages that followed
+			if (depth < MAX_NESTING && stage < STAGE_SCRIPT && (value.indexOf('%') != -1 || value.indexOf('{') != -1))
+				Template.compile(value, false).render(context, this.percent ? stage : stage + 1, depth + 1);
+			else
+				context.appendValue(value);
+		}
+
+		private String resolve(RenderContext context, int stage) {
+			switch (stage) {
+				case STAGE_REPLACEMENTS:
+					return context.variables == null ? null : this.space(context.variables.get(this.name));
+
+				case STAGE_PLACEHOLDERS:
+					if (!context.placeholders)
+						return null;
+
+					final String replaced = HookManager.replacePlaceholders(context.placeholderTarget, this.raw);
+
+					return this.raw.equals(replaced) ? null : replaced;
+
+				case STAGE_HARD:
+					return this.space(lookupVariable0(context.player, context.sender, this.name));
+
+				default:
+					if (!context.replaceScript)
+						return null;
+
+					final Variable variable = Variable.findVariable(this.inner);
+
+					if (variable == null || variable.getType() != Variable.Type.FORMAT)
+						return null;
+
+					String plain = variable.buildPlain(context.sender, context.replacements);
+
+					// And we remove the white prefix that is by default added in every component
+					if (plain.startsWith(ChatColor.COLOR_CHAR + "f" + ChatColor.COLOR_CHAR + "f"))
+						plain = plain.substring(4);
+
+					return plain;
+			}
+		}
+
+		/*
+		 * Colorize and add the spaces requested by + around the variable name
+		 */
+		private String space(String value) {
+			if (value == null || value.isEmpty())
+				return value;
+
+			final boolean emptyColorless = Common.stripColors(value).isEmpty();
+
+			return (this.frontSpace && !emptyColorless ? " " : "") + Common.colorize(value) + (this.backSpace && !emptyColorless ? " " : "");
+		}
+	}
 }
@@ -0,0 +1,218 @@
+package org.mineacademy.fo.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.bukkit.Location;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.mineacademy.fo.MinecraftVersion;
+import org.mineacademy.fo.MinecraftVersion.V;
+import org.mineacademy.fo.remain.NmsEntity;
+import org.mineacademy.fo.remain.Remain;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.ProtocolLibrary;
+import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.protocol.wrappers.WrappedDataValue;
+import com.comphenix.protocol.wrappers.WrappedDataWatcher;
+import com.comphenix.protocol.wrappers.WrappedWatchableObject;
+
+import lombok.Getter;
+
+/**
+ * A hologram line that never exists in the world, it is only sent as
+ * packets to players viewing it. Requires ProtocolLib and Minecraft 1.9+.
+ * <p>
+ * Used by {@link SimpleHologram}, all methods must be called on the main thread.
+ */
+final class VirtualHologramLine {
+
+	/**
+	 * Entity metadata is sent as data values since Minecraft 1.19.3
+	 */
+	private static final boolean DATA_VALUES = MinecraftVersion.atLeast(V.v1_20) || (MinecraftVersion.equals(V.v1_19) && MinecraftVersion.getSubversion() >= 3);
+
+	/**
+	 * The NMS armor stand, never added to the world
+	 */
+	private final Object nmsEntity;
+
+	/**
+	 * The Bukkit wrapper we use to build metadata
+	 */
+	private final ArmorStand stand;
+
+	/**
+	 * The entity id clients know this line by
+	 */
+	@Getter
+	private final int entityId;
+
+	/**
+	 * Where this line is shown
+	 */
+	private Location location;
+
+	/**
+	 * Create a new line at the given location, not shown to anyone yet
+	 *
+	 * @param location
+	 */
+	VirtualHologramLine(Location location) {
+		final NmsEntity entity = new NmsEntity(location, ArmorStand.class);
+
+		this.nmsEntity = entity.getNmsEntity();
+		this.stand = (ArmorStand) entity.getBukkitEntity();
+		this.entityId = this.stand.getEntityId();
+		this.location = location.clone();
+
+		this.stand.setVisible(false);
+		this.stand.setGravity(false);
+		this.stand.setMarker(true);
+	}
+
+	/**
+	 * Spawn this line for the player with the given text
+	 *
+	 * @param player
+	 * @param text
+	 */
+	void show(Player player, String text) {
+		HookManager.sendPacket(player, this.createSpawnPacket());
+		HookManager.sendPacket(player, this.createMetadataPacket(text));
+	}
+
+	/**
+	 * Change the text the player sees
+	 *
+	 * @param player
+	 * @param text
+	 */
+	void updateText(Player player, String text) {
+		HookManager.sendPacket(player, this.createMetadataPacket(text));
+	}
+
+	/**
+	 * Move this line and send the teleport to the given viewers, returning false if this
+	 * Minecraft version needs the line to be spawned again instead
+	 *
+	 * @param location
+	 * @param viewers
+	 * @return
+	 */
+	boolean moveTo(Location location, Collection<? extends Player> viewers) {
+		this.location = location.clone();
+
+		final PacketContainer packet = new PacketContainer(PacketType.Play.Server.ENTITY_TELEPORT);
+
+		if (packet.getDoubles().size() < 3)
+			return false;
+
+		packet.getIntegers().write(0, this.entityId);
+		this.writePosition(packet);
+
+		for (final Player viewer : viewers)
+			HookManager.sendPacket(viewer, packet);
+
+		return true;
+	}
+
+	/*
+	 * Create the spawn packet at our current location
+	 */
+	private PacketContainer createSpawnPacket() {
+		final PacketContainer packet;
+
+		if (MinecraftVersion.atLeast(V.v1_19)) {
+			packet = new PacketContainer(PacketType.Play.Server.SPAWN_ENTITY);
+
+			packet.getIntegers().write(0, this.entityId);
+			packet.getUUIDs().write(0, this.stand.getUniqueId());
+			packet.getEntityTypeModifier().write(0, EntityType.ARMOR_STAND);
+
+		} else
+			packet = ProtocolLibrary.getProtocolManager().createPacketConstructor(PacketType.Play.Server.SPAWN_ENTITY_LIVING, this.nmsEntity).createPacket(this.nmsEntity);
+
+		this.writePosition(packet);
+
+		return packet;
+	}
+
+	/*
+	 * Create the metadata packet with the given name
+	 */
+	private PacketContainer createMetadataPacket(String text) {
+		Remain.setCustomName(this.stand, text);
+
+		final PacketContainer packet = new PacketContainer(PacketType.Play.Server.ENTITY_METADATA);
+		final List<WrappedWatchableObject> watchables = WrappedDataWatcher.getEntityWatcher(this.stand).getWatchableObjects();
+
+		packet.getIntegers().write(0, this.entityId);
+
+		if (DATA_VALUES) {
+			final List<WrappedDataValue> values = new ArrayList<>(watchables.size());
+
+			for (final WrappedWatchableObject watchable : watchables)
+				if (watchable != null)
+					values.add(new WrappedDataValue(watchable.getIndex(), watchable.getWatcherObject().getSerializer(), watchable.getRawValue()));
+
+			packet.getDataValueCollectionModifier().write(0, values);
+
+		} else
+			packet.getWatchableCollectionModifier().write(0, watchables);
+
+		return packet;
+	}
+
+	/*
+	 * Write our location to the packet
+	 */
+	private void writePosition(PacketContainer packet) {
+		packet.getDoubles()
+				.write(0, this.location.getX())
+				.write(1, this.location.getY())
+				.write(2, this.location.getZ());
+	}
+
+	/**
+	 * Remove the given lines from the player's client in one packet
+	 *
+	 * @param player
+	 * @param entityIds
+	 */
+	static void destroy(Player player, List<Integer> entityIds) {
+		if (entityIds.isEmpty())
+			return;
+
+		final PacketContainer packet = new PacketContainer(PacketType.Play.Server.ENTITY_DESTROY);
+
+		if (packet.getIntLists().size() > 0)
+			packet.getIntLists().write(0, entityIds);
+
+		else if (packet.getIntegerArrays().size() > 0) {
+			final int[] ids = new int[entityIds.size()];
+
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = entityIds.get(i);
+
+			packet.getIntegerArrays().write(0, ids);
+
+		} else {
+
+			// Minecraft 1.17.0 only destroyed one entity per packet
+			for (final int entityId : entityIds) {
+				final PacketContainer single = new PacketContainer(PacketType.Play.Server.ENTITY_DESTROY);
+				single.getIntegers().write(0, entityId);
+
+				HookManager.sendPacket(player, single);
+			}
+
+			return;
+		}
+
+		HookManager.sendPacket(player, packet);
+	}
+}
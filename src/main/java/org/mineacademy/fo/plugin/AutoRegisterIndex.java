@@ -0,0 +1,302 @@
+package org.mineacademy.fo.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.bukkit.event.EventHandler;
+import org.mineacademy.fo.annotation.AutoRegister;
+import org.mineacademy.fo.bungee.BungeeListener;
+import org.mineacademy.fo.enchant.SimpleEnchantment;
+import org.mineacademy.fo.menu.tool.Tool;
+import org.mineacademy.fo.model.DiscordListener;
+import org.mineacademy.fo.model.PacketListener;
+import org.mineacademy.fo.model.SimpleExpansion;
+import org.mineacademy.fo.settings.YamlStaticConfig;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Finds classes in the plugin jar that {@link AutoRegisterScanner} may need to register
+ * by reading their bytecode headers, without loading any class.
+ * <p>
+ * A class is included when it or any of its supertypes within the jar is annotated with
+ * {@link AutoRegister}, declares an {@link EventHandler}, or is one of the types we register
+ * automatically. This is a superset, the scanner still checks each loaded class as before.
+ * <p>
+ * The result is cached in the data folder together with the jar hash, so it is only
+ * computed again after the jar changes.
+ */
+final class AutoRegisterIndex {
+
+	/**
+	 * The cache file name within the plugin's data folder
+	 */
+	private static final String CACHE_FILE = ".autoregister-index";
+
+	/**
+	 * The abstract and interface class access flags
+	 */
+	private static final int ABSTRACT_OR_INTERFACE = 0x0400 | 0x0200;
+
+	/**
+	 * Descriptors that mark a class as relevant when found in its constant pool,
+	 * resolved at runtime so they follow the relocated package
+	 */
+	private static final Set<String> MARKER_DESCRIPTORS = new HashSet<>();
+
+	/**
+	 * Supertypes that mark their subclasses as relevant
+	 */
+	private static final Set<String> MARKER_TYPES = new HashSet<>();
+
+	static {
+		MARKER_DESCRIPTORS.add("L" + toInternalName(AutoRegister.class) + ";");
+		MARKER_DESCRIPTORS.add("L" + toInternalName(EventHandler.class) + ";");
+
+		for (final Class<?> type : new Class<?>[] { Tool.class, SimpleEnchantment.class, BungeeListener.class, SimpleExpansion.class, PacketListener.class, DiscordListener.class, YamlStaticConfig.class })
+			MARKER_TYPES.add(toInternalName(type));
+	}
+
+	/**
+	 * Return the names of classes in the jar that may be registered, reading them
+	 * from the cache when the jar did not change
+	 *
+	 * @param jar
+	 * @param dataFolder
+	 * @return
+	 * @throws IOException
+	 */
+	static List<String> findClassNames(File jar, File dataFolder) throws IOException {
+		final String hash = hash(jar);
+		final File cache = new File(dataFolder, CACHE_FILE);
+
+		if (cache.exists())
+			try {
+				final List<String> lines = Files.readAllLines(cache.toPath(), StandardCharsets.UTF_8);
+
+				if (!lines.isEmpty() && lines.get(0).equals(hash))
+					return lines.subList(1, lines.size());
+
+			} catch (final IOException ex) {
+				// Corrupted, build it again
+			}
+
+		final List<String> classNames = scan(jar);
+		final List<String> lines = new ArrayList<>(classNames.size() + 1);
+
+		lines.add(hash);
+		lines.addAll(classNames);
+
+		try {
+			dataFolder.mkdirs();
+
+			Files.write(cache.toPath(), lines, StandardCharsets.UTF_8);
+
+		} catch (final IOException ex) {
+			// Read only folder, we will scan again next time
+		}
+
+		return classNames;
+	}
+
+	/*
+	 * Read the header of every class in the jar and return those that are relevant
+	 */
+	private static List<String> scan(File jar) throws IOException {
+		final Map<String, ClassHeader> headers = new HashMap<>();
+		final List<String> classNames = new ArrayList<>();
+
+		try (final JarFile file = new JarFile(jar)) {
+			for (final Enumeration<JarEntry> entries = file.entries(); entries.hasMoreElements();) {
+				final JarEntry entry = entries.nextElement();
+				final String name = entry.getName();
+
+				// Ignore files such as settings.yml and multi release duplicates
+				if (!name.endsWith(".class") || name.startsWith("META-INF/"))
+					continue;
+
+				try (final InputStream input = file.getInputStream(entry)) {
+					final ClassHeader header = ClassHeader.read(new DataInputStream(new BufferedInputStream(input)));
+
+					if (header != null)
+						headers.put(header.name, header);
+
+				} catch (final IOException ex) {
+
+					// Class file format we do not understand, let the scanner load it
+					classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+				}
+			}
+		}
+
+		final Map<String, Boolean> relevant = new HashMap<>();
+
+		for (final ClassHeader header : headers.values())
+			if ((header.access & ABSTRACT_OR_INTERFACE) == 0 && isRelevant(header.name, headers, relevant, new HashSet<>()))
+				classNames.add(header.name.replace('/', '.'));
+
+		classNames.sort(null);
+
+		return classNames;
+	}
+
+	/*
+	 * Return true if the class or any of its supertypes in the jar is marked
+	 */
+	private static boolean isRelevant(String name, Map<String, ClassHeader> headers, Map<String, Boolean> relevant, Set<String> visiting) {
+		final Boolean cached = relevant.get(name);
+
+		if (cached != null)
+			return cached;
+
+		if (MARKER_TYPES.contains(name))
+			return true;
+
+		final ClassHeader header = headers.get(name);
+
+		// Outside of our jar such as Bukkit classes, or a broken hierarchy
+		if (header == null || !visiting.add(name))
+			return false;
+
+		boolean result = header.marked;
+
+		if (!result && header.superName != null)
+			result = isRelevant(header.superName, headers, relevant, visiting);
+
+		for (int i = 0; !result && i < header.interfaces.length; i++)
+			result = isRelevant(header.interfaces[i], headers, relevant, visiting);
+
+		relevant.put(name, result);
+
+		return result;
+	}
+
+	/*
+	 * Return the SHA-1 hash of the file
+	 */
+	private static String hash(File file) throws IOException {
+		try (final InputStream input = new FileInputStream(file)) {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			final byte[] buffer = new byte[64 * 1024];
+			int read;
+
+			while ((read = input.read(buffer)) != -1)
+				digest.update(buffer, 0, read);
+
+			final StringBuilder hash = new StringBuilder();
+
+			for (final byte part : digest.digest())
+				hash.append(String.format("%02x", part));
+
+			return hash.toString();
+
+		} catch (final NoSuchAlgorithmException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/*
+	 * Return the JVM internal name such as org/bukkit/event/Listener
+	 */
+	private static String toInternalName(Class<?> clazz) {
+		return clazz.getName().replace('.', '/');
+	}
+
+	/*
+	 * The parts of a class file we need
+	 */
+	@RequiredArgsConstructor
+	private static final class ClassHeader {
+		private final String name;
+		private final String superName;
+		private final String[] interfaces;
+		private final int access;
+		private final boolean marked;
+
+		/*
+		 * Parse the constant pool and class declaration, returning null if not a class file
+		 */
+		private static ClassHeader read(DataInputStream input) throws IOException {
+			if (input.readInt() != 0xCAFEBABE)
+				return null;
+
+			input.readUnsignedShort(); // minor version
+			input.readUnsignedShort(); // major version
+
+			final int poolSize = input.readUnsignedShort();
+			final String[] utf8 = new String[poolSize];
+			final int[] classNames = new int[poolSize];
+			boolean marked = false;
+
+			for (int index = 1; index < poolSize; index++) {
+				final int tag = input.readUnsignedByte();
+
+				switch (tag) {
+					case 1: // Utf8
+						utf8[index] = input.readUTF();
+
+						if (MARKER_DESCRIPTORS.contains(utf8[index]))
+							marked = true;
+
+						break;
+					case 7: // Class
+						classNames[index] = input.readUnsignedShort();
+						break;
+					case 8: // String
+					case 16: // MethodType
+					case 19: // Module
+					case 20: // Package
+						input.skipBytes(2);
+						break;
+					case 15: // MethodHandle
+						input.skipBytes(3);
+						break;
+					case 3: // Integer
+					case 4: // Float
+					case 9: // Fieldref
+					case 10: // Methodref
+					case 11: // InterfaceMethodref
+					case 12: // NameAndType
+					case 17: // Dynamic
+					case 18: // InvokeDynamic
+						input.skipBytes(4);
+						break;
+					case 5: // Long
+					case 6: // Double
+						input.skipBytes(8);
+						index++;
+						break;
+					default:
+						throw new IOException("Unknown constant pool tag " + tag);
+				}
+			}
+
+			final int access = input.readUnsignedShort();
+			final String name = utf8[classNames[input.readUnsignedShort()]];
+			final int superIndex = input.readUnsignedShort();
+			final String[] interfaces = new String[input.readUnsignedShort()];
+
+			for (int i = 0; i < interfaces.length; i++)
+				interfaces[i] = utf8[classNames[input.readUnsignedShort()]];
+
+			return new ClassHeader(name, superIndex == 0 ? null : utf8[classNames[superIndex]], interfaces, access, marked);
+		}
+	}
+}
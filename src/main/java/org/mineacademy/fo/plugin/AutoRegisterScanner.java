@@ -385,36 +385,53 @@ final class AutoRegisterScanner {
 		// Ignore anonymous inner classes
 		final Pattern anonymousClassPattern = Pattern.compile("\\w+\\$[0-9]$");
 
+		for (final String className : findClassNames()) {
+			Class<?> clazz = null;
+
+			// Look up the Java class, silently ignore if failing
+			try {
+				clazz = SimplePlugin.class.getClassLoader().loadClass(className);
+
+			} catch (final ClassFormatError | VerifyError | NoClassDefFoundError | ClassNotFoundException | IncompatibleClassChangeError error) {
+				continue;
+			}
+
+			// Ignore abstract or anonymous classes
+			if (!Modifier.isAbstract(clazz.getModifiers()) && !anonymousClassPattern.matcher(className).find())
+				classes.add(clazz);
+		}
+
+		return classes;
+	}
+
+	/*
+	 * Return names of classes worth loading from the index, or all classes in the jar if it fails
+	 */
+	private static List<String> findClassNames() {
+		try {
+			return AutoRegisterIndex.findClassNames(SimplePlugin.getSource(), SimplePlugin.getData());
+
+		} catch (final Throwable t) {
+			Common.warning("Failed to index classes for auto registration, loading all classes instead: " + t);
+		}
+
+		final List<String> classNames = new ArrayList<>();
+
 		try (final JarFile file = new JarFile(SimplePlugin.getSource())) {
 			for (final Enumeration<JarEntry> entry = file.entries(); entry.hasMoreElements();) {
 				final JarEntry jar = entry.nextElement();
 				final String name = jar.getName().replace("/", ".");
 
 				// Ignore files such as settings.yml
-				if (!name.endsWith(".class"))
-					continue;
-
-				final String className = name.substring(0, name.length() - 6);
-				Class<?> clazz = null;
-
-				// Look up the Java class, silently ignore if failing
-				try {
-					clazz = SimplePlugin.class.getClassLoader().loadClass(className);
-
-				} catch (final ClassFormatError | VerifyError | NoClassDefFoundError | ClassNotFoundException | IncompatibleClassChangeError error) {
-					continue;
-				}
-
-				// Ignore abstract or anonymous classes
-				if (!Modifier.isAbstract(clazz.getModifiers()) && !anonymousClassPattern.matcher(className).find())
-					classes.add(clazz);
+				if (name.endsWith(".class"))
+					classNames.add(name.substring(0, name.length() - 6));
 			}
 
 		} catch (final Throwable t) {
 			Remain.sneaky(t);
 		}
 
-		return classes;
+		return classNames;
 	}
 
 	/*
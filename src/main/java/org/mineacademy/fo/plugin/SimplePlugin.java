@@ -639,6 +639,9 @@ public abstract class SimplePlugin extends JavaPlugin implements Listener {
 			Common.log("&cPlugin might not shut down property. Got " + t.getClass().getSimpleName() + ": " + t.getMessage());
 		}
 
+		// Send packets still waiting for the end of the tick
+		Remain.setPacketBatching(false);
+
 		if (CompMetadata.isLegacy() && CompMetadata.ENABLE_LEGACY_FILE_STORAGE)
 			CompMetadata.MetadataFile.getInstance().save();
 
@@ -783,6 +786,9 @@ public abstract class SimplePlugin extends JavaPlugin implements Listener {
 
 			this.onReloadablesStart();
 
+			// Tool items may have changed with settings
+			Tool.onReload();
+
 			this.startingReloadables = false;
 
 			if (HookManager.isDiscordSRVLoaded()) {
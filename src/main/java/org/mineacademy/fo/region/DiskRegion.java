@@ -3,6 +3,8 @@ package org.mineacademy.fo.region;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,6 +14,7 @@ import javax.annotation.Nullable;
 
 import org.bukkit.Color;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
@@ -41,6 +44,31 @@ public final class DiskRegion extends YamlConfig {
 	 */
 	private static final ConfigItems<DiskRegion> loadedRegions = ConfigItems.fromFolder("regions", DiskRegion.class);
 
+	/**
+	 * Regions spanning more chunks than this are not put into the chunk index and checked one by one
+	 */
+	private static final int MAX_INDEXED_CHUNKS = 4096;
+
+	/**
+	 * Whole regions by world name and chunk key, rebuilt lazily after regions change
+	 */
+	private static final Map<String, Map<Long, List<DiskRegion>>> chunkIndex = new HashMap<>();
+
+	/**
+	 * Whole regions by world name that are too large for the chunk index
+	 */
+	private static final Map<String, List<DiskRegion>> largeRegions = new HashMap<>();
+
+	/**
+	 * Set when regions changed and the index must be rebuilt
+	 */
+	private static boolean indexOutdated = true;
+
+	/**
+	 * How many regions were loaded when we last built the index
+	 */
+	private static int indexedRegionCount = 0;
+
 	/**
 	 * The way for us to get the created region for a player, which is typically used in PlayerCache
 	 * in plugins and this class is not available at the library level.
@@ -109,6 +137,8 @@ public final class DiskRegion extends YamlConfig {
 			else
 				Common.error(ex, "Failed to load region from map: " + map);
 		}
+
+		indexOutdated = true;
 	}
 
 	@Override
@@ -116,6 +146,9 @@ public final class DiskRegion extends YamlConfig {
 		if (this.border != null)
 			for (final Map.Entry<String, Object> entry : this.border.serialize().entrySet())
 				this.set(entry.getKey(), entry.getValue());
+
+		// The border might have been changed before saving
+		indexOutdated = true;
 	}
 
 	/**
@@ -236,7 +269,10 @@ public final class DiskRegion extends YamlConfig {
 	 * @see ConfigItems#loadOrCreateItem(String)
 	 */
 	public static DiskRegion createRegion(@NonNull final String name, @NonNull final VisualizedRegion region) {
-		return loadedRegions.loadOrCreateItem(name, () -> new DiskRegion(name, region));
+		final DiskRegion diskRegion = loadedRegions.loadOrCreateItem(name, () -> new DiskRegion(name, region));
+		indexOutdated = true;
+
+		return diskRegion;
 	}
 
 	/**
@@ -244,6 +280,8 @@ public final class DiskRegion extends YamlConfig {
 	 */
 	public static void loadRegions() {
 		loadedRegions.loadItems();
+
+		indexOutdated = true;
 	}
 
 	/**
@@ -252,6 +290,8 @@ public final class DiskRegion extends YamlConfig {
 	 */
 	public static void removeRegion(final DiskRegion region) {
 		loadedRegions.removeItem(region);
+
+		indexOutdated = true;
 	}
 
 	/**
@@ -289,13 +329,49 @@ public final class DiskRegion extends YamlConfig {
 	 * @return
 	 */
 	public static List<DiskRegion> findRegions(final Location location) {
-		final List<DiskRegion> foundRegions = new ArrayList<>();
+		return findRegions(location.getWorld(), (int) location.getX(), (int) location.getY(), (int) location.getZ());
+	}
 
-		for (final DiskRegion region : getRegions())
-			if (region.border != null && region.border.isWhole() && region.border.isWithin(location))
-				foundRegions.add(region);
+	/**
+	 * Return regions at the given block coordinates, using a chunk index
+	 * so only regions near the coordinates are checked
+	 *
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return
+	 */
+	public static List<DiskRegion> findRegions(@NonNull final World world, final int x, final int y, final int z) {
+		updateIndex();
 
-		return foundRegions;
+		final String worldName = world.getName();
+		List<DiskRegion> foundRegions = null;
+
+		final List<DiskRegion> large = largeRegions.get(worldName);
+
+		if (large != null)
+			for (final DiskRegion region : large)
+				if (region.border.isWithinBounds(x, y, z)) {
+					if (foundRegions == null)
+						foundRegions = new ArrayList<>();
+
+					foundRegions.add(region);
+				}
+
+		final Map<Long, List<DiskRegion>> worldIndex = chunkIndex.get(worldName);
+		final List<DiskRegion> nearby = worldIndex != null ? worldIndex.get(toChunkKey(x >> 4, z >> 4)) : null;
+
+		if (nearby != null)
+			for (final DiskRegion region : nearby)
+				if (region.border.isWithinBounds(x, y, z)) {
+					if (foundRegions == null)
+						foundRegions = new ArrayList<>();
+
+					foundRegions.add(region);
+				}
+
+		return foundRegions != null ? foundRegions : Collections.emptyList();
 	}
 
 	/**
@@ -307,13 +383,55 @@ public final class DiskRegion extends YamlConfig {
 	public static List<String> findRegionNames(final Location location) {
 		final List<String> foundRegions = new ArrayList<>();
 
-		for (final DiskRegion region : getRegions())
-			if (region.border != null && region.border.isWhole() && region.border.isWithin(location))
-				foundRegions.add(region.getName());
+		for (final DiskRegion region : findRegions(location))
+			foundRegions.add(region.getName());
 
 		return foundRegions;
 	}
 
+	/*
+	 * Rebuild the chunk index if regions changed since we last built it
+	 */
+	private static void updateIndex() {
+		if (!indexOutdated && indexedRegionCount == loadedRegions.getItemNames().size())
+			return;
+
+		chunkIndex.clear();
+		largeRegions.clear();
+
+		for (final DiskRegion region : getRegions()) {
+			final VisualizedRegion border = region.border;
+
+			if (border == null || !border.isWhole())
+				continue;
+
+			final int minChunkX = border.getMinX() >> 4, maxChunkX = border.getMaxX() >> 4;
+			final int minChunkZ = border.getMinZ() >> 4, maxChunkZ = border.getMaxZ() >> 4;
+
+			if ((long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1) > MAX_INDEXED_CHUNKS) {
+				largeRegions.computeIfAbsent(border.getWorldName(), world -> new ArrayList<>()).add(region);
+
+				continue;
+			}
+
+			final Map<Long, List<DiskRegion>> worldIndex = chunkIndex.computeIfAbsent(border.getWorldName(), world -> new HashMap<>());
+
+			for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++)
+				for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++)
+					worldIndex.computeIfAbsent(toChunkKey(chunkX, chunkZ), key -> new ArrayList<>(2)).add(region);
+		}
+
+		indexedRegionCount = loadedRegions.getItemNames().size();
+		indexOutdated = false;
+	}
+
+	/*
+	 * Pack chunk coordinates into a single key
+	 */
+	private static long toChunkKey(final int chunkX, final int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
 	/**
 	 * @return
 	 * @see ConfigItems#getItems()
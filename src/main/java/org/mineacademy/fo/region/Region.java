@@ -22,6 +22,7 @@ import org.mineacademy.fo.exception.FoException;
 import org.mineacademy.fo.model.ConfigSerializable;
 import org.mineacademy.fo.remain.CompMaterial;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -48,6 +49,18 @@ public class Region implements ConfigSerializable {
 	 */
 	private Location secondary;
 
+	/**
+	 * The lowest and highest block coordinates, updated when points change
+	 */
+	@Getter(AccessLevel.PACKAGE)
+	private int minX, minY, minZ, maxX, maxY, maxZ;
+
+	/**
+	 * The world name of the primary point, or null if the region is not whole
+	 */
+	@Getter(AccessLevel.PACKAGE)
+	private String worldName;
+
 	/**
 	 * Create a new region
 	 *
@@ -79,6 +92,33 @@ public class Region implements ConfigSerializable {
 
 			this.secondary = secondary;
 		}
+
+		this.updateBounds();
+	}
+
+	/*
+	 * Recalculate the cached bounds from the points
+	 */
+	private void updateBounds() {
+		if (this.primary == null || this.secondary == null) {
+			this.worldName = null;
+
+			return;
+		}
+
+		final int x1 = this.primary.getBlockX(), x2 = this.secondary.getBlockX(),
+				y1 = this.primary.getBlockY(), y2 = this.secondary.getBlockY(),
+				z1 = this.primary.getBlockZ(), z2 = this.secondary.getBlockZ();
+
+		this.minX = Math.min(x1, x2);
+		this.minY = Math.min(y1, y2);
+		this.minZ = Math.min(z1, z2);
+
+		this.maxX = Math.max(x1, x2);
+		this.maxY = Math.max(y1, y2);
+		this.maxZ = Math.max(z1, z2);
+
+		this.worldName = this.primary.getWorld().getName();
 	}
 
 	/*
@@ -264,20 +304,35 @@ public class Region implements ConfigSerializable {
 	public final boolean isWithin(@NonNull final Location location) {
 		Valid.checkBoolean(this.isWhole(), "Cannot perform isWithin on a non-complete region: " + this.toString());
 
-		if (!location.getWorld().getName().equals(this.primary.getWorld().getName()))
+		if (!location.getWorld().getName().equals(this.worldName))
 			return false;
 
-		final Location[] centered = this.getCorrectedPoints();
-		final Location primary = centered[0];
-		final Location secondary = centered[1];
+		return this.isWithinBounds((int) location.getX(), (int) location.getY(), (int) location.getZ());
+	}
 
-		final int x = (int) location.getX();
-		final int y = (int) location.getY();
-		final int z = (int) location.getZ();
+	/**
+	 * Return true if the given block coordinates in the given world are within this region.
+	 * This does not create any objects so it is safe to call very often.
+	 *
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return
+	 */
+	public final boolean isWithin(@NonNull final World world, final int x, final int y, final int z) {
+		Valid.checkBoolean(this.isWhole(), "Cannot perform isWithin on a non-complete region: " + this.toString());
+
+		return world.getName().equals(this.worldName) && this.isWithinBounds(x, y, z);
+	}
 
-		return x >= primary.getX() && x <= secondary.getX()
-				&& y >= primary.getY() && y <= secondary.getY()
-				&& z >= primary.getZ() && z <= secondary.getZ();
+	/*
+	 * Return true if the block coordinates are within our bounds, ignoring the world
+	 */
+	final boolean isWithinBounds(final int x, final int y, final int z) {
+		return x >= this.minX && x <= this.maxX
+				&& y >= this.minY && y <= this.maxY
+				&& z >= this.minZ && z <= this.maxZ;
 	}
 
 	/**
@@ -354,18 +409,14 @@ public class Region implements ConfigSerializable {
 	public final boolean isWithinXZ(@NonNull final Location location) {
 		Valid.checkBoolean(this.isWhole(), "Cannot perform isWithinXZ on a non-complete region: " + this.toString());
 
-		if (!location.getWorld().getName().equals(this.primary.getWorld().getName()))
+		if (!location.getWorld().getName().equals(this.worldName))
 			return false;
 
-		final Location[] centered = this.getCorrectedPoints();
-		final Location primary = centered[0];
-		final Location secondary = centered[1];
-
 		final int x = (int) location.getX();
 		final int z = (int) location.getZ();
 
-		return x >= primary.getX() && x <= secondary.getX()
-				&& z >= primary.getZ() && z <= secondary.getZ();
+		return x >= this.minX && x <= this.maxX
+				&& z >= this.minZ && z <= this.maxZ;
 	}
 
 	/**
@@ -384,6 +435,7 @@ public class Region implements ConfigSerializable {
 	 */
 	public final void setPrimary(final Location primary) {
 		this.primary = primary;
+		this.updateBounds();
 	}
 
 	/**
@@ -393,6 +445,7 @@ public class Region implements ConfigSerializable {
 	 */
 	public final void setSecondary(final Location secondary) {
 		this.secondary = secondary;
+		this.updateBounds();
 	}
 
 	/**
@@ -1736,6 +1736,53 @@ public enum CompMaterial {
 		}
 	}
 
+	/**
+	 * The result of {@link #fromMaterial(Material)} indexed by {@link Material#ordinal()}, null if unsupported.
+	 */
+	private static final CompMaterial[] BY_MATERIAL;
+
+	/**
+	 * The result of {@link #fromItem(ItemStack)} indexed by {@link Material#ordinal()} on 1.13+ where data values
+	 * do not matter, null on older versions.
+	 */
+	private static final CompMaterial[] BY_ITEM;
+
+	/**
+	 * The result of {@link #fromItem(ItemStack)} on older versions indexed by {@link Material#ordinal()}
+	 * and then by the data value, filled when first looked up since most combinations are never used.
+	 */
+	private static final CompMaterial[][] LEGACY_BY_ITEM;
+
+	/**
+	 * The result of {@link #fromBlock(Block)} on older versions, see {@link #LEGACY_BY_ITEM}.
+	 */
+	private static final CompMaterial[][] LEGACY_BY_BLOCK;
+
+	static {
+		final Material[] materials = Material.values();
+
+		BY_MATERIAL = new CompMaterial[materials.length];
+
+		for (final Material material : materials)
+			BY_MATERIAL[material.ordinal()] = resolveMaterial(material);
+
+		if (Data.ISFLAT) {
+			BY_ITEM = new CompMaterial[materials.length];
+
+			for (final Material material : materials)
+				BY_ITEM[material.ordinal()] = resolveItem(material, (byte) 0);
+
+			LEGACY_BY_ITEM = null;
+			LEGACY_BY_BLOCK = null;
+
+		} else {
+			BY_ITEM = null;
+
+			LEGACY_BY_ITEM = new CompMaterial[materials.length][];
+			LEGACY_BY_BLOCK = new CompMaterial[materials.length][];
+		}
+	}
+
 	/**
 	 * The data value of this material <a href="https://minecraft.wiki/w/Java_Edition_data_values/Pre-flattening">pre-flattening</a>.
 	 *
@@ -2472,7 +2519,7 @@ public enum CompMaterial {
 	 * @return
 	 */
 	public static CompMaterial fromBlock(final Block block) {
-		return MinecraftVersion.atLeast(V.v1_13) ? fromMaterial(block.getType()) : fromLegacy(block.getType().toString(), block.getData());
+		return Data.ISFLAT ? fromMaterial(block.getType()) : lookupLegacy(LEGACY_BY_BLOCK, block.getType(), block.getData(), false);
 	}
 
 	/**
@@ -2487,17 +2534,16 @@ public enum CompMaterial {
 	 * @since 2.0.0
 	 */
 	public static CompMaterial fromItem(@NonNull ItemStack item) {
-		final String material = item.getType().name();
-		final byte data = (byte) (Data.ISFLAT || item.getType().getMaxDurability() > 0 ? 0 : item.getDurability());
+		final Material type = item.getType();
+		final CompMaterial compmaterial;
 
-		CompMaterial compmaterial = fromLegacy(material, data);
+		if (Data.ISFLAT) {
+			final int ordinal = type.ordinal();
 
-		// Exception for legacy eggs for non existing entities
-		if (material.equals("MONSTER_EGG") && compmaterial == null)
-			return CompMaterial.SHEEP_SPAWN_EGG;
+			compmaterial = ordinal < BY_ITEM.length ? BY_ITEM[ordinal] : resolveItem(type, (byte) 0);
 
-		if (compmaterial == null)
-			compmaterial = fromString(material);
+		} else
+			compmaterial = lookupLegacy(LEGACY_BY_ITEM, type, (byte) (type.getMaxDurability() > 0 ? 0 : item.getDurability()), true);
 
 		Valid.checkNotNull(compmaterial, "Could not convert item to CompMaterial. Item: " + item);
 
@@ -2511,17 +2557,68 @@ public enum CompMaterial {
 	 * @return
 	 */
 	public static CompMaterial fromMaterial(@NonNull Material material) {
+		final int ordinal = material.ordinal();
+		final CompMaterial compmaterial = ordinal < BY_MATERIAL.length ? BY_MATERIAL[ordinal] : resolveMaterial(material);
 
-		try {
-			return CompMaterial.valueOf(material.toString());
+		Valid.checkNotNull(compmaterial, "Unsupported material with no data value: " + material.name());
 
-		} catch (final Throwable t) {
-			final CompMaterial compmaterial = fromLegacy(material.name(), UNKNOWN_DATA_VALUE);
-			Valid.checkNotNull(compmaterial, "Unsupported material with no data value: " + material.name());
+		return compmaterial;
+	}
+
+	/*
+	 * Return the cached legacy item or block conversion, resolving and caching it if not looked up yet.
+	 * Materials added after we built the table, such as by server mods, are resolved each time.
+	 */
+	private static CompMaterial lookupLegacy(CompMaterial[][] table, Material material, byte data, boolean item) {
+		final int ordinal = material.ordinal();
+
+		if (ordinal >= table.length)
+			return item ? resolveItem(material, data) : fromLegacy(material.toString(), data);
+
+		CompMaterial[] byData = table[ordinal];
+
+		if (byData == null) {
+			byData = new CompMaterial[256];
 
-			return compmaterial;
+			table[ordinal] = byData;
+		}
+
+		final int index = data & 0xFF;
+		CompMaterial compmaterial = byData[index];
 
+		if (compmaterial == null) {
+			compmaterial = item ? resolveItem(material, data) : fromLegacy(material.toString(), data);
+
+			byData[index] = compmaterial;
 		}
+
+		return compmaterial;
+	}
+
+	/*
+	 * Convert the material the slow way, used to build our tables
+	 */
+	private static CompMaterial resolveMaterial(Material material) {
+		final CompMaterial compmaterial = getIfPresent(material.toString());
+
+		return compmaterial != null ? compmaterial : fromLegacy(material.name(), UNKNOWN_DATA_VALUE);
+	}
+
+	/*
+	 * Convert the item material with the given data value the slow way, used to build our tables
+	 */
+	private static CompMaterial resolveItem(Material type, byte data) {
+		final String material = type.name();
+		CompMaterial compmaterial = fromLegacy(material, data);
+
+		// Exception for legacy eggs for non existing entities
+		if (material.equals("MONSTER_EGG") && compmaterial == null)
+			return CompMaterial.SHEEP_SPAWN_EGG;
+
+		if (compmaterial == null)
+			compmaterial = fromString(material);
+
+		return compmaterial;
 	}
 
 	/**
@@ -0,0 +1,293 @@
+package org.mineacademy.fo.remain;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.bukkit.block.BlockState;
+import org.bukkit.entity.Player;
+import org.mineacademy.fo.MinecraftVersion;
+import org.mineacademy.fo.MinecraftVersion.V;
+import org.mineacademy.fo.ReflectionUtil;
+
+/**
+ * Version specific NMS members we call very often, resolved once and bound
+ * as method handles so the JIT can inline them like direct calls.
+ * <p>
+ * Used by {@link Remain}, call methods there instead.
+ */
+final class NmsAccessors {
+
+	/**
+	 * CraftPlayer#getHandle() typed as (Player) Object
+	 */
+	private static final MethodHandle PLAYER_HANDLE;
+
+	/**
+	 * The EntityPlayer connection field getter typed as (Object) Object
+	 */
+	private static final MethodHandle PLAYER_CONNECTION;
+
+	/**
+	 * PlayerConnection#sendPacket(Packet) typed as (Object, Object) void
+	 */
+	private static final MethodHandle SEND_PACKET;
+
+	/**
+	 * Why we failed to resolve the members above, or null if we did not
+	 */
+	private static final Throwable FAILURE;
+
+	/**
+	 * Netty's Channel#write(Object) typed as (Object, Object) void, null if unavailable
+	 */
+	private static final MethodHandle CHANNEL_WRITE;
+
+	/**
+	 * Netty's Channel#flush() typed as (Object) void, null if unavailable
+	 */
+	private static final MethodHandle CHANNEL_FLUSH;
+
+	/**
+	 * The Netty channel getter per player connection class typed as (Object) Object, null if not found
+	 */
+	private static final ClassValue<MethodHandle> CHANNEL_GETTERS = new ClassValue<MethodHandle>() {
+
+		@Override
+		protected MethodHandle computeValue(Class<?> type) {
+			return findChannelGetter(type);
+		}
+	};
+
+	/**
+	 * The getHandle() or getTileEntity() method per CraftBukkit class, null if it has none
+	 */
+	private static final ClassValue<MethodHandle> HANDLE_GETTERS = new ClassValue<MethodHandle>() {
+
+		@Override
+		protected MethodHandle computeValue(Class<?> type) {
+			return unreflectGetter(type, BlockState.class.isAssignableFrom(type) ? "getTileEntity" : "getHandle");
+		}
+	};
+
+	/**
+	 * The getServer() method per CraftServer class, null if it has none
+	 */
+	private static final ClassValue<MethodHandle> SERVER_GETTERS = new ClassValue<MethodHandle>() {
+
+		@Override
+		protected MethodHandle computeValue(Class<?> type) {
+			return unreflectGetter(type, "getServer");
+		}
+	};
+
+	static {
+		MethodHandle playerHandle = null;
+		MethodHandle playerConnection = null;
+		MethodHandle sendPacket = null;
+		Throwable failure = null;
+
+		try {
+			final boolean atLeast1_4 = MinecraftVersion.atLeast(V.v1_4);
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+			final Method getHandle = ReflectionUtil.getOBCClass("entity.CraftPlayer").getMethod("getHandle");
+
+			final Field connectionField = ReflectionUtil.getNMSClass("EntityPlayer", "net.minecraft.server.level.EntityPlayer")
+					.getField(MinecraftVersion.atLeast(V.v1_20) ? "c" : MinecraftVersion.atLeast(V.v1_17) ? "b" : atLeast1_4 ? "playerConnection" : "netServerHandler");
+
+			final Method sendPacketMethod = ReflectionUtil.getNMSClass(atLeast1_4 ? "PlayerConnection" : "NetServerHandler", "net.minecraft.server.network.PlayerConnection")
+					.getMethod(MinecraftVersion.atLeast(V.v1_18) ? "a" : "sendPacket", ReflectionUtil.getNMSClass("Packet", "net.minecraft.network.protocol.Packet"));
+
+			playerHandle = lookup.unreflect(getHandle).asType(MethodType.methodType(Object.class, Player.class));
+			playerConnection = lookup.unreflectGetter(connectionField).asType(MethodType.methodType(Object.class, Object.class));
+			sendPacket = lookup.unreflect(sendPacketMethod).asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+		} catch (final Throwable t) {
+			playerHandle = null;
+			playerConnection = null;
+			sendPacket = null;
+			failure = t;
+		}
+
+		PLAYER_HANDLE = playerHandle;
+		PLAYER_CONNECTION = playerConnection;
+		SEND_PACKET = sendPacket;
+		FAILURE = failure;
+
+		MethodHandle channelWrite = null;
+		MethodHandle channelFlush = null;
+
+		try {
+			final Class<?> channelClass = Class.forName("io.netty.channel.Channel");
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+			channelWrite = lookup.unreflect(channelClass.getMethod("write", Object.class)).asType(MethodType.methodType(void.class, Object.class, Object.class));
+			channelFlush = lookup.unreflect(channelClass.getMethod("flush")).asType(MethodType.methodType(void.class, Object.class));
+
+		} catch (final Throwable t) {
+			channelWrite = null;
+			channelFlush = null;
+		}
+
+		CHANNEL_WRITE = channelWrite;
+		CHANNEL_FLUSH = channelFlush;
+	}
+
+	// Static access only
+	private NmsAccessors() {
+	}
+
+	/**
+	 * Throw the error we got when resolving packet members, if any
+	 *
+	 * @throws Throwable
+	 */
+	static void checkLoaded() throws Throwable {
+		if (FAILURE != null)
+			throw FAILURE;
+	}
+
+	/**
+	 * Return true if we can send packets on this server
+	 *
+	 * @return
+	 */
+	static boolean isLoaded() {
+		return FAILURE == null;
+	}
+
+	/**
+	 * Return the player connection of the given player, may be null if the player is still connecting
+	 *
+	 * @param player
+	 * @return
+	 * @throws Throwable
+	 */
+	static Object getPlayerConnection(Player player) throws Throwable {
+		final Object handle = PLAYER_HANDLE.invokeExact(player);
+
+		return PLAYER_CONNECTION.invokeExact(handle);
+	}
+
+	/**
+	 * Send the packet to the player connection
+	 *
+	 * @param playerConnection
+	 * @param packet
+	 * @throws Throwable
+	 */
+	static void sendPacket(Object playerConnection, Object packet) throws Throwable {
+		SEND_PACKET.invokeExact(playerConnection, packet);
+	}
+
+	/**
+	 * Return the Netty channel of the player connection, or null if we cannot find it
+	 *
+	 * @param playerConnection
+	 * @return
+	 * @throws Throwable
+	 */
+	static Object getChannel(Object playerConnection) throws Throwable {
+		if (CHANNEL_WRITE == null)
+			return null;
+
+		final MethodHandle getter = CHANNEL_GETTERS.get(playerConnection.getClass());
+
+		return getter != null ? getter.invokeExact(playerConnection) : null;
+	}
+
+	/**
+	 * Write the packet to the channel without flushing it
+	 *
+	 * @param channel
+	 * @param packet
+	 * @throws Throwable
+	 */
+	static void writeToChannel(Object channel, Object packet) throws Throwable {
+		CHANNEL_WRITE.invokeExact(channel, packet);
+	}
+
+	/**
+	 * Flush packets written to the channel
+	 *
+	 * @param channel
+	 * @throws Throwable
+	 */
+	static void flushChannel(Object channel) throws Throwable {
+		CHANNEL_FLUSH.invokeExact(channel);
+	}
+
+	/**
+	 * Return the getHandle() method, or getTileEntity() for block states, of the given
+	 * CraftBukkit object, or null if it has none
+	 *
+	 * @param craftObject
+	 * @return
+	 */
+	static MethodHandle getHandleGetter(Object craftObject) {
+		return HANDLE_GETTERS.get(craftObject.getClass());
+	}
+
+	/**
+	 * Return the getServer() method of the given CraftServer, or null if it has none
+	 *
+	 * @param craftServer
+	 * @return
+	 */
+	static MethodHandle getServerGetter(Object craftServer) {
+		return SERVER_GETTERS.get(craftServer.getClass());
+	}
+
+	/*
+	 * Find the network manager field in the player connection and its channel field,
+	 * by type since their names differ across versions
+	 */
+	private static MethodHandle findChannelGetter(Class<?> connectionClass) {
+		try {
+			final Class<?> channelClass = Class.forName("io.netty.channel.Channel");
+
+			for (Class<?> type = connectionClass; type != null && type != Object.class; type = type.getSuperclass())
+				for (final Field managerField : type.getDeclaredFields()) {
+					if (Modifier.isStatic(managerField.getModifiers()) || managerField.getType().isPrimitive())
+						continue;
+
+					for (final Field channelField : managerField.getType().getDeclaredFields())
+						if (!Modifier.isStatic(channelField.getModifiers()) && channelClass.isAssignableFrom(channelField.getType())) {
+							managerField.setAccessible(true);
+							channelField.setAccessible(true);
+
+							final MethodHandles.Lookup lookup = MethodHandles.lookup();
+							final MethodType getterType = MethodType.methodType(Object.class, Object.class);
+
+							return MethodHandles.filterReturnValue(lookup.unreflectGetter(managerField).asType(getterType), lookup.unreflectGetter(channelField).asType(getterType));
+						}
+				}
+
+		} catch (final Throwable t) {
+			// Unsupported server, packets will be sent right away
+		}
+
+		return null;
+	}
+
+	/*
+	 * Bind the public no args method as (Object) Object, or return null if not found
+	 */
+	private static MethodHandle unreflectGetter(Class<?> type, String methodName) {
+		final Method method = ReflectionUtil.getMethod(type, methodName);
+
+		if (method == null)
+			return null;
+
+		try {
+			return MethodHandles.lookup().unreflect(method).asType(MethodType.methodType(Object.class, Object.class));
+
+		} catch (final IllegalAccessException ex) {
+			return null;
+		}
+	}
+}
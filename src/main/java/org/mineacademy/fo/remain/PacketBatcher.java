@@ -0,0 +1,142 @@
+package org.mineacademy.fo.remain;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.mineacademy.fo.Common;
+import org.mineacademy.fo.plugin.SimplePlugin;
+
+/**
+ * Writes packets sent from the main thread to player channels without flushing them,
+ * then flushes each channel once when the tick ends.
+ * <p>
+ * On Paper we flush on ServerTickEndEvent, elsewhere at the start of the next tick.
+ * Used by {@link Remain#setPacketBatching(boolean)}.
+ */
+final class PacketBatcher {
+
+	/**
+	 * Is batching enabled?
+	 */
+	private static boolean enabled = false;
+
+	/**
+	 * Channels we wrote to but did not flush yet
+	 */
+	private static final Set<Object> pendingChannels = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Did we already ask the scheduler to flush in the next tick?
+	 */
+	private static boolean flushScheduled = false;
+
+	/**
+	 * Did we register the Paper tick end listener?
+	 */
+	private static boolean tickEndListenerRegistered = false;
+
+	// Static access only
+	private PacketBatcher() {
+	}
+
+	/**
+	 * Enable or disable batching, flushing pending packets when disabled
+	 *
+	 * @param enabled
+	 */
+	static void setEnabled(boolean enabled) {
+		if (!enabled)
+			flush();
+
+		else
+			registerTickEndListener();
+
+		PacketBatcher.enabled = enabled;
+	}
+
+	/**
+	 * Return true if batching is enabled
+	 *
+	 * @return
+	 */
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Write the packet to the connection's channel without flushing, returning false
+	 * if it must be sent right away instead
+	 *
+	 * @param playerConnection
+	 * @param packet
+	 * @return
+	 * @throws Throwable
+	 */
+	static boolean queue(Object playerConnection, Object packet) throws Throwable {
+		if (!enabled || !Bukkit.isPrimaryThread())
+			return false;
+
+		final Object channel = NmsAccessors.getChannel(playerConnection);
+
+		if (channel == null)
+			return false;
+
+		NmsAccessors.writeToChannel(channel, packet);
+
+		if (pendingChannels.add(channel) && !tickEndListenerRegistered && !flushScheduled) {
+			flushScheduled = true;
+
+			Common.runLater(PacketBatcher::flush);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Flush all channels we wrote to
+	 */
+	static void flush() {
+		flushScheduled = false;
+
+		if (pendingChannels.isEmpty())
+			return;
+
+		for (final Object channel : pendingChannels)
+			try {
+				NmsAccessors.flushChannel(channel);
+
+			} catch (final Throwable t) {
+				// Player disconnected meanwhile
+			}
+
+		pendingChannels.clear();
+	}
+
+	/*
+	 * Flush at the end of each tick on Paper, registered once and kept through reloads
+	 */
+	@SuppressWarnings("unchecked")
+	private static void registerTickEndListener() {
+		if (tickEndListenerRegistered)
+			return;
+
+		final Class<? extends Event> tickEndEvent;
+
+		try {
+			tickEndEvent = (Class<? extends Event>) Class.forName("com.destroystokyo.paper.event.server.ServerTickEndEvent");
+
+		} catch (final ClassNotFoundException ex) {
+			return;
+		}
+
+		Bukkit.getPluginManager().registerEvent(tickEndEvent, new Listener() {
+		}, EventPriority.MONITOR, (listener, event) -> flush(), SimplePlugin.getInstance());
+
+		tickEndListenerRegistered = true;
+	}
+}
@@ -5,6 +5,7 @@ import static org.mineacademy.fo.ReflectionUtil.getOBCClass;
 
 import java.io.File;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -138,26 +139,11 @@ public final class Remain {
 	 */
 	private static Method getHealthMethod;
 
-	/**
-	 * The CraftPlayer.getHandle method
-	 */
-	private static Method getHandle;
-
-	/**
-	 * The EntityPlayer.playerConnection method
-	 */
-	private static Field fieldPlayerConnection;
-
 	/**
 	 * Get if entity is invulnerable on legacy MC
 	 */
 	private static Field fieldEntityInvulnerable;
 
-	/**
-	 * The PlayerConnection.sendPacket method
-	 */
-	private static Method sendPacket;
-
 	// ----------------------------------------------------------------------------------------------------
 	// Flags below
 	// ----------------------------------------------------------------------------------------------------
@@ -242,6 +228,16 @@ public final class Remain {
 	 */
 	private static boolean hasPlayerOpenSignMethod = true;
 
+	/**
+	 * The Paper method returning average milliseconds per tick, resolved on first use
+	 */
+	private static Method averageTickTimeMethod;
+
+	/**
+	 * Return true if Bukkit has the getAverageTickTime method (Paper)
+	 */
+	private static boolean hasAverageTickTime = true;
+
 	/**
 	 * Stores player cooldowns for old MC versions
 	 */
@@ -291,8 +287,6 @@ public final class Remain {
 	 * Initialize all fields and methods automatically when we set the plugin
 	 */
 	static {
-		final boolean atLeast1_4 = MinecraftVersion.atLeast(V.v1_4);
-
 		try {
 			Class.forName("net.md_5.bungee.chat.ComponentSerializer");
 
@@ -422,13 +416,8 @@ public final class Remain {
 
 			ChatInternals.init();
 
-			getHandle = getOBCClass("entity.CraftPlayer").getMethod("getHandle");
-
-			fieldPlayerConnection = getNMSClass("EntityPlayer", "net.minecraft.server.level.EntityPlayer")
-					.getField(MinecraftVersion.atLeast(V.v1_20) ? "c" : MinecraftVersion.atLeast(V.v1_17) ? "b" : atLeast1_4 ? "playerConnection" : "netServerHandler");
-
-			sendPacket = getNMSClass(atLeast1_4 ? "PlayerConnection" : "NetServerHandler", "net.minecraft.server.network.PlayerConnection")
-					.getMethod(MinecraftVersion.atLeast(V.v1_18) ? "a" : "sendPacket", getNMSClass("Packet", "net.minecraft.network.protocol.Packet"));
+			// Resolves player connection and packet sending
+			NmsAccessors.checkLoaded();
 
 			if (MinecraftVersion.olderThan(V.v1_12))
 				try {
@@ -465,10 +454,10 @@ public final class Remain {
 	 * @return
 	 */
 	public static Object getHandleWorld(final World world) {
-		final Method handle = ReflectionUtil.getMethod(world.getClass(), "getHandle");
+		final MethodHandle handle = NmsAccessors.getHandleGetter(world);
 		Valid.checkNotNull(handle, "Cannot call getHandle() for " + world.getClass() + " (" + world + ")");
 
-		return ReflectionUtil.invoke(handle, world);
+		return invokeGetter(handle, world, "getHandle");
 	}
 
 	/**
@@ -479,10 +468,10 @@ public final class Remain {
 	 */
 	public static Object getHandleEntity(final Object entity) {
 		final String methodName = entity instanceof BlockState ? "getTileEntity" : "getHandle";
-		final Method handle = ReflectionUtil.getMethod(entity.getClass(), methodName);
+		final MethodHandle handle = NmsAccessors.getHandleGetter(entity);
 		Valid.checkNotNull(handle, "Cannot call " + methodName + "() for " + entity.getClass() + " (" + entity + ")");
 
-		return ReflectionUtil.invoke(handle, entity);
+		return invokeGetter(handle, entity, methodName);
 	}
 
 	/**
@@ -492,10 +481,22 @@ public final class Remain {
 	 */
 	public static Object getHandleServer() {
 		final org.bukkit.Server server = Bukkit.getServer();
-		final Method handle = ReflectionUtil.getMethod(server.getClass(), "getServer");
+		final MethodHandle handle = NmsAccessors.getServerGetter(server);
 		Valid.checkNotNull(handle, "Cannot call getServer() for " + server.getClass() + " (" + server + ")");
 
-		return ReflectionUtil.invoke(handle, server);
+		return invokeGetter(handle, server, "getServer");
+	}
+
+	/*
+	 * Call the bound no args getter on the given instance
+	 */
+	private static Object invokeGetter(final MethodHandle handle, final Object instance, final String methodName) {
+		try {
+			return handle.invokeExact(instance);
+
+		} catch (final Throwable t) {
+			throw new ReflectionException(t, "Error calling " + methodName + "() on " + instance.getClass());
+		}
 	}
 
 	/**
@@ -524,15 +525,39 @@ public final class Remain {
 	 * @param packet the packet
 	 */
 	public static void sendPacket(final Player player, final Object packet) {
-		try {
-			final Object playerConnection = getPlayerConnection(player);
+		final Object playerConnection = getPlayerConnection(player);
 
-			if (playerConnection != null)
-				sendPacket.invoke(playerConnection, packet);
+		if (playerConnection != null)
+			try {
+				if (!PacketBatcher.queue(playerConnection, packet))
+					NmsAccessors.sendPacket(playerConnection, packet);
 
-		} catch (final ReflectiveOperationException ex) {
-			throw new ReflectionException(ex, "Error sending packet " + packet.getClass() + " to player " + player.getName());
-		}
+			} catch (final Throwable t) {
+				throw new ReflectionException(t, "Error sending packet " + packet.getClass() + " to player " + player.getName());
+			}
+	}
+
+	/**
+	 * Enable or disable packet batching. When enabled, packets sent using {@link #sendPacket(Player, Object)}
+	 * from the main thread are written without flushing and each player's connection is flushed
+	 * only once when the tick ends, or at the start of the next tick on servers other than Paper.
+	 * <p>
+	 * Packets sent by the server itself still flush right away. Disabling flushes pending packets.
+	 *
+	 * @param enabled
+	 */
+	public static void setPacketBatching(final boolean enabled) {
+		PacketBatcher.setEnabled(enabled);
+	}
+
+	/**
+	 * Return true if packet batching is enabled
+	 *
+	 * @see #setPacketBatching(boolean)
+	 * @return
+	 */
+	public static boolean isPacketBatching() {
+		return PacketBatcher.isEnabled();
 	}
 
 	/**
@@ -542,20 +567,17 @@ public final class Remain {
 	 * @return
 	 */
 	public static Object getPlayerConnection(Player player) {
-		if (getHandle == null || fieldPlayerConnection == null || sendPacket == null) {
+		if (!NmsAccessors.isLoaded()) {
 			Common.log("Cannot get player connection on your server sofware (known to be broken on Cauldron).");
 
 			return null;
 		}
 
 		try {
-			final Object handle = getHandle.invoke(player);
-			final Object playerConnection = fieldPlayerConnection.get(handle);
-
-			return playerConnection;
+			return NmsAccessors.getPlayerConnection(player);
 
-		} catch (final ReflectiveOperationException ex) {
-			throw new ReflectionException(ex, "Error getting player connection for player " + player.getName());
+		} catch (final Throwable t) {
+			throw new ReflectionException(t, "Error getting player connection for player " + player.getName());
 		}
 	}
 
@@ -692,7 +714,7 @@ public final class Remain {
 
 			final Constructor<?> entityConstructor = nmsItemClass.getConstructor(nmsWorldClass, double.class, double.class, double.class, nmsStackClass);
 
-			final Object nmsWorld = location.getWorld().getClass().getMethod("getHandle").invoke(location.getWorld());
+			final Object nmsWorld = getHandleWorld(location.getWorld());
 			final Method asNmsCopy = getOBCClass("inventory.CraftItemStack").getMethod("asNMSCopy", ItemStack.class);
 
 			final Object nmsEntity = entityConstructor.newInstance(nmsWorld, location.getX(), location.getY(), location.getZ(), asNmsCopy.invoke(null, item));
@@ -3042,6 +3064,29 @@ public final class Remain {
 		}
 	}
 
+	/**
+	 * Return the average milliseconds per tick over the last 100 ticks
+	 * (requires Paper otherwise we return -1)
+	 *
+	 * @return
+	 */
+	public static double getAverageTickTime() {
+		if (!hasAverageTickTime)
+			return -1;
+
+		if (averageTickTimeMethod == null) {
+			averageTickTimeMethod = ReflectionUtil.getMethod(Bukkit.class, "getAverageTickTime");
+
+			if (averageTickTimeMethod == null) {
+				hasAverageTickTime = false;
+
+				return -1;
+			}
+		}
+
+		return ReflectionUtil.invokeStatic(averageTickTimeMethod);
+	}
+
 	/**
 	 * Attempts to set render distance of the player to the given value
 	 * returning false if we got a reflective exception (such as when not using PaperSpigot
@@ -29,6 +29,7 @@ public class ChatInternals {
 	private static Object enumReset;
 
 	private static Constructor<?> tabConstructor;
+	private static Field tabFooterField;
 
 	private static Constructor<?> titleTimesConstructor;
 	private static Constructor<?> titleConstructor;
@@ -125,9 +126,7 @@ public class ChatInternals {
 			if (footerRaw != null) {
 				final Object footer = serializeText(footerRaw);
 
-				final Field f = packet.getClass().getDeclaredField("b"); // setFooter
-				f.setAccessible(true);
-				f.set(packet, footer);
+				tabFooterField.set(packet, footer);
 			}
 
 			Remain.sendPacket(player, packet);
@@ -224,6 +223,9 @@ public class ChatInternals {
 
 				tabConstructor = ReflectionUtil.getNMSClass("PacketPlayOutPlayerListHeaderFooter", "N/A").getConstructor(chatBaseComponent);
 
+				tabFooterField = tabConstructor.getDeclaringClass().getDeclaredField("b"); // setFooter
+				tabFooterField.setAccessible(true);
+
 				titleTimesConstructor = titlePacket.getConstructor(int.class, int.class, int.class);
 				titleConstructor = titlePacket.getConstructor(enumAction, chatBaseComponent);
 				subtitleConstructor = titlePacket.getConstructor(enumAction, chatBaseComponent);